@@ -18,8 +18,10 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
+import ro.fortsoft.wicket.pivot.JdbcPivotDataSource;
 import ro.fortsoft.wicket.pivot.PivotDataSource;
 import ro.fortsoft.wicket.pivot.ResultSetPivotDataSource;
+import ro.fortsoft.wicket.pivot.SyntheticPivotDataSource;
 
 /**
  * @author Decebal Suiu
@@ -27,6 +29,22 @@ import ro.fortsoft.wicket.pivot.ResultSetPivotDataSource;
 public class PivotDataSourceHandler {
 
 	public static PivotDataSource getPivotDataSource() {
+		// for a load test start the demo with -Dpivot.syntheticRows=1000000
+		Integer syntheticRows = Integer.getInteger("pivot.syntheticRows");
+		if (syntheticRows != null) {
+			return getSyntheticPivotDataSource(syntheticRows);
+		}
+
+		// to aggregate in the database start the demo with -Dpivot.pushdown=true
+		if (Boolean.getBoolean("pivot.pushdown")) {
+			try {
+				return new JdbcPivotDataSource(PivotDataSourceHandler::getConnection, "STATISTIC");
+			} catch (SQLException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
+
 		Connection connection = getConnection();
 		if (connection == null) {
 			return null;
@@ -55,6 +73,21 @@ public class PivotDataSourceHandler {
 		}
 	}
 	
+	/**
+	 * Generates rows with the fields of the STATISTIC table.
+	 */
+	public static PivotDataSource getSyntheticPivotDataSource(int rowCount) {
+		SyntheticPivotDataSource dataSource = new SyntheticPivotDataSource(rowCount, 42);
+		dataSource.addField("REGION", String.class, 10);
+		dataSource.addField("SALESMAN", String.class, 500).setZipfExponent(1);
+		dataSource.addField("YEAR", Integer.class).setValues(2010, 2011, 2012, 2013, 2014, 2015, 2016, 2017, 2018, 2019);
+		dataSource.addField("MONTH", Integer.class).setValues(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12);
+		dataSource.addField("SALES", Integer.class, 10000);
+		dataSource.addField("COST", Integer.class, 10000).setNullRatio(0.05);
+
+		return dataSource;
+	}
+
 	private static Connection getConnection() {
 		String url = "jdbc:derby:./db/";
 		String dbName = "pivot";
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ro.fortsoft.wicket.pivot.PivotModel;
+import ro.fortsoft.wicket.pivot.exporter.PivotExporter;
+import ro.fortsoft.wicket.pivot.exporter.PivotExporters;
+
+/**
+ * Exports a calculated pivot model with each exporter of
+ * {@link PivotExporters#createAllExporter()}. The output is discarded.
+ *
+ * @author Decebal Suiu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExportBenchmark extends PivotBenchmark {
+
+	/**
+	 * The format name of the exporter.
+	 */
+	@Param({ "CSV", "XLS", "XLSX" })
+	public String format;
+
+	private PivotModel pivotModel;
+	private PivotExporter exporter;
+
+	@Override
+	protected void onSetUp() {
+		for (PivotExporter exporter : PivotExporters.createAllExporter()) {
+			if (exporter.getFormatName().equals(format)) {
+				this.exporter = exporter;
+			}
+		}
+		if (exporter == null) {
+			throw new IllegalArgumentException("Cannot find an exporter for '" + format + "'");
+		}
+
+		pivotModel = createPivotModel();
+		pivotModel.calculate();
+	}
+
+	@Benchmark
+	public long export() throws IOException {
+		CountingOutputStream out = new CountingOutputStream();
+		exporter.exportPivot(pivotModel, out);
+
+		return out.count;
+	}
+
+	private static class CountingOutputStream extends OutputStream {
+
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+
+	}
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ro.fortsoft.wicket.pivot.ColumnarPivotDataSource;
+import ro.fortsoft.wicket.pivot.DefaultPivotModel;
+import ro.fortsoft.wicket.pivot.PivotDataSource;
+import ro.fortsoft.wicket.pivot.PivotField;
+import ro.fortsoft.wicket.pivot.PivotModel;
+import ro.fortsoft.wicket.pivot.SyntheticPivotDataSource;
+import ro.fortsoft.wicket.pivot.SyntheticPivotDataSource.SyntheticField;
+
+/**
+ * The parameters shared by the pivot benchmarks. The data is generated with a
+ * {@link SyntheticPivotDataSource}, the fields D0, D1, ... are the dimensions
+ * and M0, M1, ... the measures. The first dimensions are put on the ROW area,
+ * the next ones on the COLUMN area and the measures on the DATA area. Override
+ * the parameters from the command line, for example
+ * <code>-p rowFieldCount=1,2,3 -p cardinality=1000 -p zipfExponent=1</code>.
+ *
+ * @author Decebal Suiu
+ */
+@State(Scope.Benchmark)
+public abstract class PivotBenchmark {
+
+	public static final long SEED = 42;
+
+	@Param({ "100000", "1000000" })
+	public int rowCount;
+
+	/**
+	 * The number of distinct values of each ROW and COLUMN field.
+	 */
+	@Param({ "10", "100" })
+	public int cardinality;
+
+	@Param({ "2" })
+	public int rowFieldCount;
+
+	@Param({ "1" })
+	public int columnFieldCount;
+
+	@Param({ "1" })
+	public int dataFieldCount;
+
+	/**
+	 * The skew of the ROW and COLUMN field values (0 for uniform, see
+	 * {@link SyntheticField#setZipfExponent(double)}).
+	 */
+	@Param({ "0" })
+	public double zipfExponent;
+
+	/**
+	 * The ratio of null values of the ROW and COLUMN fields.
+	 */
+	@Param({ "0" })
+	public double nullRatio;
+
+	/**
+	 * If true the data is copied in a {@link ColumnarPivotDataSource}.
+	 */
+	@Param({ "false" })
+	public boolean columnar;
+
+	protected PivotDataSource dataSource;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		SyntheticPivotDataSource syntheticDataSource = new SyntheticPivotDataSource(rowCount, SEED);
+		for (int i = 0; i < rowFieldCount + columnFieldCount; i++) {
+			syntheticDataSource.addField("D" + i, String.class, cardinality).setZipfExponent(zipfExponent)
+					.setNullRatio(nullRatio);
+		}
+		for (int i = 0; i < dataFieldCount; i++) {
+			syntheticDataSource.addField("M" + i, Double.class, 100000);
+		}
+		syntheticDataSource.generate();
+		dataSource = syntheticDataSource;
+		if (columnar) {
+			dataSource = new ColumnarPivotDataSource(dataSource);
+		}
+		onSetUp();
+	}
+
+	/**
+	 * Called after the data source is created.
+	 */
+	protected void onSetUp() throws Exception {
+	}
+
+	protected PivotModel createPivotModel() {
+		PivotModel pivotModel = new DefaultPivotModel(dataSource);
+		pivotModel.setShowGrandTotalForColumn(true);
+		pivotModel.setShowGrandTotalForRow(true);
+		for (int i = 0; i < rowFieldCount; i++) {
+			pivotModel.getField("D" + i).setArea(PivotField.Area.ROW).setAreaIndex(i);
+		}
+		for (int i = 0; i < columnFieldCount; i++) {
+			pivotModel.getField("D" + (rowFieldCount + i)).setArea(PivotField.Area.COLUMN).setAreaIndex(i);
+		}
+		for (int i = 0; i < dataFieldCount; i++) {
+			pivotModel.getField("M" + i).setArea(PivotField.Area.DATA).setAreaIndex(i);
+		}
+
+		return pivotModel;
+	}
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ro.fortsoft.wicket.pivot.PivotField;
+import ro.fortsoft.wicket.pivot.PivotModel;
+import ro.fortsoft.wicket.pivot.PivotTableRenderModel;
+import ro.fortsoft.wicket.pivot.PivotTableVisitor;
+import ro.fortsoft.wicket.pivot.PivotTableWalker;
+
+/**
+ * Creates the render model of a calculated pivot model and, for comparison,
+ * walks its cells without a render model.
+ *
+ * @author Decebal Suiu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RenderModelBenchmark extends PivotBenchmark {
+
+	private PivotModel pivotModel;
+
+	@Override
+	protected void onSetUp() {
+		pivotModel = createPivotModel();
+		pivotModel.calculate();
+	}
+
+	@Benchmark
+	public PivotTableRenderModel createRenderModel() {
+		return PivotTableRenderModel.create(pivotModel);
+	}
+
+	@Benchmark
+	public void walk(final Blackhole blackhole) throws IOException {
+		PivotTableWalker.walk(pivotModel, new PivotTableVisitor() {
+
+			@Override
+			public void visitCell(CellType cellType, int column, Object value, PivotField field, int colspan,
+					int rowspan) {
+				blackhole.consume(value);
+			}
+
+		});
+	}
+
+}
@@ -25,6 +25,6 @@ public class PivotExporters {
 	 * @return a new List of exporter instances
 	 */
 	public static PivotExporter[] createAllExporter() {
-		return new PivotExporter[] { new PivotXlsExporter(), new PivotCsvExporter() };
+		return new PivotExporter[] { new PivotXlsExporter(), new PivotXlsxExporter(), new PivotCsvExporter() };
 	}
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.exporter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.apache.poi.ss.usermodel.BorderStyle;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import ro.fortsoft.wicket.pivot.PivotField;
+import ro.fortsoft.wicket.pivot.PivotModel;
+import ro.fortsoft.wicket.pivot.PivotTableVisitor;
+import ro.fortsoft.wicket.pivot.PivotTableWalker;
+
+/**
+ * XLSX exporter for large pivots. Only a window of rows is kept in memory, the
+ * other rows are flushed to a temporary file (see {@link SXSSFWorkbook}). The
+ * cells are visited with a {@link PivotTableWalker}, the column widths are
+ * calculated from the length of the values (no font metrics) and the regions
+ * are merged only for the cells with a span.
+ *
+ * @author Decebal Suiu
+ */
+public class PivotXlsxExporter implements PivotExporter {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int MAX_COLUMN_WIDTH = 255 * 256;
+
+	private int rowAccessWindowSize = SXSSFWorkbook.DEFAULT_WINDOW_SIZE;
+
+	private static class StyleContext {
+
+		private CellStyle headerStyle;
+		private CellStyle grandTotalStyle;
+
+		StyleContext(Workbook wb) {
+			headerStyle = createStyle(wb, IndexedColors.GREY_25_PERCENT);
+			grandTotalStyle = createStyle(wb, IndexedColors.LIGHT_TURQUOISE);
+		}
+
+		CellStyle getStyle(PivotTableVisitor.CellType cellType) {
+			switch (cellType) {
+				case HEADER:
+				case HEADER_VALUE:
+				case DATA_HEADER:
+					return headerStyle;
+				case GRAND_TOTAL_HEADER:
+				case GRAND_TOTAL_ROW_HEADER:
+				case GRAND_TOTAL_VALUE:
+					return grandTotalStyle;
+				default:
+					return null;
+			}
+		}
+
+		private static CellStyle createStyle(Workbook wb, IndexedColors color) {
+			CellStyle style = wb.createCellStyle();
+			style.setBorderTop(BorderStyle.MEDIUM);
+			style.setBorderLeft(BorderStyle.MEDIUM);
+			style.setBorderRight(BorderStyle.MEDIUM);
+			style.setBorderBottom(BorderStyle.MEDIUM);
+			style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+			style.setFillForegroundColor(color.getIndex());
+
+			return style;
+		}
+
+	}
+
+	public int getRowAccessWindowSize() {
+		return rowAccessWindowSize;
+	}
+
+	/**
+	 * Sets the number of rows kept in memory.
+	 */
+	public PivotXlsxExporter setRowAccessWindowSize(int rowAccessWindowSize) {
+		this.rowAccessWindowSize = rowAccessWindowSize;
+
+		return this;
+	}
+
+	@Override
+	public void exportPivot(PivotModel pivotModel, OutputStream outputStream) throws IOException {
+		SXSSFWorkbook wb = new SXSSFWorkbook(rowAccessWindowSize);
+		wb.setCompressTempFiles(true);
+		try {
+			Sheet sheetData = wb.createSheet("Pivot");
+			SheetWriter sheetWriter = new SheetWriter(sheetData, new StyleContext(wb));
+			PivotTableWalker.walk(pivotModel, sheetWriter);
+
+			setColumnWidths(sheetData, sheetWriter.getMaxLengths());
+			wb.write(outputStream);
+			outputStream.flush();
+		} finally {
+			wb.dispose();
+			wb.close();
+		}
+	}
+
+	/*
+	 * Writes the visited cells in a sheet.
+	 */
+	private static class SheetWriter implements PivotTableVisitor {
+
+		private Sheet sheetData;
+		private StyleContext styleContext;
+		private int rowNumber = -1;
+		private Row poiRow;
+		private int[] maxLengths = new int[16]; // for each column, the length of the longest value
+
+		SheetWriter(Sheet sheetData, StyleContext styleContext) {
+			this.sheetData = sheetData;
+			this.styleContext = styleContext;
+		}
+
+		public int[] getMaxLengths() {
+			return maxLengths;
+		}
+
+		@Override
+		public void startRow(RowType rowType) {
+			poiRow = sheetData.createRow(++rowNumber);
+		}
+
+		@Override
+		public void visitCell(CellType cellType, int column, Object value, PivotField field, int colspan,
+				int rowspan) {
+			Cell poiCell = poiRow.createCell(column);
+			if (value instanceof Number) {
+				poiCell.setCellValue(((Number) value).doubleValue());
+			} else if (value != null) {
+				poiCell.setCellValue(String.valueOf(value));
+			}
+
+			CellStyle style = styleContext.getStyle(cellType);
+			if (style != null) {
+				poiCell.setCellStyle(style);
+			}
+
+			if ((colspan > 1) || (rowspan > 1)) {
+				// the spans of the pivot don't overlap, skip the (quadratic) validation
+				sheetData.addMergedRegionUnsafe(new CellRangeAddress(rowNumber, rowNumber + rowspan - 1, column,
+						column + colspan - 1));
+			}
+
+			if (column >= maxLengths.length) {
+				maxLengths = Arrays.copyOf(maxLengths, Math.max(column + 1, maxLengths.length * 2));
+			}
+			if ((value != null) && (colspan == 1)) {
+				maxLengths[column] = Math.max(maxLengths[column], String.valueOf(value).length());
+			}
+		}
+
+	}
+
+	private void setColumnWidths(Sheet sheetData, int[] maxLengths) {
+		int width = 0;
+		for (int col = 0; col < maxLengths.length; col++) {
+			if (maxLengths[col] > 0) {
+				int columnWidth = Math.min(maxLengths[col] * 256 + 500, MAX_COLUMN_WIDTH);
+				sheetData.setColumnWidth(col, columnWidth);
+				width += columnWidth;
+			}
+		}
+
+		// calculate zoom factor
+		if (width > 0) {
+			int nominator = 45000 * 100 / width;
+			if (nominator < 100)
+				sheetData.setZoom(Math.max(nominator, 10));
+		}
+	}
+
+	@Override
+	public String getFormatName() {
+		return "XLSX";
+	}
+
+	@Override
+	public String getFormatMimetype() {
+		return "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+	}
+
+	@Override
+	public String getFilenameExtension() {
+		return "xlsx";
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.exporter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import ro.fortsoft.wicket.pivot.DefaultPivotModel;
+import ro.fortsoft.wicket.pivot.PivotField;
+import ro.fortsoft.wicket.pivot.PivotModel;
+import ro.fortsoft.wicket.pivot.PivotTableVisitor;
+import ro.fortsoft.wicket.pivot.PivotTableWalker;
+import ro.fortsoft.wicket.pivot.SyntheticPivotDataSource;
+
+/**
+ * Checks that the sheet written with a small window of rows has all the
+ * visited cells and spans.
+ *
+ * @author Decebal Suiu
+ */
+public class PivotXlsxExporterTest {
+
+	@Test
+	public void testExport() throws IOException {
+		PivotModel pivotModel = createModel();
+		final List<Object[]> cells = new ArrayList<>();
+		final List<CellRangeAddress> spans = new ArrayList<>();
+		PivotTableWalker.walk(pivotModel, new PivotTableVisitor() {
+
+			private int row = -1;
+
+			@Override
+			public void startRow(RowType rowType) {
+				row++;
+			}
+
+			@Override
+			public void visitCell(CellType cellType, int column, Object value, PivotField field, int colspan,
+					int rowspan) {
+				cells.add(new Object[] { row, column, value });
+				if ((colspan > 1) || (rowspan > 1)) {
+					spans.add(new CellRangeAddress(row, row + rowspan - 1, column, column + colspan - 1));
+				}
+			}
+
+		});
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new PivotXlsxExporter().setRowAccessWindowSize(10).exportPivot(pivotModel, out);
+
+		try (Workbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+			Sheet sheet = workbook.getSheet("Pivot");
+			for (Object[] cell : cells) {
+				Row row = sheet.getRow((Integer) cell[0]);
+				assertNotNull("row " + cell[0], row);
+				Cell poiCell = row.getCell((Integer) cell[1]);
+				assertNotNull("cell " + cell[0] + ", " + cell[1], poiCell);
+				Object value = cell[2];
+				if (value instanceof Number) {
+					assertEquals(((Number) value).doubleValue(), poiCell.getNumericCellValue(), 1e-9);
+				} else {
+					assertEquals((value != null) ? String.valueOf(value) : "", poiCell.getStringCellValue());
+				}
+			}
+
+			assertEquals(spans.size(), sheet.getNumMergedRegions());
+			for (int i = 0; i < spans.size(); i++) {
+				assertEquals(spans.get(i).formatAsString(), sheet.getMergedRegion(i).formatAsString());
+			}
+		}
+	}
+
+	private PivotModel createModel() {
+		SyntheticPivotDataSource dataSource = new SyntheticPivotDataSource(5000, 29);
+		dataSource.addField("REGION", String.class, 4);
+		dataSource.addField("SALESMAN", String.class, 60);
+		dataSource.addField("YEAR", Integer.class).setValues(2010, 2011, 2012);
+		dataSource.addField("SALES", Integer.class, 1000).setNullRatio(0.1);
+		dataSource.addField("COST", Double.class, 1000);
+
+		PivotModel pivotModel = new DefaultPivotModel(dataSource);
+		pivotModel.getField("REGION").setArea(PivotField.Area.ROW).setAreaIndex(0);
+		pivotModel.getField("SALESMAN").setArea(PivotField.Area.ROW).setAreaIndex(1);
+		pivotModel.getField("YEAR").setArea(PivotField.Area.COLUMN);
+		pivotModel.getField("SALES").setArea(PivotField.Area.DATA).setAreaIndex(0);
+		pivotModel.getField("COST").setArea(PivotField.Area.DATA).setAreaIndex(1);
+		pivotModel.setShowGrandTotalForColumn(true);
+		pivotModel.setShowGrandTotalForRow(true);
+		pivotModel.calculate();
+
+		return pivotModel;
+	}
+
+}
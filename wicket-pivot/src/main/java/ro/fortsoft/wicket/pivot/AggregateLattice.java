@@ -0,0 +1,244 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ro.fortsoft.wicket.pivot.engine.PivotCube;
+
+/**
+ * Pre-aggregated cubes of a data source for some combinations of fields
+ * (dimensions). A pivot model whose row and column fields are a subset of a
+ * combination (and whose data fields are measures of the lattice) is calculated
+ * from the smallest such cube, without scanning the data source. All the cubes
+ * are built in a single scan of the data source. Create one lattice for a data
+ * source and share it between the pivot models.
+ * 
+ * A model doesn't serialize the lattice, only its id (see {@link #get(String)}),
+ * so all the deserialized models keep sharing the lattice while it's referenced
+ * (for example by the application). A lattice serialized alone is built again
+ * on first use.
+ *
+ * <pre>
+ * AggregateLattice lattice = new AggregateLattice(dataSource)
+ * 	.addDimensions("REGION", "SALESMAN", "YEAR", "MONTH")
+ * 	.addDimensions("REGION", "YEAR")
+ * 	.addMeasure("SALES", Aggregator.SUM);
+ * lattice.build();
+ * pivotModel.setAggregateLattice(lattice);
+ * </pre>
+ *
+ * @author Decebal Suiu
+ */
+public class AggregateLattice implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final SharedRegistry<AggregateLattice> registry = new SharedRegistry<>();
+
+	private PivotDataSource dataSource;
+	private List<int[]> dimensions;
+	private List<PivotField> measures;
+	private transient List<PivotCube> cubes;
+	private final String id;
+
+	public AggregateLattice(PivotDataSource dataSource) {
+		this.dataSource = dataSource;
+
+		dimensions = new ArrayList<>();
+		measures = new ArrayList<>();
+		id = registry.register(this);
+	}
+
+	/**
+	 * Retrieves a live lattice by id, or null if the lattice isn't referenced anymore.
+	 */
+	public static AggregateLattice get(String id) {
+		return registry.get(id);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public PivotDataSource getDataSource() {
+		return dataSource;
+	}
+
+	/**
+	 * Adds a combination of fields to pre-aggregate.
+	 */
+	public AggregateLattice addDimensions(String... fieldNames) {
+		checkNotBuilt();
+		int[] fieldIndexes = new int[fieldNames.length];
+		for (int i = 0; i < fieldNames.length; i++) {
+			fieldIndexes[i] = getFieldIndex(fieldNames[i]);
+		}
+		dimensions.add(fieldIndexes);
+
+		return this;
+	}
+
+	/**
+	 * Adds a field to aggregate with a function (see {@link Aggregator#getFunctions()}).
+	 * The aggregator of the function must be mergeable.
+	 */
+	public AggregateLattice addMeasure(String fieldName, String function) {
+		checkNotBuilt();
+		Aggregator aggregator = Aggregator.get(function);
+		if ((aggregator == null) || !aggregator.isMergeable()) {
+			throw new IllegalArgumentException("Cannot pre-aggregate with function '" + function + "'");
+		}
+
+		PivotField measure = new PivotField(fieldName, getFieldIndex(fieldName));
+		measure.setAggregator(aggregator);
+		measures.add(measure);
+
+		return this;
+	}
+
+	public boolean isBuilt() {
+		return cubes != null;
+	}
+
+	/**
+	 * Builds the cubes of all combinations in a single scan of the data source.
+	 */
+	public synchronized void build() {
+		if (isBuilt()) {
+			return;
+		}
+
+		int count = dimensions.size();
+		List<PivotCube> cubes = new ArrayList<>(count);
+		List<Map<List<Object>, Integer>> ordinals = new ArrayList<>(count);
+		List<Object> noKey = Collections.emptyList();
+		for (int[] fieldIndexes : dimensions) {
+			cubes.add(new PivotCube(fieldIndexes, new int[0], new ArrayList<List<Object>>(),
+					Collections.singletonList(noKey), measures));
+			ordinals.add(new HashMap<List<Object>, Integer>());
+		}
+
+		int[] measureIndexes = PivotUtils.getFieldIndexes(measures);
+		Object[] values = new Object[measureIndexes.length];
+		int rowCount = dataSource.getRowCount();
+		for (int i = 0; i < rowCount; i++) {
+			for (int m = 0; m < measureIndexes.length; m++) {
+				values[m] = dataSource.getValueAt(i, measureIndexes[m]);
+			}
+			for (int c = 0; c < count; c++) {
+				PivotCube cube = cubes.get(c);
+				List<Object> key = PivotUtils.getKey(dataSource, i, dimensions.get(c));
+				Integer ordinal = ordinals.get(c).get(key);
+				if (ordinal == null) {
+					ordinal = cube.getRowKeys().size();
+					cube.getRowKeys().add(key);
+					ordinals.get(c).put(key, ordinal);
+				}
+
+				int cell = cube.getOrCreateCell(ordinal, 0);
+				for (int m = 0; m < values.length; m++) {
+					cube.getState(m, cell).add(values[m]);
+				}
+			}
+		}
+		this.cubes = cubes;
+	}
+
+	/**
+	 * Retrieves the smallest cube with all the fields as dimensions and all
+	 * the measures, or null if no such cube exists. The lattice is built if
+	 * it's necessary.
+	 */
+	public PivotCube getCube(List<PivotField> fields, List<PivotField> measures) {
+		build();
+
+		PivotCube result = null;
+		for (PivotCube cube : cubes) {
+			if (containsAll(cube.getRowFieldIndexes(), fields) && cube.hasMeasures(measures)
+					&& ((result == null) || (cube.getCellCount() < result.getCellCount()))) {
+				result = cube;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of cells of all the cubes (0 if the lattice is not built).
+	 */
+	public int getCellCount() {
+		int cellCount = 0;
+		if (cubes != null) {
+			for (PivotCube cube : cubes) {
+				cellCount += cube.getCellCount();
+			}
+		}
+
+		return cellCount;
+	}
+
+	/**
+	 * Returns an estimate (in bytes) of the memory used by the cubes (0 if
+	 * the lattice is not built).
+	 */
+	public long getMemorySize() {
+		long memorySize = 0;
+		if (cubes != null) {
+			for (PivotCube cube : cubes) {
+				memorySize += cube.getMemorySize();
+			}
+		}
+
+		return memorySize;
+	}
+
+	private boolean containsAll(int[] fieldIndexes, List<PivotField> fields) {
+		for (PivotField field : fields) {
+			boolean found = false;
+			for (int fieldIndex : fieldIndexes) {
+				if (fieldIndex == field.getIndex()) {
+					found = true;
+					break;
+				}
+			}
+			if (!found) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private int getFieldIndex(String fieldName) {
+		for (int i = 0; i < dataSource.getFieldCount(); i++) {
+			if (dataSource.getFieldName(i).equals(fieldName)) {
+				return i;
+			}
+		}
+
+		throw new IllegalArgumentException("Cannot find field '" + fieldName + "'");
+	}
+
+	private void checkNotBuilt() {
+		if (isBuilt()) {
+			throw new IllegalStateException("The lattice is already built");
+		}
+	}
+
+}
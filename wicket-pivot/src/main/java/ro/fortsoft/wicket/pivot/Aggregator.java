@@ -69,6 +69,88 @@ public abstract class Aggregator implements Serializable {
 		return this;
 	}
 
+	/**
+	 * Adds a primitive value. The default implementation boxes the value, the
+	 * built-in aggregators override it.
+	 */
+	public Aggregator add(double value) {
+		return add((Object) value);
+	}
+
+	/**
+	 * Adds a primitive value. The default implementation boxes the value, the
+	 * built-in aggregators override it.
+	 */
+	public Aggregator add(long value) {
+		return add((Object) value);
+	}
+
+	/**
+	 * Adds a missing (null) value.
+	 */
+	public Aggregator addNull() {
+		return add((Object) null);
+	}
+
+	/**
+	 * Returns the result as double or NaN if there is no (numeric) result.
+	 */
+	public double asDouble() {
+		Object result = getResult();
+		return (result instanceof Number) ? ((Number) result).doubleValue() : Double.NaN;
+	}
+
+	/**
+	 * Returns true if the values of a field with this type can be added as
+	 * primitives ({@link #add(double)}, {@link #add(long)}) with the same
+	 * result (value and type) as with {@link #add(Object)}.
+	 */
+	public boolean acceptsPrimitive(Class<?> type) {
+		return false;
+	}
+
+	/**
+	 * Creates a new (initialized) aggregator with the same function. The
+	 * aggregation engines use it to keep a separate state for each cell. The
+	 * built-in aggregators call their constructors, the other aggregators are
+	 * created by reflection (they must have a no-arg constructor) unless they
+	 * override this method.
+	 */
+	public Aggregator newInstance() {
+		try {
+			return getClass().getDeclaredConstructor().newInstance().init();
+		} catch (Exception e) {
+			throw new IllegalStateException("Cannot create a new instance of " + getClass().getName(), e);
+		}
+	}
+
+	/**
+	 * Returns true if this aggregator can merge the state of another aggregator
+	 * with the same function (see {@link #merge(Aggregator)}).
+	 */
+	public boolean isMergeable() {
+		return false;
+	}
+
+	/**
+	 * Combines the state of another aggregator with the same function into this
+	 * aggregator. The result is the same as if all the values of the other
+	 * aggregator were added to this one. It's used to merge the partial results
+	 * of a parallel calculation.
+	 */
+	public Aggregator merge(Aggregator other) {
+		throw new UnsupportedOperationException("Aggregator '" + getFunction() + "' cannot be merged");
+	}
+
+	/**
+	 * Adds a group of values aggregated elsewhere (for example by a database,
+	 * see {@link JdbcPivotModel}) from the number of (not null) values, their
+	 * sum, minimum and maximum. Only the built-in aggregators support it.
+	 */
+	public Aggregator addGroup(long count, double sum, Object min, Object max) {
+		throw new UnsupportedOperationException("Aggregator '" + getFunction() + "' cannot add a group");
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (obj instanceof Aggregator) {
@@ -106,11 +188,65 @@ public abstract class Aggregator implements Serializable {
             return this;
         }
 
+		@Override
+		public Aggregator add(double value) {
+			total += value;
+			
+			return this;
+		}
+
+		@Override
+		public Aggregator add(long value) {
+			total += value;
+			
+			return this;
+		}
+
+		@Override
+		public Aggregator addNull() {
+			return this;
+		}
+
+		@Override
+		public boolean acceptsPrimitive(Class<?> type) {
+			return Number.class.isAssignableFrom(type);
+		}
+
+		@Override
+		public Aggregator newInstance() {
+			// a subclass is created by reflection
+			return (getClass() == Sum.class) ? new Sum().init() : super.newInstance();
+		}
+
+		@Override
+		public boolean isMergeable() {
+			return true;
+		}
+
+		@Override
+		public Aggregator merge(Aggregator other) {
+			total += ((Sum) other).total;
+			
+			return this;
+		}
+
+		@Override
+		public Aggregator addGroup(long count, double sum, Object min, Object max) {
+			total += sum;
+
+			return this;
+		}
+
         @Override
 		public Object getResult() {
             return total;
         }
 
+		@Override
+		public double asDouble() {
+			return total;
+		}
+
 		@Override
 		public String getFunction() {
 			return SUM;
@@ -143,6 +279,60 @@ public abstract class Aggregator implements Serializable {
             return this;
         }
 
+		@Override
+		public Aggregator add(double value) {
+			total += value;
+			count++;
+			
+			return this;
+		}
+
+		@Override
+		public Aggregator add(long value) {
+			total += value;
+			count++;
+			
+			return this;
+		}
+
+		@Override
+		public Aggregator addNull() {
+			return this;
+		}
+
+		@Override
+		public boolean acceptsPrimitive(Class<?> type) {
+			return Number.class.isAssignableFrom(type);
+		}
+
+		@Override
+		public Aggregator newInstance() {
+			// a subclass is created by reflection
+			return (getClass() == Average.class) ? new Average().init() : super.newInstance();
+		}
+
+		@Override
+		public boolean isMergeable() {
+			return true;
+		}
+
+		@Override
+		public Aggregator merge(Aggregator other) {
+			Average average = (Average) other;
+			total += average.total;
+			count += average.count;
+			
+			return this;
+		}
+
+		@Override
+		public Aggregator addGroup(long count, double sum, Object min, Object max) {
+			total += sum;
+			this.count += count;
+
+			return this;
+		}
+
         @Override
 		public Object getResult() {
             if (count == 0.0) {
@@ -152,6 +342,11 @@ public abstract class Aggregator implements Serializable {
             return total / count;
         }
 
+		@Override
+		public double asDouble() {
+			return (count == 0.0) ? Double.NaN : total / count;
+		}
+
 		@Override
 		public String getFunction() {
 			return AVG;
@@ -164,10 +359,13 @@ public abstract class Aggregator implements Serializable {
         private static final long serialVersionUID = 1L;
         
         private Object min;
+        private double minValue; // the minimum of the values added as double
+        private boolean hasMinValue;
 
 		@Override
 		public Aggregator init() {
 			min = null;
+			hasMinValue = false;
 			
 			return this;
 		}
@@ -176,6 +374,11 @@ public abstract class Aggregator implements Serializable {
 		@SuppressWarnings("unchecked")
 		public Aggregator add(Object value) {
             if (value != null) {
+                if (hasMinValue) {
+                	// continue with objects
+                	min = minValue;
+                	hasMinValue = false;
+                }
                 if (min == null) {
                 	min = value;
                 } else if (value instanceof Comparable) {
@@ -188,11 +391,70 @@ public abstract class Aggregator implements Serializable {
             return this;
         }
 
+		@Override
+		public Aggregator add(double value) {
+			if (min != null) {
+				return add((Object) value);
+			}
+			if (!hasMinValue || (Double.compare(value, minValue) < 0)) {
+				minValue = value;
+				hasMinValue = true;
+			}
+			
+			return this;
+		}
+
+		@Override
+		public Aggregator addNull() {
+			return this;
+		}
+
+		@Override
+		public boolean acceptsPrimitive(Class<?> type) {
+			// the result has the type of the values
+			return type == Double.class;
+		}
+
+		@Override
+		public Aggregator newInstance() {
+			// a subclass is created by reflection
+			return (getClass() == Minimum.class) ? new Minimum().init() : super.newInstance();
+		}
+
+		@Override
+		public boolean isMergeable() {
+			return true;
+		}
+
+		@Override
+		public Aggregator merge(Aggregator other) {
+			Minimum minimum = (Minimum) other;
+			if (minimum.hasMinValue) {
+				return add(minimum.minValue);
+			}
+			
+			return add(minimum.min);
+		}
+
+		@Override
+		public Aggregator addGroup(long count, double sum, Object min, Object max) {
+			return add(min);
+		}
+
         @Override
 		public Object getResult() {
-            return min;
+            return hasMinValue ? (Object) minValue : min;
         }
 
+		@Override
+		public double asDouble() {
+			if (hasMinValue) {
+				return minValue;
+			}
+			
+			return (min instanceof Number) ? ((Number) min).doubleValue() : Double.NaN;
+		}
+
 		@Override
 		public String getFunction() {
 			return MIN;
@@ -205,10 +467,13 @@ public abstract class Aggregator implements Serializable {
         private static final long serialVersionUID = 1L;
         
         private Object max;
+        private double maxValue; // the maximum of the values added as double
+        private boolean hasMaxValue;
 
 		@Override
 		public Aggregator init() {
 			max = null;
+			hasMaxValue = false;
 			
 			return this;
 		}
@@ -217,6 +482,11 @@ public abstract class Aggregator implements Serializable {
 		@SuppressWarnings("unchecked")
 		public Aggregator add(Object value) {
             if (value != null) {
+                if (hasMaxValue) {
+                	// continue with objects
+                	max = maxValue;
+                	hasMaxValue = false;
+                }
                 if (max == null) {
                 	max = value;
                 } else if (value instanceof Comparable) {
@@ -229,11 +499,70 @@ public abstract class Aggregator implements Serializable {
             return this;
         }
 
+		@Override
+		public Aggregator add(double value) {
+			if (max != null) {
+				return add((Object) value);
+			}
+			if (!hasMaxValue || (Double.compare(value, maxValue) > 0)) {
+				maxValue = value;
+				hasMaxValue = true;
+			}
+			
+			return this;
+		}
+
+		@Override
+		public Aggregator addNull() {
+			return this;
+		}
+
+		@Override
+		public boolean acceptsPrimitive(Class<?> type) {
+			// the result has the type of the values
+			return type == Double.class;
+		}
+
+		@Override
+		public Aggregator newInstance() {
+			// a subclass is created by reflection
+			return (getClass() == Maximum.class) ? new Maximum().init() : super.newInstance();
+		}
+
+		@Override
+		public boolean isMergeable() {
+			return true;
+		}
+
+		@Override
+		public Aggregator merge(Aggregator other) {
+			Maximum maximum = (Maximum) other;
+			if (maximum.hasMaxValue) {
+				return add(maximum.maxValue);
+			}
+			
+			return add(maximum.max);
+		}
+
+		@Override
+		public Aggregator addGroup(long count, double sum, Object min, Object max) {
+			return add(max);
+		}
+
         @Override
 		public Object getResult() {
-            return max;
+            return hasMaxValue ? (Object) maxValue : max;
         }
 
+		@Override
+		public double asDouble() {
+			if (hasMaxValue) {
+				return maxValue;
+			}
+			
+			return (max instanceof Number) ? ((Number) max).doubleValue() : Double.NaN;
+		}
+
 		@Override
 		public String getFunction() {
 			return MAX;
@@ -263,11 +592,65 @@ public abstract class Aggregator implements Serializable {
             return this;
         }
 
+		@Override
+		public Aggregator add(double value) {
+			count++;
+			
+			return this;
+		}
+
+		@Override
+		public Aggregator add(long value) {
+			count++;
+			
+			return this;
+		}
+
+		@Override
+		public Aggregator addNull() {
+			return this;
+		}
+
+		@Override
+		public boolean acceptsPrimitive(Class<?> type) {
+			return true;
+		}
+
+		@Override
+		public Aggregator newInstance() {
+			// a subclass is created by reflection
+			return (getClass() == Count.class) ? new Count().init() : super.newInstance();
+		}
+
+		@Override
+		public boolean isMergeable() {
+			return true;
+		}
+
+		@Override
+		public Aggregator merge(Aggregator other) {
+			count += ((Count) other).count;
+			
+			return this;
+		}
+
+		@Override
+		public Aggregator addGroup(long count, double sum, Object min, Object max) {
+			this.count += count;
+
+			return this;
+		}
+
         @Override
 		public Object getResult() {
             return count;
         }
 
+		@Override
+		public double asDouble() {
+			return count;
+		}
+
 		@Override
 		public String getFunction() {
 			return COUNT;
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index with the rows of each distinct value for the fields of a data
+ * source. The index of a field is built (with a scan of the data source) the
+ * first time the field is used. Create one index for a data source and share
+ * it between the pivot models.
+ * 
+ * The rows of a value are stored as a sorted int[] if the value is rare,
+ * otherwise as a bitmap, so a filter is evaluated as an intersection of row
+ * sets instead of comparing the values row by row.
+ * 
+ * A model doesn't serialize the index, only its id (see {@link #get(String)}),
+ * so all the deserialized models keep sharing the index while it's referenced
+ * (for example by the application).
+ * 
+ * @author Decebal Suiu
+ */
+public class BitmapIndex implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final SharedRegistry<BitmapIndex> registry = new SharedRegistry<>();
+
+	private PivotDataSource dataSource;
+	private Map<Integer, Map<Object, RowSet>> fieldIndexes;
+	private final String id;
+
+	public BitmapIndex(PivotDataSource dataSource) {
+		this.dataSource = dataSource;
+
+		fieldIndexes = new HashMap<>();
+		id = registry.register(this);
+	}
+
+	/**
+	 * Retrieves a live index by id, or null if the index isn't referenced anymore.
+	 */
+	public static BitmapIndex get(String id) {
+		return registry.get(id);
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public PivotDataSource getDataSource() {
+		return dataSource;
+	}
+
+	/**
+	 * Builds the index for some fields now, instead of on first use.
+	 */
+	public void build(int... fieldIndexes) {
+		for (int fieldIndex : fieldIndexes) {
+			getFieldIndex(fieldIndex);
+		}
+	}
+
+	/**
+	 * Retrieves the rows with the value for a field.
+	 */
+	public BitSet getRows(int fieldIndex, Object value) {
+		RowSet rowSet = getFieldIndex(fieldIndex).get(value);
+		return (rowSet != null) ? rowSet.toBitSet() : new BitSet();
+	}
+
+	/**
+	 * Retrieves the rows with any of the values (members) for a field.
+	 */
+	public BitSet getRows(int fieldIndex, Collection<?> values) {
+		Map<Object, RowSet> index = getFieldIndex(fieldIndex);
+		BitSet rows = new BitSet();
+		for (Object value : values) {
+			RowSet rowSet = index.get(value);
+			if (rowSet != null) {
+				rowSet.addTo(rows);
+			}
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Retrieves the rows matching a filter. The key in map is the field index.
+	 */
+	public BitSet getRows(Map<Integer, Object> filter) {
+		if (filter.isEmpty()) {
+			BitSet rows = new BitSet();
+			rows.set(0, dataSource.getRowCount());
+			return rows;
+		}
+
+		List<RowSet> rowSets = new ArrayList<>(filter.size());
+		for (Map.Entry<Integer, Object> entry : filter.entrySet()) {
+			RowSet rowSet = getFieldIndex(entry.getKey()).get(entry.getValue());
+			if (rowSet == null) {
+				// no row has this value
+				return new BitSet();
+			}
+			rowSets.add(rowSet);
+		}
+		rowSets.sort((r1, r2) -> r1.size() - r2.size());
+
+		// start with the smallest set
+		RowSet smallest = rowSets.get(0);
+		if (smallest.rows != null) {
+			BitSet result = new BitSet();
+			for (int row : smallest.rows) {
+				if (containsAll(rowSets, row)) {
+					result.set(row);
+				}
+			}
+
+			return result;
+		}
+
+		BitSet result = smallest.toBitSet();
+		for (int i = 1; i < rowSets.size(); i++) {
+			result.and(rowSets.get(i).bitmap);
+		}
+
+		return result;
+	}
+
+	private boolean containsAll(List<RowSet> rowSets, int row) {
+		for (int i = 1; i < rowSets.size(); i++) {
+			if (!rowSets.get(i).contains(row)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private synchronized Map<Object, RowSet> getFieldIndex(int fieldIndex) {
+		Map<Object, RowSet> index = fieldIndexes.get(fieldIndex);
+		if (index == null) {
+			index = createFieldIndex(fieldIndex);
+			fieldIndexes.put(fieldIndex, index);
+		}
+
+		return index;
+	}
+
+	private Map<Object, RowSet> createFieldIndex(int fieldIndex) {
+		int rowCount = dataSource.getRowCount();
+		Map<Object, RowSet> index = new HashMap<>();
+		if ((dataSource instanceof DictionaryPivotDataSource)
+				&& ((DictionaryPivotDataSource) dataSource).isDictionaryEncoded(fieldIndex)) {
+			// collect the rows by code, without hashing the values
+			DictionaryPivotDataSource encodedDataSource = (DictionaryPivotDataSource) dataSource;
+			RowSetBuilder[] builders = new RowSetBuilder[encodedDataSource.getDictionarySize(fieldIndex)];
+			for (int i = 0; i < rowCount; i++) {
+				int code = encodedDataSource.getValueCode(i, fieldIndex);
+				if (builders[code] == null) {
+					builders[code] = new RowSetBuilder();
+				}
+				builders[code].add(i);
+			}
+			for (int code = 0; code < builders.length; code++) {
+				if (builders[code] != null) {
+					index.put(encodedDataSource.getDictionaryValue(fieldIndex, code), builders[code].build(rowCount));
+				}
+			}
+		} else {
+			Map<Object, RowSetBuilder> builders = new HashMap<>();
+			for (int i = 0; i < rowCount; i++) {
+				Object value = dataSource.getValueAt(i, fieldIndex);
+				RowSetBuilder builder = builders.get(value);
+				if (builder == null) {
+					builder = new RowSetBuilder();
+					builders.put(value, builder);
+				}
+				builder.add(i);
+			}
+			for (Map.Entry<Object, RowSetBuilder> entry : builders.entrySet()) {
+				index.put(entry.getKey(), entry.getValue().build(rowCount));
+			}
+		}
+
+		return index;
+	}
+
+	private static class RowSetBuilder {
+
+		private int[] rows = new int[4];
+		private int size;
+
+		public void add(int row) {
+			if (size == rows.length) {
+				rows = Arrays.copyOf(rows, size * 2);
+			}
+			rows[size++] = row;
+		}
+
+		public RowSet build(int rowCount) {
+			// an int uses 32 bits, a bitmap uses one bit for each row of the data source
+			if ((long) size * 32 < rowCount) {
+				return new RowSet(Arrays.copyOf(rows, size), null);
+			}
+
+			BitSet bitmap = new BitSet(rowCount);
+			for (int i = 0; i < size; i++) {
+				bitmap.set(rows[i]);
+			}
+
+			return new RowSet(null, bitmap);
+		}
+
+	}
+
+	/**
+	 * The rows for a value, as a sorted array or as a bitmap.
+	 */
+	private static class RowSet implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[] rows;
+		private final BitSet bitmap;
+		private final int size;
+
+		public RowSet(int[] rows, BitSet bitmap) {
+			this.rows = rows;
+			this.bitmap = bitmap;
+
+			size = (rows != null) ? rows.length : bitmap.cardinality();
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public boolean contains(int row) {
+			if (rows != null) {
+				return Arrays.binarySearch(rows, row) >= 0;
+			}
+
+			return bitmap.get(row);
+		}
+
+		public void addTo(BitSet result) {
+			if (rows != null) {
+				for (int row : rows) {
+					result.set(row);
+				}
+			} else {
+				result.or(bitmap);
+			}
+		}
+
+		public BitSet toBitSet() {
+			if (rows != null) {
+				BitSet result = new BitSet();
+				addTo(result);
+				return result;
+			}
+
+			return (BitSet) bitmap.clone();
+		}
+
+	}
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Thrown when a pivot calculation is cancelled or exceeds its deadline (see
+ * {@link CalculationProgress}). It records how far the calculation got. The
+ * pivot model discards the partial results, so it can be calculated again.
+ *
+ * @author Decebal Suiu
+ */
+public class CalculationCancelledException extends CancellationException {
+
+	private static final long serialVersionUID = 1L;
+
+	private CalculationProgress.Phase phase;
+	private long processedRows;
+	private long rowCount;
+	private boolean timedOut;
+
+	public CalculationCancelledException(CalculationProgress progress, boolean timedOut) {
+		super((timedOut ? "The pivot calculation timed out" : "The pivot calculation was cancelled")
+				+ ((progress.getPhase() != null) ? " in phase " + progress.getPhase() + " (" + progress.getProcessedRows()
+						+ ((progress.getRowCount() >= 0) ? " of " + progress.getRowCount() : "") + " rows)" : ""));
+
+		phase = progress.getPhase();
+		processedRows = progress.getProcessedRows();
+		rowCount = progress.getRowCount();
+		this.timedOut = timedOut;
+	}
+
+	/**
+	 * Returns the phase in progress when the calculation stopped (null if no
+	 * phase was started).
+	 */
+	public CalculationProgress.Phase getPhase() {
+		return phase;
+	}
+
+	public long getProcessedRows() {
+		return processedRows;
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Returns true if the calculation was stopped by its deadline and not
+	 * by {@link CalculationProgress#cancel()}.
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The progress of a pivot calculation (see {@link PivotModel#calculate(CalculationProgress)}).
+ * The calculation reports the current phase and the processed rows and checks
+ * periodically if it was cancelled or if its deadline passed. It's safe to read
+ * the progress or to cancel the calculation from another thread.
+ *
+ * @author Decebal Suiu
+ */
+public class CalculationProgress {
+
+	private volatile Phase phase;
+	private volatile long rowCount;
+	private final AtomicLong processedRows = new AtomicLong();
+	private volatile boolean cancelled;
+	private volatile long deadline;
+	private final List<Runnable> cancelHandlers = new CopyOnWriteArrayList<>();
+
+	public CalculationProgress() {
+	}
+
+	/**
+	 * Creates a progress that stops the calculation after a timeout.
+	 */
+	public CalculationProgress(long timeout, TimeUnit unit) {
+		setTimeout(timeout, unit);
+	}
+
+	public Phase getPhase() {
+		return phase;
+	}
+
+	/**
+	 * Returns the number of rows to process in the current phase or -1 if
+	 * it's unknown (the rows of a {@link PivotRowSource} are not counted).
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Returns the number of rows processed in the current phase.
+	 */
+	public long getProcessedRows() {
+		return processedRows.get();
+	}
+
+	/**
+	 * Asks the calculation to stop. The calculation throws a
+	 * {@link CalculationCancelledException} at the next check.
+	 */
+	public void cancel() {
+		cancelled = true;
+		for (Runnable handler : cancelHandlers) {
+			handler.run();
+		}
+	}
+
+	/**
+	 * Adds a handler run (on the cancelling thread) when the calculation is
+	 * cancelled, for example to stop a running database query that doesn't
+	 * check the progress. If the calculation is already cancelled the handler
+	 * runs now.
+	 */
+	public void addCancelHandler(Runnable handler) {
+		cancelHandlers.add(handler);
+		if (cancelled) {
+			handler.run();
+		}
+	}
+
+	public void removeCancelHandler(Runnable handler) {
+		cancelHandlers.remove(handler);
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Returns the time (see {@link System#currentTimeMillis()}) after which the
+	 * calculation is stopped, or 0 if the calculation has no deadline.
+	 */
+	public long getDeadline() {
+		return deadline;
+	}
+
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Sets the deadline to a timeout from now.
+	 */
+	public void setTimeout(long timeout, TimeUnit unit) {
+		deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+	}
+
+	public boolean isTimedOut() {
+		return (deadline > 0) && (System.currentTimeMillis() > deadline);
+	}
+
+	/**
+	 * Returns the milliseconds left until the deadline, or -1 if the
+	 * calculation has no deadline.
+	 */
+	public long getRemainingTime() {
+		if (deadline <= 0) {
+			return -1;
+		}
+
+		return Math.max(deadline - System.currentTimeMillis(), 0);
+	}
+
+	/**
+	 * Starts a phase of the calculation.
+	 */
+	public void startPhase(Phase phase, long rowCount) {
+		checkCancelled();
+		this.phase = phase;
+		this.rowCount = rowCount;
+		processedRows.set(0);
+	}
+
+	/**
+	 * Adds some processed rows to the current phase and checks if the
+	 * calculation was cancelled.
+	 */
+	public void advance(long rows) {
+		processedRows.addAndGet(rows);
+		checkCancelled();
+	}
+
+	/**
+	 * Throws a {@link CalculationCancelledException} if the calculation was
+	 * cancelled or its deadline passed.
+	 */
+	public void checkCancelled() {
+		if (cancelled) {
+			throw new CalculationCancelledException(this, false);
+		}
+		if (isTimedOut()) {
+			throw new CalculationCancelledException(this, true);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CalculationProgress [phase=" + phase + ", processedRows=" + processedRows + ", rowCount=" + rowCount
+				+ ", cancelled=" + cancelled + ", deadline=" + deadline + "]";
+	}
+
+	public enum Phase {
+
+		/**
+		 * Collects the row and column keys (the header trees).
+		 */
+		HEADERS,
+
+		/**
+		 * Aggregates the rows of the data source.
+		 */
+		AGGREGATION,
+
+		/**
+		 * Calculates the values of the cells.
+		 */
+		FILL
+
+	}
+
+}
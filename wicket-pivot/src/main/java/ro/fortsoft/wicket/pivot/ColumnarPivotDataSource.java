@@ -0,0 +1,429 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import java.io.Serializable;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An in memory data source that keeps one typed column for each field.
+ * The measures (by default the Double and Float fields) are stored in
+ * double[]/long[] arrays with a null bitmap, all the other fields are
+ * dictionary encoded (an int[] with the codes of the values).
+ * 
+ * @author Decebal Suiu
+ */
+public class ColumnarPivotDataSource implements DictionaryPivotDataSource, PrimitivePivotDataSource {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private List<String> columnNames;
+	private List<Class<?>> columnTypes;
+	private Map<String, Integer> columnIndexes;
+	private Column[] columns;
+	private int rowCount;
+
+	public ColumnarPivotDataSource(ResultSet resultSet) throws SQLException {
+		this(resultSet, null);
+	}
+
+	/**
+	 * @param measureFieldNames the names of the numeric fields stored as measures; 
+	 * if null, the Double and Float fields are stored as measures
+	 */
+	public ColumnarPivotDataSource(ResultSet resultSet, Set<String> measureFieldNames) throws SQLException {
+		ResultSetMetaData resultSetMetaData = resultSet.getMetaData();
+		int columnCount = resultSetMetaData.getColumnCount();
+		init(columnCount);
+		for (int i = 0; i < columnCount; i++) {
+			Class<?> type = getClass(resultSetMetaData.getColumnClassName(i + 1));
+			addColumn(i, resultSetMetaData.getColumnLabel(i + 1), type, measureFieldNames);
+		}
+
+		while (resultSet.next()) {
+			for (int i = 0; i < columnCount; i++) {
+				columns[i].add(rowCount, resultSet.getObject(i + 1));
+			}
+			rowCount++;
+		}
+		trim();
+	}
+
+	/**
+	 * Creates a columnar copy of another data source.
+	 */
+	public ColumnarPivotDataSource(PivotDataSource dataSource) {
+		this(dataSource, null);
+	}
+
+	public ColumnarPivotDataSource(PivotDataSource dataSource, Set<String> measureFieldNames) {
+		int columnCount = dataSource.getFieldCount();
+		init(columnCount);
+		for (int i = 0; i < columnCount; i++) {
+			addColumn(i, dataSource.getFieldName(i), dataSource.getFieldType(i), measureFieldNames);
+		}
+
+		int count = dataSource.getRowCount();
+		for (int row = 0; row < count; row++) {
+			for (int i = 0; i < columnCount; i++) {
+				columns[i].add(rowCount, dataSource.getValueAt(row, i));
+			}
+			rowCount++;
+		}
+		trim();
+	}
+
+	@Override
+	public String getFieldName(int fieldIndex) {
+		return columnNames.get(fieldIndex);
+	}
+
+	@Override
+	public int getFieldIndex(String fieldName) {
+		Integer index = columnIndexes.get(fieldName);
+		return (index != null) ? index : -1;
+	}
+
+	@Override
+	public Class<?> getFieldType(int fieldIndex) {
+		return columnTypes.get(fieldIndex);
+	}
+
+	@Override
+	public int getFieldCount() {
+		return columns.length;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	@Override
+	public Object getValueAt(int rowIndex, int fieldIndex) {
+		return columns[fieldIndex].get(rowIndex);
+	}
+
+	@Override
+	public Object getValueAt(int rowIndex, PivotField field) {
+		return columns[getFieldIndex(field.getName())].get(rowIndex);
+	}
+
+	@Override
+	public boolean isDictionaryEncoded(int fieldIndex) {
+		return columns[fieldIndex] instanceof DictionaryColumn;
+	}
+
+	@Override
+	public int getDictionarySize(int fieldIndex) {
+		return getDictionaryColumn(fieldIndex).values.size();
+	}
+
+	@Override
+	public int getCode(int fieldIndex, Object value) {
+		Integer code = getDictionaryColumn(fieldIndex).codes.get(value);
+		return (code != null) ? code : -1;
+	}
+
+	@Override
+	public Object getDictionaryValue(int fieldIndex, int code) {
+		return getDictionaryColumn(fieldIndex).values.get(code);
+	}
+
+	@Override
+	public int getValueCode(int rowIndex, int fieldIndex) {
+		return getDictionaryColumn(fieldIndex).data[rowIndex];
+	}
+
+	@Override
+	public Class<?> getPrimitiveType(int fieldIndex) {
+		Column column = columns[fieldIndex];
+		if (column instanceof DoubleColumn) {
+			return double.class;
+		} else if (column instanceof LongColumn) {
+			return long.class;
+		}
+
+		return null;
+	}
+
+	@Override
+	public boolean isNullAt(int rowIndex, int fieldIndex) {
+		return columns[fieldIndex].isNull(rowIndex);
+	}
+
+	@Override
+	public double getDoubleAt(int rowIndex, int fieldIndex) {
+		return columns[fieldIndex].getDouble(rowIndex);
+	}
+
+	@Override
+	public long getLongAt(int rowIndex, int fieldIndex) {
+		return columns[fieldIndex].getLong(rowIndex);
+	}
+
+	@Override
+	public String toString() {
+		return "ColumnarPivotDataSource [columnNames=" + columnNames + ", rowCount=" + rowCount + "]";
+	}
+
+	private void init(int columnCount) {
+		columnNames = new ArrayList<>(columnCount);
+		columnTypes = new ArrayList<>(columnCount);
+		columnIndexes = new HashMap<>();
+		columns = new Column[columnCount];
+	}
+
+	private void addColumn(int index, String name, Class<?> type, Set<String> measureFieldNames) {
+		columnNames.add(name);
+		columnTypes.add(type);
+		columnIndexes.put(name, index);
+		columns[index] = createColumn(name, type, measureFieldNames);
+	}
+
+	private Column createColumn(String name, Class<?> type, Set<String> measureFieldNames) {
+		boolean measure = (measureFieldNames != null) ? measureFieldNames.contains(name) 
+				: (type == Double.class) || (type == Float.class);
+		if (measure) {
+			if ((type == Double.class) || (type == Float.class)) {
+				return new DoubleColumn(type);
+			} else if ((type == Long.class) || (type == Integer.class) || (type == Short.class) || (type == Byte.class)) {
+				return new LongColumn(type);
+			}
+		}
+
+		return new DictionaryColumn();
+	}
+
+	private void trim() {
+		for (Column column : columns) {
+			column.trim(rowCount);
+		}
+	}
+
+	private DictionaryColumn getDictionaryColumn(int fieldIndex) {
+		Column column = columns[fieldIndex];
+		if (!(column instanceof DictionaryColumn)) {
+			throw new IllegalArgumentException("Field '" + getFieldName(fieldIndex) + "' is not dictionary encoded");
+		}
+
+		return (DictionaryColumn) column;
+	}
+
+	private static Class<?> getClass(String className) {
+		try {
+			return Class.forName(className);
+		} catch (ClassNotFoundException e) {
+			return Object.class;
+		}
+	}
+
+	private static int grow(int capacity, int row) {
+		int newCapacity = Math.max(capacity, INITIAL_CAPACITY);
+		while (newCapacity <= row) {
+			newCapacity *= 2;
+		}
+
+		return newCapacity;
+	}
+
+	private static abstract class Column implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		public abstract Object get(int row);
+
+		public abstract void add(int row, Object value);
+
+		public boolean isNull(int row) {
+			return get(row) == null;
+		}
+
+		public double getDouble(int row) {
+			return ((Number) get(row)).doubleValue();
+		}
+
+		public long getLong(int row) {
+			return ((Number) get(row)).longValue();
+		}
+
+		public abstract void trim(int rowCount);
+
+	}
+
+	private static class DictionaryColumn extends Column {
+
+		private static final long serialVersionUID = 1L;
+
+		private int[] data = new int[0];
+		private ArrayList<Object> values = new ArrayList<>();
+		private Map<Object, Integer> codes = new HashMap<>();
+
+		@Override
+		public Object get(int row) {
+			return values.get(data[row]);
+		}
+
+		@Override
+		public void add(int row, Object value) {
+			Integer code = codes.get(value);
+			if (code == null) {
+				code = values.size();
+				values.add(value);
+				codes.put(value, code);
+			}
+			if (row >= data.length) {
+				data = Arrays.copyOf(data, grow(data.length, row));
+			}
+			data[row] = code;
+		}
+
+		@Override
+		public void trim(int rowCount) {
+			data = Arrays.copyOf(data, rowCount);
+			values.trimToSize();
+		}
+
+	}
+
+	private static class DoubleColumn extends Column {
+
+		private static final long serialVersionUID = 1L;
+
+		private Class<?> type;
+		private double[] data = new double[0];
+		private BitSet nulls = new BitSet();
+
+		public DoubleColumn(Class<?> type) {
+			this.type = type;
+		}
+
+		@Override
+		public Object get(int row) {
+			if (nulls.get(row)) {
+				return null;
+			}
+
+			return (type == Float.class) ? Float.valueOf((float) data[row]) : Double.valueOf(data[row]);
+		}
+
+		@Override
+		public boolean isNull(int row) {
+			return nulls.get(row);
+		}
+
+		@Override
+		public double getDouble(int row) {
+			return data[row];
+		}
+
+		@Override
+		public long getLong(int row) {
+			return (long) data[row];
+		}
+
+		@Override
+		public void add(int row, Object value) {
+			if (row >= data.length) {
+				data = Arrays.copyOf(data, grow(data.length, row));
+			}
+			if (value == null) {
+				nulls.set(row);
+			} else {
+				data[row] = ((Number) value).doubleValue();
+			}
+		}
+
+		@Override
+		public void trim(int rowCount) {
+			data = Arrays.copyOf(data, rowCount);
+		}
+
+	}
+
+	private static class LongColumn extends Column {
+
+		private static final long serialVersionUID = 1L;
+
+		private Class<?> type;
+		private long[] data = new long[0];
+		private BitSet nulls = new BitSet();
+
+		public LongColumn(Class<?> type) {
+			this.type = type;
+		}
+
+		@Override
+		public Object get(int row) {
+			if (nulls.get(row)) {
+				return null;
+			}
+
+			long value = data[row];
+			if (type == Integer.class) {
+				return Integer.valueOf((int) value);
+			} else if (type == Short.class) {
+				return Short.valueOf((short) value);
+			} else if (type == Byte.class) {
+				return Byte.valueOf((byte) value);
+			}
+
+			return Long.valueOf(value);
+		}
+
+		@Override
+		public boolean isNull(int row) {
+			return nulls.get(row);
+		}
+
+		@Override
+		public double getDouble(int row) {
+			return data[row];
+		}
+
+		@Override
+		public long getLong(int row) {
+			return data[row];
+		}
+
+		@Override
+		public void add(int row, Object value) {
+			if (row >= data.length) {
+				data = Arrays.copyOf(data, grow(data.length, row));
+			}
+			if (value == null) {
+				nulls.set(row);
+			} else {
+				data[row] = ((Number) value).longValue();
+			}
+		}
+
+		@Override
+		public void trim(int rowCount) {
+			data = Arrays.copyOf(data, rowCount);
+		}
+
+	}
+
+}
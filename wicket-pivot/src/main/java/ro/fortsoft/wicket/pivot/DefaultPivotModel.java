@@ -13,12 +13,23 @@
 package ro.fortsoft.wicket.pivot;
 
 import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.collections.map.MultiKeyMap;
-import ro.fortsoft.wicket.pivot.tree.Node;
+import ro.fortsoft.wicket.pivot.PivotPhaseEvent.Phase;
+import ro.fortsoft.wicket.pivot.engine.CellStore;
+import ro.fortsoft.wicket.pivot.engine.HashAggregationEngine;
+import ro.fortsoft.wicket.pivot.engine.ParallelAggregationEngine;
+import ro.fortsoft.wicket.pivot.engine.PivotCube;
+import ro.fortsoft.wicket.pivot.engine.RollUpEngine;
+import ro.fortsoft.wicket.pivot.engine.StreamAggregationEngine;
+import ro.fortsoft.wicket.pivot.jfr.PivotFlightRecorder;
+import ro.fortsoft.wicket.pivot.jfr.PivotFlightRecorder.EventType;
 import ro.fortsoft.wicket.pivot.tree.Tree;
 import ro.fortsoft.wicket.pivot.tree.TreeHelper;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @author Decebal Suiu
@@ -31,11 +42,35 @@ public class DefaultPivotModel implements PivotModel {
 	private List<PivotField> fields;
 	private Tree columnsHeaderTree;
 	private Tree rowsHeaderTree;
-	private List<MultiKeyMap> calculatedData; // or use a MultiValueMap from apache commons
+	private List<List<Object>> columnKeys;
+	private List<List<Object>> rowKeys;
+	private transient Map<List<Object>, Integer> columnOrdinals;
+	private transient Map<List<Object>, Integer> rowOrdinals;
+	private List<PivotField> calculatedDataFields;
+	private CellStore calculatedData; // only the values are serialized
+	private PivotTotals totals; // accumulated while the values are stored
 
 	private boolean showGrandTotalForColumn;
 	private boolean showGrandTotalForRow;
 	private boolean autoCalculate;
+	private CalculationMode calculationMode = CalculationMode.SINGLE_PASS;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private transient BitmapIndex bitmapIndex; // shared, retrieved by id after deserialization
+	private String bitmapIndexId;
+	private transient AggregateLattice aggregateLattice; // shared, retrieved by id after deserialization
+	private String aggregateLatticeId;
+	private List<PivotPhaseListener> phaseListeners = new CopyOnWriteArrayList<>();
+
+	/*
+	 * The state of the last calculation, reused when the layout doesn't change or is coarser.
+	 * It's not serialized with the page (only the calculated values are), the next calculation of
+	 * a deserialized model starts from scratch (the calculated layout is null), unless the state
+	 * is shared with the copy (see shareCalculation). The state is never changed in place.
+	 */
+	private transient List<Object> calculatedLayout;
+	private transient PivotCube cube;
+	private transient int[] rowGroups;
+	private transient int[] columnGroups;
 
 	public DefaultPivotModel(PivotDataSource dataSource) {
 		this.dataSource = dataSource;
@@ -100,29 +135,155 @@ public class DefaultPivotModel implements PivotModel {
 
 	@Override
 	public void calculate() {
-		long start = System.currentTimeMillis();
-		rowsHeaderTree = null;
-		columnsHeaderTree = null;
-		getRowsHeaderTree();
-		long t1 = System.currentTimeMillis();
-		System.out.println("created rowsHeaderTree in " + (t1 - start));
-		getColumnsHeaderTree();
-		long t2 = System.currentTimeMillis();
-		System.out.println("created columnsHeaderTree in " + (t2 - t1));
-
-		t1 = System.currentTimeMillis();
+		calculate(new CalculationProgress());
+	}
+
+	/**
+	 * Calculates the pivot data. If the progress is cancelled (or its deadline
+	 * passes) the partial results are discarded and the next calculation starts
+	 * from scratch.
+	 */
+	@Override
+	public void calculate(CalculationProgress progress) {
+		Object event = PivotFlightRecorder.begin(EventType.CALCULATION);
+		try {
+			doCalculate(progress);
+		} catch (CancellationException e) {
+			resetCalculation();
+			throw e;
+		} finally {
+			if (PivotFlightRecorder.shouldCommit(event)) {
+				// a cancelled calculation is recorded without counts
+				CellStore data = calculatedData;
+				PivotFlightRecorder.commit(event, this, getKnownRowCount(),
+						(data != null) ? data.getRowCount() : 0, (data != null) ? data.getColumnCount() : 0,
+						(data != null) ? data.getValueCount() : 0);
+			}
+		}
+	}
+
+	private void doCalculate(CalculationProgress progress) {
+		if (calculationMode == CalculationMode.CELL_SCAN) {
+			checkRandomAccess("The " + calculationMode + " calculation");
+		}
+		long start = System.nanoTime();
+		List<Object> layout = getLayout();
+		boolean layoutChanged = !layout.equals(calculatedLayout);
+		List<PivotField> rowFields = getFields(PivotField.Area.ROW);
+		List<PivotField> columnFields = getFields(PivotField.Area.COLUMN);
 		List<PivotField> dataFields = getFields(PivotField.Area.DATA);
-		calculatedData = new ArrayList<>();
-		for (PivotField field : dataFields) {
+		List<PivotField> measures = getMeasures(dataFields);
+		boolean useCube = (calculationMode != CalculationMode.CELL_SCAN);
+		if (layoutChanged) {
+			PivotCube source = useCube ? getRollUpSource(rowFields, columnFields, measures, progress) : null;
+			if (source != null) {
+				rollUp(source, rowFields, columnFields, measures);
+			} else {
+				createHeaderTrees(true, true, progress);
+				cube = null;
+				rowGroups = null;
+				columnGroups = null;
+			}
+			calculatedLayout = layout;
+		} else if (useCube && (cube != null) && (rowGroups == null) && !cube.hasMeasures(measures)) {
+			// the cube was derived from an aggregated cube, without the groups needed to aggregate new measures
+			PivotCube aggregatedCube = getAggregatedCube(rowFields, columnFields, measures, progress);
+			if (aggregatedCube != null) {
+				rollUp(aggregatedCube, rowFields, columnFields, measures);
+			}
+		}
+
+		if (!useCube) {
+			cube = null;
+		} else {
+			long aggregationStart = System.nanoTime();
+			HashAggregationEngine engine = new HashAggregationEngine(dataSource, rowFields, columnFields,
+					getRowKeys(), getColumnKeys(), measures);
+			engine.setProgress(progress);
+			// the rows are not scanned (nor counted) if the cube has all the measures
+			boolean scan = (cube == null) || !cube.hasMeasures(measures);
+			progress.startPhase(CalculationProgress.Phase.AGGREGATION, scan ? dataSource.getRowCount() : 0);
+			if ((cube != null) && ((rowGroups != null) || cube.hasMeasures(measures))) {
+				// same rows and columns, aggregate only the new measures
+				cube = engine.update(cube, rowGroups, columnGroups);
+			} else {
+				rowGroups = new int[dataSource.getRowCount()];
+				columnGroups = new int[dataSource.getRowCount()];
+				engine.setGroups(rowGroups, columnGroups);
+				if (calculationMode == CalculationMode.PARALLEL) {
+					cube = new ParallelAggregationEngine(engine, parallelism).aggregate();
+				} else {
+					cube = engine.aggregate();
+				}
+			}
+			firePhaseEvent(Phase.AGGREGATION, aggregationStart, progress.getProcessedRows(), cube.getRowKeys().size(),
+					cube.getColumnKeys().size(), cube.getCellCount());
+		}
+		long fillStart = System.nanoTime();
+		calculatedDataFields = dataFields;
+		// with a cube the number of values is known (the cells of the cube), otherwise the store is chosen by size
+		long expectedValueCount = (cube != null) ? (long) cube.getCellCount() * dataFields.size() : -1;
+		calculatedData = new CellStore(getRowKeys().size(), getColumnKeys().size(), dataFields.size(),
+				expectedValueCount);
+		totals = new PivotTotals(dataFields, getRowKeys().size(), getColumnKeys().size());
+		progress.startPhase(CalculationProgress.Phase.FILL, (long) getRowKeys().size() * dataFields.size());
+		for (int i = 0; i < dataFields.size(); i++) {
+			PivotField field = dataFields.get(i);
 			field.resetCalculation();
-			calculatedData.add(getData(field));
+			if (cube != null) {
+				fillData(i, field, cube, progress);
+			} else {
+				fillData(i, field, progress);
+			}
 		}
-		t2 = System.currentTimeMillis();
-		System.out.println("filled calculatedData in " + (t2 - t1));
-		long stop = System.currentTimeMillis();
-		System.out.println("calculated in " + (stop- start));
-		System.out.println("calculatedData = " + calculatedData);
-		// getValues(field, filter)
+		int rowKeyCount = calculatedData.getRowCount();
+		int columnKeyCount = calculatedData.getColumnCount();
+		firePhaseEvent(Phase.FILL, fillStart, rowKeyCount, rowKeyCount, columnKeyCount, calculatedData.getValueCount());
+		firePhaseEvent(Phase.CALCULATION, start, getKnownRowCount(), rowKeyCount, columnKeyCount,
+				calculatedData.getValueCount());
+	}
+
+	/**
+	 * Shares the state of the last calculation (the cube, the groups of the
+	 * data source rows and the calculated layout) with a copy of this model,
+	 * so the next calculation of the copy reuses it like this model would. Both
+	 * models can be calculated after this call.
+	 */
+	public void shareCalculation(DefaultPivotModel copy) {
+		copy.calculatedLayout = calculatedLayout;
+		copy.cube = cube;
+		copy.rowGroups = rowGroups;
+		copy.columnGroups = columnGroups;
+	}
+
+	private void resetCalculation() {
+		calculatedLayout = null;
+		cube = null;
+		rowGroups = null;
+		columnGroups = null;
+		calculatedDataFields = null;
+		calculatedData = null;
+		totals = null;
+	}
+
+	/*
+	 * Retrieves the fields (and their sort order) on the ROW and COLUMN areas.
+	 * The header trees and the groups of the data source rows depend only on
+	 * this layout.
+	 */
+	private List<Object> getLayout() {
+		List<Object> layout = new ArrayList<>();
+		for (PivotField field : getFields(PivotField.Area.ROW)) {
+			layout.add(field.getIndex());
+			layout.add(field.getSortOrder());
+		}
+		layout.add(PivotField.Area.COLUMN);
+		for (PivotField field : getFields(PivotField.Area.COLUMN)) {
+			layout.add(field.getIndex());
+			layout.add(field.getSortOrder());
+		}
+
+		return layout;
 	}
 
 	/*
@@ -132,22 +293,21 @@ public class DefaultPivotModel implements PivotModel {
 	 * Daca in getValues se sta 3,25 ms (cum am obtinut) rezulta un total de 
 	 * 5576 ms. Cred ca ar trebuii sa parcurg o singura data inregistrarile din baza.
 	 */
-	private MultiKeyMap getData(PivotField dataField) {
-		MultiKeyMap data = new MultiKeyMap();
+	private void fillData(int dataFieldIndex, PivotField dataField, CalculationProgress progress) {
 		List<List<Object>> rowKeys = getRowKeys();
-		System.out.println("rowKeys.size() = " + rowKeys.size());
 		List<List<Object>> columnKeys = getColumnKeys();
-		System.out.println("columnKeys.size() = " + columnKeys.size());
 		
 		List<PivotField> rowFields = getFields(PivotField.Area.ROW);
 		List<PivotField> columnFields = getFields(PivotField.Area.COLUMN);
-		for (List<Object> rowKey : rowKeys) {
-			for (List<Object> columnKey : columnKeys) {
+		for (int i = 0; i < rowKeys.size(); i++) {
+			List<Object> rowKey = rowKeys.get(i);
+			for (int j = 0; j < columnKeys.size(); j++) {
+				List<Object> columnKey = columnKeys.get(j);
 				Map<Integer, Object> rowFilter = getFilter(rowFields, rowKey);
 				Map<Integer, Object> columnFilter = getFilter(columnFields, columnKey);
 				final Map<Integer, Object> filter = new HashMap<>(rowFilter);
 				filter.putAll(columnFilter);				
-				List<Object> values = getValues(dataField, filter);
+				List<Object> values = getValues(dataField, filter, progress);
 				if (!CollectionUtils.isEmpty(values) || dataField.getFieldCalculation()!=null) {
 					/*
 					System.out.println("filter = " + filter);
@@ -155,54 +315,371 @@ public class DefaultPivotModel implements PivotModel {
 					System.out.println(values.size());
 					*/
 					Object summary = PivotUtils.getSummary(dataField, values, field -> {
-						List<Object> fieldValues = getValues(field, filter);
+						List<Object> fieldValues = getValues(field, filter, progress);
 						return field.getAggregator().init().addAll(fieldValues).getResult();
 					});
 //					System.out.println("summary = " + summary);
-					data.put(rowKey, columnKey, summary);
+					setValue(i, j, dataFieldIndex, (Number) summary);
 				}
 			}
+			progress.advance(1);
+		}
+	}
+
+	/*
+	 * Stores the summaries for a data field from the cube created in a single pass.
+	 * Like in fillData(int, PivotField), the field calculations are evaluated for every
+	 * (rowKey, columnKey) pair and the aggregations only for the non empty cells.
+	 */
+	private void fillData(int dataFieldIndex, PivotField dataField, final PivotCube cube,
+			CalculationProgress progress) {
+		if (dataField.getFieldCalculation() == null) {
+			int measureIndex = cube.getMeasureIndex(dataField);
+			for (int cell = 0; cell < cube.getCellCount(); cell++) {
+				Number summary = (Number) cube.getState(measureIndex, cell).getResult();
+				setValue(cube.getCellRow(cell), cube.getCellColumn(cell), dataFieldIndex, summary);
+			}
+			progress.advance(cube.getRowKeys().size());
+		} else {
+			int rowCount = cube.getRowKeys().size();
+			int columnCount = cube.getColumnKeys().size();
+			for (int i = 0; i < rowCount; i++) {
+				for (int j = 0; j < columnCount; j++) {
+					final int cell = cube.getCell(i, j);
+					Number summary = PivotUtils.getSummary(dataField, Collections.emptyList(),
+							field -> getCubeValue(cube, field, cell));
+					setValue(i, j, dataFieldIndex, summary);
+				}
+				progress.advance(1);
+			}
+		}
+	}
+
+	private void setValue(int rowIndex, int columnIndex, int dataFieldIndex, Number value) {
+		calculatedData.setValue(rowIndex, columnIndex, dataFieldIndex, value);
+		totals.addValue(rowIndex, columnIndex, dataFieldIndex, value);
+	}
+
+	private Object getCubeValue(PivotCube cube, PivotField field, int cell) {
+		if (field == null) {
+			return null;
+		}
+
+		int measureIndex = cube.getMeasureIndex(field);
+		if ((measureIndex == -1) || (cell == -1)) {
+			// no values
+			return field.getAggregator().newInstance().getResult();
+		}
+
+		return cube.getState(measureIndex, cell).getResult();
+	}
+
+	/*
+	 * Derives the header trees and the cube from a finer cube. The groups of
+	 * the data source rows are kept only if the finer cube is the last one.
+	 */
+	private void rollUp(PivotCube source, List<PivotField> rowFields, List<PivotField> columnFields,
+			List<PivotField> measures) {
+		long start = System.nanoTime();
+		RollUpEngine rollUpEngine = new RollUpEngine(source, rowFields, columnFields);
+		setRowsHeaderTree(new Tree(rollUpEngine.getRowsRoot()));
+		setColumnsHeaderTree(new Tree(rollUpEngine.getColumnsRoot()));
+		if ((source == cube) && (rowGroups != null)) {
+			// the groups may be shared with a copy of this model
+			rowGroups = rowGroups.clone();
+			columnGroups = columnGroups.clone();
+			rollUpEngine.rollUpGroups(rowGroups, columnGroups);
+		} else {
+			rowGroups = null;
+			columnGroups = null;
+		}
+		int sourceCellCount = source.getCellCount();
+		cube = rollUpEngine.rollUp(measures);
+		firePhaseEvent(Phase.ROLL_UP, start, sourceCellCount, cube.getRowKeys().size(), cube.getColumnKeys().size(),
+				cube.getCellCount());
+	}
+
+	/*
+	 * Retrieves a cube that can be rolled up to the new layout: the last cube
+	 * if fields were only removed or moved, otherwise an aggregated cube. If the
+	 * last cube cannot aggregate the new measures (it has no groups) an
+	 * aggregated cube with all the measures is preferred.
+	 */
+	private PivotCube getRollUpSource(List<PivotField> rowFields, List<PivotField> columnFields,
+			List<PivotField> measures, CalculationProgress progress) {
+		boolean canRollUp = (cube != null) && RollUpEngine.canRollUp(cube, rowFields, columnFields);
+		if (canRollUp && ((rowGroups != null) || cube.hasMeasures(measures))) {
+			return cube;
+		}
+
+		PivotCube aggregatedCube = getAggregatedCube(rowFields, columnFields, measures, progress);
+		if (aggregatedCube != null) {
+			return aggregatedCube;
+		}
+
+		return canRollUp ? cube : null;
+	}
+
+	private PivotCube getAggregatedCube(List<PivotField> rowFields, List<PivotField> columnFields,
+			List<PivotField> measures, CalculationProgress progress) {
+		List<PivotField> fields = new ArrayList<>(rowFields);
+		fields.addAll(columnFields);
+
+		return getAggregatedCube(fields, measures, progress);
+	}
+
+	/**
+	 * Retrieves a cube aggregated without scanning the data source by index,
+	 * with all the fields as dimensions and all the measures, or null if no
+	 * such cube exists. The cube is rolled up to the ROW and COLUMN fields. By
+	 * default the cube is retrieved from the aggregate lattice, if one is set,
+	 * or aggregated in a single pass if the data source is a {@link PivotRowSource}.
+	 */
+	protected PivotCube getAggregatedCube(List<PivotField> fields, List<PivotField> measures,
+			CalculationProgress progress) {
+		PivotCube cube = getLatticeCube(fields, measures);
+		if ((cube == null) && (dataSource instanceof PivotRowSource)) {
+			cube = aggregateRows((PivotRowSource) dataSource, fields, measures, progress);
+		}
+
+		return cube;
+	}
+
+	/**
+	 * Retrieves the smallest cube of the aggregate lattice with all the fields
+	 * and all the measures, or null. The lattice is built on first use.
+	 */
+	protected PivotCube getLatticeCube(List<PivotField> fields, List<PivotField> measures) {
+		if (aggregateLattice == null) {
+			return null;
+		}
+
+		if (!aggregateLattice.isBuilt()) {
+			long start = System.nanoTime();
+			aggregateLattice.build();
+			firePhaseEvent(Phase.LATTICE, start, aggregateLattice.getDataSource().getRowCount(), 0, 0,
+					aggregateLattice.getCellCount());
+		}
+
+		return aggregateLattice.getCube(fields, measures);
+	}
+
+	/**
+	 * Aggregates the rows of a row source in a single pass, without keeping
+	 * them in memory (see {@link StreamAggregationEngine}).
+	 */
+	protected PivotCube aggregateRows(PivotRowSource rowSource, List<PivotField> fields, List<PivotField> measures,
+			CalculationProgress progress) {
+		long start = System.nanoTime();
+		StreamAggregationEngine engine = new StreamAggregationEngine(rowSource, fields, measures);
+		engine.setProgress(progress);
+		progress.startPhase(CalculationProgress.Phase.AGGREGATION, rowSource.getKnownRowCount());
+		PivotCube cube = engine.aggregate();
+		firePhaseEvent(Phase.STREAM_AGGREGATION, start, engine.getRowCount(), cube.getRowKeys().size(), 0,
+				cube.getCellCount());
+
+		return cube;
+	}
+
+	/*
+	 * Returns the row count of the data source or -1 if the rows of a row
+	 * source are not counted (a row source is not scanned to count its rows).
+	 */
+	private long getKnownRowCount() {
+		return PivotUtils.getKnownRowCount(dataSource);
+	}
+
+	/*
+	 * Retrieves the fields that must be aggregated: the data fields and the
+	 * fields used by the field calculations.
+	 */
+	private List<PivotField> getMeasures(List<PivotField> dataFields) {
+		List<PivotField> measures = new ArrayList<>();
+		for (PivotField field : dataFields) {
+			FieldCalculation fieldCalculation = field.getFieldCalculation();
+			if (fieldCalculation == null) {
+				addMeasure(measures, field);
+			} else {
+				addMeasure(measures, fieldCalculation.getFieldA());
+				addMeasure(measures, fieldCalculation.getFieldB());
+			}
+		}
+
+		return measures;
+	}
+
+	private void addMeasure(List<PivotField> measures, PivotField field) {
+		if ((field != null) && (field.getFieldCalculation() == null) && !measures.contains(field)) {
+			measures.add(field);
 		}
-		
-		return data;
 	}
 		
+	/**
+	 * Gets the columns header tree, created by {@link #calculate()}. Before the
+	 * first calculation the tree is created by reading the rows by index, which
+	 * a sequential data source (see {@link PivotRowSource#isRandomAccess()})
+	 * does not support.
+	 */
 	@Override
 	public Tree getColumnsHeaderTree() {
 		if (columnsHeaderTree == null) {
-			Node root = new Node();
-			insertChildren(root, getFields(PivotField.Area.COLUMN));
-			columnsHeaderTree = new Tree(root);
+			createHeaderTrees(false, true, new CalculationProgress());
 		}
 
 		return columnsHeaderTree;
 	}
 
+	/**
+	 * Gets the rows header tree, see {@link #getColumnsHeaderTree()}.
+	 */
 	@Override
 	public Tree getRowsHeaderTree() {
 		if (rowsHeaderTree == null) {
-			Node root = new Node();
-			insertChildren(root, getFields(PivotField.Area.ROW));
-			rowsHeaderTree = new Tree(root);
+			createHeaderTrees(true, false, new CalculationProgress());
 		}
 
 		return rowsHeaderTree;
 	}
 
+	/*
+	 * Creates the header trees from the distinct row/column keys, collected in
+	 * a single scan of the data source.
+	 */
+	private void createHeaderTrees(boolean rows, boolean columns, CalculationProgress progress) {
+		checkRandomAccess("Creating the header trees without a calculation");
+		List<PivotField> rowFields = getFields(PivotField.Area.ROW);
+		List<PivotField> columnFields = getFields(PivotField.Area.COLUMN);
+		int[] rowFieldIndexes = PivotUtils.getFieldIndexes(rowFields);
+		int[] columnFieldIndexes = PivotUtils.getFieldIndexes(columnFields);
+
+		Set<List<Object>> rowKeys = new LinkedHashSet<>();
+		Set<List<Object>> columnKeys = new LinkedHashSet<>();
+		int rowCount = dataSource.getRowCount();
+		long start = System.nanoTime();
+		progress.startPhase(CalculationProgress.Phase.HEADERS, rowCount);
+		int reportedRow = 0;
+		for (int i = 0; i < rowCount; i++) {
+			if (i - reportedRow == HashAggregationEngine.PROGRESS_STEP) {
+				progress.advance(HashAggregationEngine.PROGRESS_STEP);
+				reportedRow = i;
+			}
+			if (rows) {
+				rowKeys.add(PivotUtils.getKey(dataSource, i, rowFieldIndexes));
+			}
+			if (columns) {
+				columnKeys.add(PivotUtils.getKey(dataSource, i, columnFieldIndexes));
+			}
+		}
+		progress.advance(rowCount - reportedRow);
+		firePhaseEvent(Phase.KEY_SCAN, start, rowCount, rowKeys.size(), columnKeys.size(), 0);
+
+		if (rows) {
+			start = System.nanoTime();
+			setRowsHeaderTree(new Tree(TreeHelper.createTree(rowKeys, getComparators(rowFields))));
+			if (hasPhaseListeners()) {
+				// the compact tree is needed anyway for the keys
+				int leafCount = rowsHeaderTree.getCompactTree().getLeafCount();
+				firePhaseEvent(Phase.ROW_TREE, start, rowKeys.size(), leafCount, 0, 0);
+			}
+		}
+		if (columns) {
+			start = System.nanoTime();
+			setColumnsHeaderTree(new Tree(TreeHelper.createTree(columnKeys, getComparators(columnFields))));
+			if (hasPhaseListeners()) {
+				int leafCount = columnsHeaderTree.getCompactTree().getLeafCount();
+				firePhaseEvent(Phase.COLUMN_TREE, start, columnKeys.size(), 0, leafCount, 0);
+			}
+		}
+	}
+
+	private void setRowsHeaderTree(Tree rowsHeaderTree) {
+		this.rowsHeaderTree = rowsHeaderTree;
+		rowKeys = null;
+		rowOrdinals = null;
+	}
+
+	private void setColumnsHeaderTree(Tree columnsHeaderTree) {
+		this.columnsHeaderTree = columnsHeaderTree;
+		columnKeys = null;
+		columnOrdinals = null;
+	}
+
+	private List<Comparator<Object>> getComparators(List<PivotField> fields) {
+		List<Comparator<Object>> comparators = new ArrayList<>(fields.size());
+		for (PivotField field : fields) {
+			comparators.add(PivotUtils.getComparator(field));
+		}
+
+		return comparators;
+	}
+
 	@Override
 	public List<List<Object>> getRowKeys() {
-		return TreeHelper.getLeafValues(getRowsHeaderTree().getRoot());
+		if (rowKeys == null) {
+			rowKeys = getRowsHeaderTree().getCompactTree().getLeafValues();
+		}
+
+		return rowKeys;
 	}
 
 	@Override
 	public List<List<Object>> getColumnKeys() {
-		return TreeHelper.getLeafValues(getColumnsHeaderTree().getRoot());
+		if (columnKeys == null) {
+			columnKeys = getColumnsHeaderTree().getCompactTree().getLeafValues();
+		}
+
+		return columnKeys;
 	}
 
 	@Override
 	public Object getValueAt(PivotField dataField, List<Object> rowKey, List<Object> columnKey) {
-		int index = getFields(PivotField.Area.DATA).indexOf(dataField);
-		return calculatedData.get(index).get(rowKey, columnKey);
+		if (calculatedData == null) {
+			// not calculated
+			return null;
+		}
+		if (rowOrdinals == null) {
+			rowOrdinals = getOrdinals(getRowKeys());
+		}
+		if (columnOrdinals == null) {
+			columnOrdinals = getOrdinals(getColumnKeys());
+		}
+
+		int dataFieldIndex = calculatedDataFields.indexOf(dataField);
+		Integer rowIndex = rowOrdinals.get(rowKey);
+		Integer columnIndex = columnOrdinals.get(columnKey);
+		if ((dataFieldIndex == -1) || (rowIndex == null) || (columnIndex == null)) {
+			return null;
+		}
+
+		return calculatedData.getValue(rowIndex, columnIndex, dataFieldIndex);
+	}
+
+	@Override
+	public Object getValueAt(int dataFieldIndex, int rowIndex, int columnIndex) {
+		if (calculatedData == null) {
+			// not calculated
+			return null;
+		}
+
+		return calculatedData.getValue(rowIndex, columnIndex, dataFieldIndex);
+	}
+
+	/**
+	 * Gets the grand totals accumulated during the last calculation or null if
+	 * the model is not calculated.
+	 */
+	@Override
+	public PivotTotals getTotals() {
+		return totals;
+	}
+
+	private Map<List<Object>, Integer> getOrdinals(List<List<Object>> keys) {
+		Map<List<Object>, Integer> ordinals = new HashMap<>(keys.size() * 2);
+		for (int i = 0; i < keys.size(); i++) {
+			ordinals.put(keys.get(i), i);
+		}
+
+		return ordinals;
 	}
 
 	@Override
@@ -236,48 +713,150 @@ public class DefaultPivotModel implements PivotModel {
 	}
 
 	@Override
-	public String toString() {
-		return "DefaultPivotModel [fields=" + fields + "]";
+	public void addPhaseListener(PivotPhaseListener listener) {
+		phaseListeners.add(listener);
+	}
+
+	@Override
+	public void removePhaseListener(PivotPhaseListener listener) {
+		phaseListeners.remove(listener);
+	}
+
+	@Override
+	public boolean hasPhaseListeners() {
+		return !phaseListeners.isEmpty();
 	}
 
-	private void insertChildren(Node node, List<PivotField> fields) {
-		// System.out.println("DefaultPivotModel.insertChildren()");
-		Set<Object> values = getPossibleChildrenValues(node, fields);
-		if (CollectionUtils.isEmpty(values)) {
-			return;
+	@Override
+	public void firePhaseEvent(PivotPhaseEvent event) {
+		for (PivotPhaseListener listener : phaseListeners) {
+			listener.phaseCompleted(event);
 		}
+	}
 
-		for (Object value : values) {
-			node.insert(value);
+	/**
+	 * Sends the event of a phase started at start (see System.nanoTime()).
+	 * The event is created only if there are listeners.
+	 */
+	protected void firePhaseEvent(Phase phase, long start, long rowCount, int rowKeyCount, int columnKeyCount,
+			long cellCount) {
+		if (hasPhaseListeners()) {
+			long duration = System.nanoTime() - start;
+			firePhaseEvent(new PivotPhaseEvent(this, phase, duration, rowCount, rowKeyCount, columnKeyCount,
+					cellCount));
 		}
+	}
 
-		for (Node child : node.getChildren()) {
-			insertChildren(child, fields);
+	@Override
+	public CalculationMode getCalculationMode() {
+		return calculationMode;
+	}
+
+	@Override
+	public void setCalculationMode(CalculationMode calculationMode) {
+		if (calculationMode == CalculationMode.CELL_SCAN) {
+			checkRandomAccess("The " + calculationMode + " calculation");
 		}
+
+		this.calculationMode = calculationMode;
 	}
 
-	private Set<Object> getPossibleChildrenValues(Node node, List<PivotField> fields) {
-		int level = node.getLevel();
-		// System.out.println("level = " + level);
-		// System.out.println("fields.size = " + fields.size());
-		if (fields.size() <= level) {
-			return null;
+	@Override
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	@Override
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	public BitmapIndex getBitmapIndex() {
+		return bitmapIndex;
+	}
+
+	/**
+	 * Set the bitmap index used to filter the data source. The index must be
+	 * created for the data source of this model. By default no index is set.
+	 * The index is not serialized with the model, a deserialized model uses
+	 * the same index if it's still referenced, otherwise it filters without index.
+	 */
+	public void setBitmapIndex(BitmapIndex bitmapIndex) {
+		if ((bitmapIndex != null) && (bitmapIndex.getDataSource() != dataSource)) {
+			throw new IllegalArgumentException("The bitmap index was created for another data source");
+		}
+		if (bitmapIndex != null) {
+			checkRandomAccess("A bitmap index");
 		}
 
-		PivotField nextField = fields.get(level);
-		// System.out.println("nextField = " + nextField);
-		Map<Integer, Object> filter = getFilter(fields, node.getPathValues());
-		// System.out.println("filter = " + filter);
-		Set<Object> values = getUniqueValues(nextField, filter);
-		// System.out.println("values = " + values);
+		this.bitmapIndex = bitmapIndex;
+		bitmapIndexId = (bitmapIndex != null) ? bitmapIndex.getId() : null;
+	}
 
-		return values;
+	public AggregateLattice getAggregateLattice() {
+		return aggregateLattice;
+	}
+
+	/**
+	 * Set the pre-aggregated cubes used (if possible) instead of scanning the
+	 * data source. The lattice must be created for the data source of this
+	 * model. By default no lattice is set. The lattice is not serialized with
+	 * the model, a deserialized model uses the same lattice if it's still
+	 * referenced, otherwise it scans the data source.
+	 */
+	public void setAggregateLattice(AggregateLattice aggregateLattice) {
+		if ((aggregateLattice != null) && (aggregateLattice.getDataSource() != dataSource)) {
+			throw new IllegalArgumentException("The aggregate lattice was created for another data source");
+		}
+
+		this.aggregateLattice = aggregateLattice;
+		aggregateLatticeId = (aggregateLattice != null) ? aggregateLattice.getId() : null;
+	}
+
+	/**
+	 * Retrieves the rows of the data source aggregated in a cell (drill through).
+	 */
+	public BitSet getCellRows(List<Object> rowKey, List<Object> columnKey) {
+		Map<Integer, Object> filter = getFilter(getFields(PivotField.Area.ROW), rowKey);
+		filter.putAll(getFilter(getFields(PivotField.Area.COLUMN), columnKey));
+		if (bitmapIndex != null) {
+			return bitmapIndex.getRows(filter);
+		}
+
+		checkRandomAccess("The drill through");
+		BitSet rows = new BitSet();
+		int rowCount = dataSource.getRowCount();
+		for (int i = 0; i < rowCount; i++) {
+			if (acceptValue(i, filter)) {
+				rows.set(i);
+			}
+		}
+
+		return rows;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+
+		// the shared objects are not serialized with the model
+		if (bitmapIndexId != null) {
+			bitmapIndex = BitmapIndex.get(bitmapIndexId);
+		}
+		if (aggregateLatticeId != null) {
+			aggregateLattice = AggregateLattice.get(aggregateLatticeId);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "DefaultPivotModel [fields=" + fields + "]";
 	}
 
 	/*
-	 * Retrieves the values for a data field using a filter.
+	 * Retrieves the values for a data field using a filter. A scan of the data
+	 * source checks periodically if the calculation was cancelled.
 	 */
-	private List<Object> getValues(PivotField field, Map<Integer, Object> filter) {
+	private List<Object> getValues(PivotField field, Map<Integer, Object> filter, CalculationProgress progress) {
 		if (field.getFieldCalculation() != null)
 			return Collections.emptyList();
 //		long start = System.currentTimeMillis();
@@ -290,14 +869,51 @@ public class DefaultPivotModel implements PivotModel {
 			 * No filter -> Just add the values
 			 */
 			for (int i = 0; i < rowCount; i++) { 
+				checkCancelled(i, progress);
+				values.add(dataSource.getValueAt(i, fieldIndex));
+			}
+		}
+		else if (bitmapIndex != null) {
+			/*
+			 * Add the values from the rows found in the bitmap index
+			 */
+			BitSet rows = bitmapIndex.getRows(filter);
+			int count = 0;
+			for (int i = rows.nextSetBit(0); i >= 0; i = rows.nextSetBit(i + 1)) {
+				checkCancelled(count++, progress);
 				values.add(dataSource.getValueAt(i, fieldIndex));
 			}
 		}
+		else if (isDictionaryEncoded(filter)) {
+			/*
+			 * Add all values matching the filter, comparing the dictionary codes
+			 */
+			DictionaryPivotDataSource encodedDataSource = (DictionaryPivotDataSource) dataSource;
+			int[] filterFields = new int[filter.size()];
+			int[] filterCodes = new int[filter.size()];
+			int k = 0;
+			for (Map.Entry<Integer, Object> entry : filter.entrySet()) {
+				filterFields[k] = entry.getKey();
+				filterCodes[k] = encodedDataSource.getCode(entry.getKey(), entry.getValue());
+				if (filterCodes[k] == -1) {
+					// no row has this value
+					return values;
+				}
+				k++;
+			}
+			for (int i = 0; i < rowCount; i++) {
+				checkCancelled(i, progress);
+				if (acceptCodes(encodedDataSource, i, filterFields, filterCodes)) {
+					values.add(dataSource.getValueAt(i, fieldIndex));
+				}
+			}
+		}
 		else {
 			/*
 			 * Add all values matching the filter
 			 */
 			for (int i = 0; i < rowCount; i++) {
+				checkCancelled(i, progress);
 				if (acceptValue(i, filter)) {
 					values.add(dataSource.getValueAt(i, fieldIndex));
 				}
@@ -309,6 +925,12 @@ public class DefaultPivotModel implements PivotModel {
 		return values;
 	}
 
+	private static void checkCancelled(int row, CalculationProgress progress) {
+		if ((row % HashAggregationEngine.PROGRESS_STEP) == 0) {
+			progress.checkCancelled();
+		}
+	}
+
 	/*
 	 * Retrieves a filter for filtering data source (raw data). The size of fields must be equals with
 	 * the size of values. The key in map is the field index.  
@@ -327,35 +949,6 @@ public class DefaultPivotModel implements PivotModel {
 		return filter;
 	}
 	
-	private Set<Object> getUniqueValues(PivotField field, Map<Integer, Object> filter) {
-		List<Object> values = getValues(field, filter);
-		
-		int sortOrder = field.getSortOrder();
-		if (sortOrder != PivotField.SORT_ORDER_UNSORTED) {
-			/*
-			 * We need to get the value set and sort it. We can not use a
-			 * TreeSet here as it does not allow null values.
-			 */
-			Set<Object> valueSet = new HashSet<>(values);
-			List<Object> valuesToOrder = new ArrayList<>(valueSet);
-			final int sign = sortOrder == PivotField.SORT_ORDER_ASCENDING ? 1
-					: sortOrder == PivotField.SORT_ORDER_DESCENDING ? -1 : 1;
-			valuesToOrder.sort((o1, o2) -> {
-				if (o1 == o2)
-					return 0;
-				if (o1 == null)
-					return sign * -1;
-				if (o2 == null)
-					return sign;
-				return sign * ((Comparable<Object>) o1).compareTo(o2);
-			});
-
-			return new LinkedHashSet<>(valuesToOrder);
-		}
-
-		return new LinkedHashSet<>(values);
-	}
-
 	private boolean acceptValue(int row, Map<Integer, Object> filter) {
 		boolean accept = true;
 		Set<Integer> keys = filter.keySet();
@@ -371,4 +964,39 @@ public class DefaultPivotModel implements PivotModel {
 		return accept;
 	}
 
+	/*
+	 * Fails if the rows of the data source cannot be read by index.
+	 */
+	private void checkRandomAccess(String operation) {
+		if ((dataSource instanceof PivotRowSource) && !((PivotRowSource) dataSource).isRandomAccess()) {
+			throw new IllegalStateException(operation + " needs a data source with random access, "
+					+ dataSource.getClass().getSimpleName() + " can only be read sequentially");
+		}
+	}
+
+	private boolean isDictionaryEncoded(Map<Integer, Object> filter) {
+		if (!(dataSource instanceof DictionaryPivotDataSource)) {
+			return false;
+		}
+
+		DictionaryPivotDataSource encodedDataSource = (DictionaryPivotDataSource) dataSource;
+		for (int index : filter.keySet()) {
+			if (!encodedDataSource.isDictionaryEncoded(index)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private boolean acceptCodes(DictionaryPivotDataSource encodedDataSource, int row, int[] filterFields, int[] filterCodes) {
+		for (int i = 0; i < filterFields.length; i++) {
+			if (encodedDataSource.getValueCode(row, filterFields[i]) != filterCodes[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
 }
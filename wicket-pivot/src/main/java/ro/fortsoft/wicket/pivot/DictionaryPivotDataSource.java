@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+/**
+ * A data source that stores (some of) its fields dictionary encoded: each
+ * distinct value of a field has an int code and two values of the same field
+ * are equal if and only if their codes are equal.
+ * 
+ * @author Decebal Suiu
+ */
+public interface DictionaryPivotDataSource extends PivotDataSource {
+
+	public boolean isDictionaryEncoded(int fieldIndex);
+	
+	/**
+	 * Gets the number of distinct values (null included) of a dictionary encoded field.
+	 */
+	public int getDictionarySize(int fieldIndex);
+	
+	/**
+	 * Gets the code of a value or -1 if the value doesn't appear in the field.
+	 */
+	public int getCode(int fieldIndex, Object value);
+	
+	/**
+	 * Gets the value for a code.
+	 */
+	public Object getDictionaryValue(int fieldIndex, int code);
+	
+	/**
+	 * Gets the code of the value at the specified field index and the row index.
+	 */
+	public int getValueCode(int rowIndex, int fieldIndex);
+	
+}
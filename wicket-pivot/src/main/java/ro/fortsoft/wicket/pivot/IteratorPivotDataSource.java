@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A data source that reads its rows from an iterator (for example over a file
+ * or a message stream), in a single pass for each calculation. The rows are not
+ * kept in memory, so they cannot be read by index and the pivot must be
+ * calculated with a single pass {@link PivotModel.CalculationMode}, without a
+ * bitmap index. The header trees are available only after a calculation.
+ *
+ * <pre>
+ * IteratorPivotDataSource dataSource = new IteratorPivotDataSource(() -&gt; readRows(file))
+ * 	.addField("REGION", String.class)
+ * 	.addField("SALES", Integer.class);
+ * </pre>
+ *
+ * @author Decebal Suiu
+ */
+public class IteratorPivotDataSource implements PivotRowSource {
+
+	private static final long serialVersionUID = 1L;
+
+	private RowIteratorFactory rowIteratorFactory;
+	private List<String> fieldNames;
+	private List<Class<?>> fieldTypes;
+	private volatile int rowCount;
+
+	public IteratorPivotDataSource(RowIteratorFactory rowIteratorFactory) {
+		this.rowIteratorFactory = rowIteratorFactory;
+
+		fieldNames = new ArrayList<>();
+		fieldTypes = new ArrayList<>();
+	}
+
+	/**
+	 * Adds a field. The values of a row are in the order of the fields.
+	 */
+	public IteratorPivotDataSource addField(String name, Class<?> type) {
+		fieldNames.add(name);
+		fieldTypes.add(type);
+
+		return this;
+	}
+
+	@Override
+	public String getFieldName(int fieldIndex) {
+		return fieldNames.get(fieldIndex);
+	}
+
+	@Override
+	public int getFieldIndex(String fieldName) {
+		return fieldNames.indexOf(fieldName);
+	}
+
+	@Override
+	public Class<?> getFieldType(int fieldIndex) {
+		return fieldTypes.get(fieldIndex);
+	}
+
+	@Override
+	public int getFieldCount() {
+		return fieldNames.size();
+	}
+
+	/**
+	 * Gets the number of rows read by the last pass (0 before the first one).
+	 */
+	@Override
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	@Override
+	public boolean isRandomAccess() {
+		return false;
+	}
+
+	@Override
+	public Object getValueAt(int rowIndex, int fieldIndex) {
+		throw new UnsupportedOperationException("The rows can only be read sequentially");
+	}
+
+	@Override
+	public Object getValueAt(int rowIndex, PivotField field) {
+		throw new UnsupportedOperationException("The rows can only be read sequentially");
+	}
+
+	/**
+	 * Reads the rows of a new iterator. If the iterator is {@link AutoCloseable}
+	 * it's closed at the end.
+	 */
+	@Override
+	public void forEachRow(int[] fieldIndexes, Consumer<Object[]> consumer) {
+		Iterator<Object[]> iterator = rowIteratorFactory.iterator();
+		try {
+			Object[] values = new Object[fieldIndexes.length];
+			int count = 0;
+			while (iterator.hasNext()) {
+				Object[] row = iterator.next();
+				for (int i = 0; i < fieldIndexes.length; i++) {
+					values[i] = row[fieldIndexes[i]];
+				}
+				consumer.accept(values);
+				count++;
+			}
+			rowCount = count;
+		} finally {
+			if (iterator instanceof AutoCloseable) {
+				try {
+					((AutoCloseable) iterator).close();
+				} catch (Exception e) {
+					throw new IllegalStateException("Cannot close the rows iterator", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates an iterator over all the rows, for each pass. The factory is
+	 * serialized with the data source.
+	 */
+	public interface RowIteratorFactory extends Serializable {
+
+		public Iterator<Object[]> iterator();
+
+	}
+
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A data source backed by a table (or a view) of a database. The fields are the
+ * columns of the table. The rows are loaded in memory only when they are read
+ * by index. A {@link JdbcPivotModel} aggregates the rows in the database and
+ * reads only the aggregated groups, a {@link DefaultPivotModel} reads the rows
+ * in a single pass (see {@link PivotRowSource}).
+ *
+ * <pre>
+ * JdbcPivotDataSource pivotDataSource = new JdbcPivotDataSource(() -&gt; DriverManager.getConnection(url), "STATISTIC");
+ * PivotModel pivotModel = new JdbcPivotModel(pivotDataSource);
+ * </pre>
+ *
+ * @author Decebal Suiu
+ */
+public class JdbcPivotDataSource implements PivotRowSource {
+
+	private static final long serialVersionUID = 1L;
+
+	private ConnectionProvider connectionProvider;
+	private String tableName;
+	private List<String> fieldNames;
+	private List<Class<?>> fieldTypes;
+	private String identifierQuote;
+	private int fetchSize = 1000;
+
+	// loaded on first use
+	private transient volatile PivotDataSource rows;
+	private transient int rowCount;
+	private transient volatile boolean rowCounted; // false after deserialization
+
+	/**
+	 * Reads the columns of the table. The table name is used as it is in the
+	 * queries, it can be qualified with a schema.
+	 */
+	public JdbcPivotDataSource(ConnectionProvider connectionProvider, String tableName) throws SQLException {
+		this.connectionProvider = connectionProvider;
+		this.tableName = tableName;
+
+		fieldNames = new ArrayList<>();
+		fieldTypes = new ArrayList<>();
+		try (Connection connection = connectionProvider.getConnection();
+				Statement statement = connection.createStatement();
+				ResultSet resultSet = statement.executeQuery("SELECT * FROM " + tableName + " WHERE 1 = 0")) {
+			identifierQuote = connection.getMetaData().getIdentifierQuoteString().trim();
+			ResultSetMetaData metaData = resultSet.getMetaData();
+			for (int i = 1; i <= metaData.getColumnCount(); i++) {
+				fieldNames.add(metaData.getColumnLabel(i));
+				fieldTypes.add(getClass(metaData.getColumnClassName(i)));
+			}
+		}
+	}
+
+	public ConnectionProvider getConnectionProvider() {
+		return connectionProvider;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * Gets the number of rows fetched at once from the database (see
+	 * {@link Statement#setFetchSize(int)}).
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	public JdbcPivotDataSource setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+		return this;
+	}
+
+	@Override
+	public String getFieldName(int fieldIndex) {
+		return fieldNames.get(fieldIndex);
+	}
+
+	@Override
+	public int getFieldIndex(String fieldName) {
+		return fieldNames.indexOf(fieldName);
+	}
+
+	@Override
+	public Class<?> getFieldType(int fieldIndex) {
+		return fieldTypes.get(fieldIndex);
+	}
+
+	@Override
+	public int getFieldCount() {
+		return fieldNames.size();
+	}
+
+	/**
+	 * Gets the row count. If the rows are not loaded, the rows are counted by
+	 * the database.
+	 */
+	@Override
+	public int getRowCount() {
+		PivotDataSource rows = this.rows;
+		if (rows != null) {
+			return rows.getRowCount();
+		}
+
+		if (!rowCounted) {
+			try (Connection connection = connectionProvider.getConnection();
+					Statement statement = connection.createStatement();
+					ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + tableName)) {
+				resultSet.next();
+				rowCount = resultSet.getInt(1);
+				rowCounted = true;
+			} catch (SQLException e) {
+				throw new IllegalStateException("Cannot count the rows of '" + tableName + "'", e);
+			}
+		}
+
+		return rowCount;
+	}
+
+	/**
+	 * Gets a value of a row. All the rows are loaded in memory on first use.
+	 */
+	@Override
+	public Object getValueAt(int rowIndex, int fieldIndex) {
+		return getRows().getValueAt(rowIndex, fieldIndex);
+	}
+
+	@Override
+	public Object getValueAt(int rowIndex, PivotField field) {
+		return getValueAt(rowIndex, getFieldIndex(field.getName()));
+	}
+
+	/**
+	 * Reads the columns of the fields with a query, the rows are fetched in
+	 * blocks of {@link #getFetchSize()} rows.
+	 */
+	@Override
+	public void forEachRow(int[] fieldIndexes, Consumer<Object[]> consumer) {
+		StringBuilder query = new StringBuilder("SELECT ");
+		for (int i = 0; i < fieldIndexes.length; i++) {
+			if (i > 0) {
+				query.append(", ");
+			}
+			query.append(quote(fieldNames.get(fieldIndexes[i])));
+		}
+		if (fieldIndexes.length == 0) {
+			query.append("1"); // only the rows are counted
+		}
+		query.append(" FROM ").append(tableName);
+
+		try (Connection connection = connectionProvider.getConnection();
+				Statement statement = connection.createStatement()) {
+			statement.setFetchSize(fetchSize);
+			try (ResultSet resultSet = statement.executeQuery(query.toString())) {
+				Object[] values = new Object[fieldIndexes.length];
+				int count = 0;
+				while (resultSet.next()) {
+					for (int i = 0; i < values.length; i++) {
+						values[i] = resultSet.getObject(i + 1);
+					}
+					consumer.accept(values);
+					count++;
+				}
+				rowCount = count;
+				rowCounted = true;
+			}
+		} catch (SQLException e) {
+			throw new IllegalStateException("Cannot read the rows of '" + tableName + "'", e);
+		}
+	}
+
+	/**
+	 * Returns the row count of the loaded rows or of the last count or pass
+	 * (-1 if the rows were not counted yet).
+	 */
+	@Override
+	public int getKnownRowCount() {
+		PivotDataSource rows = this.rows;
+		if (rows != null) {
+			return rows.getRowCount();
+		}
+
+		return rowCounted ? rowCount : -1;
+	}
+
+	public boolean isLoaded() {
+		return rows != null;
+	}
+
+	/**
+	 * Discards the loaded rows and the row count, the next read goes to the
+	 * database.
+	 */
+	public synchronized void refresh() {
+		rows = null;
+		rowCounted = false;
+	}
+
+	/**
+	 * Quotes a column name for a query (for example YEAR, a reserved word in
+	 * some databases, becomes "YEAR").
+	 */
+	public String quote(String identifier) {
+		if (identifierQuote.isEmpty()) {
+			return identifier;
+		}
+
+		return identifierQuote + identifier.replace(identifierQuote, identifierQuote + identifierQuote)
+				+ identifierQuote;
+	}
+
+	private synchronized PivotDataSource getRows() {
+		if (rows == null) {
+			try (Connection connection = connectionProvider.getConnection();
+					Statement statement = connection.createStatement()) {
+				statement.setFetchSize(fetchSize);
+				try (ResultSet resultSet = statement.executeQuery("SELECT * FROM " + tableName)) {
+					rows = new ResultSetPivotDataSource(resultSet);
+				}
+			} catch (SQLException e) {
+				throw new IllegalStateException("Cannot load the rows of '" + tableName + "'", e);
+			}
+		}
+
+		return rows;
+	}
+
+	private static Class<?> getClass(String className) {
+		try {
+			return Class.forName(className);
+		} catch (ClassNotFoundException e) {
+			return Object.class;
+		}
+	}
+
+	/**
+	 * Opens the connections to the database. The provider is serialized with
+	 * the data source (for example a lambda that looks up a pooled
+	 * javax.sql.DataSource), the connections are closed after each query.
+	 */
+	public interface ConnectionProvider extends Serializable {
+
+		public Connection getConnection() throws SQLException;
+
+	}
+
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ro.fortsoft.wicket.pivot.PivotPhaseEvent.Phase;
+import ro.fortsoft.wicket.pivot.engine.PivotCube;
+
+/**
+ * A pivot model that aggregates the rows in the database. The ROW and COLUMN
+ * fields and the aggregators of the DATA fields are translated in a single
+ * <code>SELECT ... GROUP BY</code> query and only the groups are read. A field
+ * removed or moved between areas is rolled up from the last groups, without a
+ * new query.
+ * <p>
+ * The built-in aggregators are pushed down (sum and average only for numeric
+ * fields). For other aggregators the rows are read in a single pass (with the
+ * fetch size of the {@link JdbcPivotDataSource}) and aggregated in memory,
+ * without keeping them. The grand totals are
+ * calculated from the cells, as for {@link DefaultPivotModel}, so the query has
+ * no <code>ROLLUP</code>. The groups come in the order of the database, so the
+ * values of an unsorted field may not be in the order of the table.
+ * <p>
+ * The deadline of a calculation (see {@link CalculationProgress}) is the
+ * timeout of the query and a cancelled calculation cancels the running query
+ * (if the driver supports it).
+ *
+ * @author Decebal Suiu
+ */
+public class JdbcPivotModel extends DefaultPivotModel {
+
+	private static final long serialVersionUID = 1L;
+
+	public JdbcPivotModel(JdbcPivotDataSource dataSource) {
+		super(dataSource);
+	}
+
+	@Override
+	public JdbcPivotDataSource getDataSource() {
+		return (JdbcPivotDataSource) super.getDataSource();
+	}
+
+	/**
+	 * Returns true if the field can be aggregated by the database with its
+	 * current aggregator.
+	 */
+	public boolean isPushedDown(PivotField field) {
+		Aggregator aggregator = field.getAggregator();
+		if (aggregator == null) {
+			return false;
+		}
+
+		Aggregator builtIn = Aggregator.get(aggregator.getFunction());
+		if ((builtIn == null) || (builtIn.getClass() != aggregator.getClass())) {
+			return false;
+		}
+
+		String function = aggregator.getFunction();
+		if (Aggregator.SUM.equals(function) || Aggregator.AVG.equals(function)) {
+			return (field.getType() != null) && Number.class.isAssignableFrom(field.getType());
+		}
+
+		return true;
+	}
+
+	/**
+	 * Retrieves the cube of the lattice (if any) or aggregates the rows in the
+	 * database. If a measure cannot be aggregated by the database, the rows
+	 * are read in a single pass and aggregated in memory.
+	 */
+	@Override
+	protected PivotCube getAggregatedCube(List<PivotField> fields, List<PivotField> measures,
+			CalculationProgress progress) {
+		PivotCube cube = getLatticeCube(fields, measures);
+		if (cube != null) {
+			return cube;
+		}
+
+		for (PivotField measure : measures) {
+			if (!isPushedDown(measure)) {
+				return aggregateRows(getDataSource(), fields, measures, progress);
+			}
+		}
+
+		long start = System.nanoTime();
+		progress.startPhase(CalculationProgress.Phase.AGGREGATION, -1);
+		cube = query(fields, measures, progress);
+		int groupCount = cube.getRowKeys().size();
+		firePhaseEvent(Phase.QUERY, start, groupCount, groupCount, 0, cube.getCellCount());
+
+		return cube;
+	}
+
+	/**
+	 * Creates the query that groups the rows by the fields. The first columns
+	 * are the fields, followed by the number of rows and the aggregates of the
+	 * measures (see {@link #getAggregates(PivotField)}).
+	 */
+	public String getQuery(List<PivotField> fields, List<PivotField> measures) {
+		JdbcPivotDataSource dataSource = getDataSource();
+		List<String> columns = new ArrayList<>();
+		for (PivotField field : fields) {
+			columns.add(dataSource.quote(field.getName()));
+		}
+		List<String> groupBy = new ArrayList<>(columns);
+		columns.add("COUNT(*)");
+		for (PivotField measure : measures) {
+			columns.addAll(getAggregates(measure));
+		}
+
+		StringBuilder query = new StringBuilder("SELECT ");
+		query.append(String.join(", ", columns));
+		query.append(" FROM ").append(dataSource.getTableName());
+		if (!groupBy.isEmpty()) {
+			query.append(" GROUP BY ").append(String.join(", ", groupBy));
+		}
+
+		return query.toString();
+	}
+
+	/**
+	 * Gets the SQL aggregates of a measure, in the order count, sum, minimum,
+	 * maximum (see {@link Aggregator#addGroup(long, double, Object, Object)}).
+	 * Only the aggregates needed by the aggregator are returned.
+	 */
+	protected List<String> getAggregates(PivotField measure) {
+		String column = getDataSource().quote(measure.getName());
+		String function = measure.getAggregator().getFunction();
+		List<String> aggregates = new ArrayList<>();
+		if (Aggregator.COUNT.equals(function) || Aggregator.AVG.equals(function)) {
+			aggregates.add("COUNT(" + column + ")");
+		}
+		if (Aggregator.SUM.equals(function) || Aggregator.AVG.equals(function)) {
+			// sum as double, like the Sum aggregator (an integer sum can overflow in the database)
+			aggregates.add("SUM(CAST(" + column + " AS DOUBLE PRECISION))");
+		}
+		if (Aggregator.MIN.equals(function)) {
+			aggregates.add("MIN(" + column + ")");
+		}
+		if (Aggregator.MAX.equals(function)) {
+			aggregates.add("MAX(" + column + ")");
+		}
+
+		return aggregates;
+	}
+
+	/*
+	 * Executes the query with a timeout until the deadline of the progress and
+	 * cancels it if the progress is cancelled. The progress counts the groups.
+	 */
+	private PivotCube query(List<PivotField> fields, List<PivotField> measures, CalculationProgress progress) {
+		JdbcPivotDataSource dataSource = getDataSource();
+		List<Object> noKey = Collections.emptyList();
+		PivotCube cube = new PivotCube(PivotUtils.getFieldIndexes(fields), new int[0], new ArrayList<List<Object>>(),
+				Collections.singletonList(noKey), measures);
+
+		String query = getQuery(fields, measures);
+		try (Connection connection = dataSource.getConnectionProvider().getConnection();
+				Statement statement = connection.createStatement()) {
+			statement.setFetchSize(dataSource.getFetchSize());
+			long remainingTime = progress.getRemainingTime();
+			if (remainingTime >= 0) {
+				// in seconds, rounded up so that a timed out query is past the deadline
+				statement.setQueryTimeout((int) Math.max((remainingTime + 999) / 1000, 1));
+			}
+			Runnable cancelHandler = () -> cancel(statement);
+			progress.addCancelHandler(cancelHandler);
+			try (ResultSet resultSet = statement.executeQuery(query)) {
+				int fieldCount = fields.size();
+				while (resultSet.next()) {
+					progress.advance(1);
+					if (resultSet.getLong(fieldCount + 1) == 0) {
+						// no group by and no rows
+						continue;
+					}
+
+					List<Object> key = new ArrayList<>(fieldCount);
+					for (int i = 0; i < fieldCount; i++) {
+						key.add(resultSet.getObject(i + 1));
+					}
+					int ordinal = cube.getRowKeys().size();
+					cube.getRowKeys().add(key);
+
+					int cell = cube.getOrCreateCell(ordinal, 0);
+					int column = fieldCount + 2;
+					for (int m = 0; m < measures.size(); m++) {
+						String function = measures.get(m).getAggregator().getFunction();
+						long count = 0;
+						double sum = 0;
+						Object min = null;
+						Object max = null;
+						if (Aggregator.COUNT.equals(function) || Aggregator.AVG.equals(function)) {
+							count = resultSet.getLong(column++);
+						}
+						if (Aggregator.SUM.equals(function) || Aggregator.AVG.equals(function)) {
+							sum = resultSet.getDouble(column++);
+						}
+						if (Aggregator.MIN.equals(function)) {
+							min = resultSet.getObject(column++);
+						}
+						if (Aggregator.MAX.equals(function)) {
+							max = resultSet.getObject(column++);
+						}
+						cube.getState(m, cell).addGroup(count, sum, min, max);
+					}
+				}
+			} finally {
+				progress.removeCancelHandler(cancelHandler);
+			}
+		} catch (SQLException e) {
+			// a query stopped by its timeout or cancelled
+			progress.checkCancelled();
+			throw new IllegalStateException("Cannot execute the query '" + query + "'", e);
+		}
+
+		return cube;
+	}
+
+	private static void cancel(Statement statement) {
+		try {
+			statement.cancel();
+		} catch (SQLException e) {
+			// the query is not running anymore or cannot be cancelled, the progress is checked for each group
+		}
+	}
+
+}
@@ -14,6 +14,7 @@ package ro.fortsoft.wicket.pivot;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import ro.fortsoft.wicket.pivot.PivotField.Area;
 import ro.fortsoft.wicket.pivot.tree.Tree;
@@ -37,9 +38,59 @@ public interface PivotModel extends Serializable {
 	public PivotDataSource getDataSource();
 	
    /**
-    * Calculates the pivot data.
+    * Calculates the pivot data using the current calculation mode.
     */
 	public void calculate();
+
+	/**
+	 * Calculates the pivot data and reports the progress. The calculation
+	 * stops with a {@link CalculationCancelledException} if the progress is
+	 * cancelled or its deadline passed. By default the progress is not reported
+	 * and is checked only before and after the calculation, so a late
+	 * calculation is not interrupted but still ends with the exception.
+	 */
+	public default void calculate(CalculationProgress progress) {
+		progress.checkCancelled();
+		calculate();
+		progress.checkCancelled();
+	}
+
+	/**
+	 * Calculates the pivot data, giving up with a {@link CalculationCancelledException}
+	 * if the calculation takes longer than the timeout.
+	 */
+	public default void calculate(long timeout, TimeUnit unit) {
+		calculate(new CalculationProgress(timeout, unit));
+	}
+	
+	/**
+	 * Gets the strategy used to aggregate the raw data. By default
+	 * {@link CalculationMode#CELL_SCAN}.
+	 */
+	public default CalculationMode getCalculationMode() {
+		return CalculationMode.CELL_SCAN;
+	}
+	
+	/**
+	 * Sets the strategy used to aggregate the raw data. By default the
+	 * calculation mode cannot be changed and the call is ignored.
+	 */
+	public default void setCalculationMode(CalculationMode calculationMode) {
+	}
+	
+	/**
+	 * Gets the number of threads used by the {@link CalculationMode#PARALLEL} calculation.
+	 * By default 1.
+	 */
+	public default int getParallelism() {
+		return 1;
+	}
+	
+	/**
+	 * By default the parallelism cannot be changed and the call is ignored.
+	 */
+	public default void setParallelism(int parallelism) {
+	}
 	
 	public List<List<Object>> getRowKeys();
 	
@@ -47,6 +98,25 @@ public interface PivotModel extends Serializable {
 	
 	public Object getValueAt(PivotField dataField, List<Object> rowKey, List<Object> columnKey);
 
+	/**
+	 * Gets a calculated value by position: the index of the data field in
+	 * {@link #getFields(Area)} for DATA, the index of the row key in
+	 * {@link #getRowKeys()} and the index of the column key in {@link #getColumnKeys()}.
+	 * By default the value is retrieved by keys.
+	 */
+	public default Object getValueAt(int dataFieldIndex, int rowIndex, int columnIndex) {
+		return getValueAt(getFields(Area.DATA).get(dataFieldIndex), getRowKeys().get(rowIndex),
+				getColumnKeys().get(columnIndex));
+	}
+
+	/**
+	 * Gets the grand totals of the calculated values. By default the totals
+	 * are calculated from the values, with a scan of all the cells.
+	 */
+	public default PivotTotals getTotals() {
+		return PivotTotals.calculate(this);
+	}
+
 	public boolean isShowGrandTotalForColumn();
 	
 	public void setShowGrandTotalForColumn(boolean showGrandTotalForColumn);
@@ -62,6 +132,52 @@ public interface PivotModel extends Serializable {
 	public boolean isAutoCalculate();
 	
 	public void setAutoCalculate(boolean autoCalculate);
+
+	/**
+	 * Adds a listener for the metrics of the calculation, rendering and export
+	 * phases. By default the model reports no phases and the call is ignored,
+	 * so a listener can be added to any model.
+	 */
+	public default void addPhaseListener(PivotPhaseListener listener) {
+	}
+
+	public default void removePhaseListener(PivotPhaseListener listener) {
+	}
+
+	/**
+	 * Returns true if the model has phase listeners. The callers check it
+	 * before creating an event. By default false.
+	 */
+	public default boolean hasPhaseListeners() {
+		return false;
+	}
+
+	/**
+	 * Sends the event to all the phase listeners. By default the event is ignored.
+	 */
+	public default void firePhaseEvent(PivotPhaseEvent event) {
+	}
 	
+	/**
+	 * The strategy used by {@link PivotModel#calculate()} to aggregate the raw data.
+	 */
+	public enum CalculationMode {
+		
+		/**
+		 * Scans the data source once for each (row key, column key) pair.
+		 */
+		CELL_SCAN,
+		
+		/**
+		 * Scans the data source once and aggregates each row into its cell.
+		 */
+		SINGLE_PASS,
+		
+		/**
+		 * Aggregates chunks of rows in parallel and merges the partial results.
+		 */
+		PARALLEL
+		
+	}
 
 }
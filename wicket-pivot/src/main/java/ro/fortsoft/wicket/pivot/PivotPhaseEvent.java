@@ -0,0 +1,164 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The metrics of a completed pivot phase: the duration, the number of
+ * processed rows, the number of row and column keys and the number of cells.
+ * A count that doesn't apply to the phase is 0.
+ *
+ * @author Decebal Suiu
+ */
+public class PivotPhaseEvent {
+
+	private final PivotModel pivotModel;
+	private final Phase phase;
+	private final long duration;
+	private final long rowCount;
+	private final int rowKeyCount;
+	private final int columnKeyCount;
+	private final long cellCount;
+
+	/**
+	 * The duration is in nanoseconds.
+	 */
+	public PivotPhaseEvent(PivotModel pivotModel, Phase phase, long duration, long rowCount, int rowKeyCount,
+			int columnKeyCount, long cellCount) {
+		this.pivotModel = pivotModel;
+		this.phase = phase;
+		this.duration = duration;
+		this.rowCount = rowCount;
+		this.rowKeyCount = rowKeyCount;
+		this.columnKeyCount = columnKeyCount;
+		this.cellCount = cellCount;
+	}
+
+	public PivotModel getPivotModel() {
+		return pivotModel;
+	}
+
+	public Phase getPhase() {
+		return phase;
+	}
+
+	public long getDuration(TimeUnit unit) {
+		return unit.convert(duration, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns the number of processed rows (see {@link Phase}) or -1 if the
+	 * rows of a {@link PivotRowSource} were not counted.
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	public int getRowKeyCount() {
+		return rowKeyCount;
+	}
+
+	public int getColumnKeyCount() {
+		return columnKeyCount;
+	}
+
+	/**
+	 * Returns the number of produced cells (see {@link Phase}).
+	 */
+	public long getCellCount() {
+		return cellCount;
+	}
+
+	@Override
+	public String toString() {
+		return "PivotPhaseEvent [phase=" + phase + ", duration=" + getDuration(TimeUnit.MILLISECONDS)
+				+ " ms, rowCount=" + rowCount + ", rowKeyCount=" + rowKeyCount + ", columnKeyCount="
+				+ columnKeyCount + ", cellCount=" + cellCount + "]";
+	}
+
+	public enum Phase {
+
+		/**
+		 * The scan of the data source for the distinct row and column keys.
+		 * The row count is the number of data source rows.
+		 */
+		KEY_SCAN,
+
+		/**
+		 * The creation of the rows header tree from the distinct keys.
+		 */
+		ROW_TREE,
+
+		/**
+		 * The creation of the columns header tree from the distinct keys.
+		 */
+		COLUMN_TREE,
+
+		/**
+		 * The build of the {@link AggregateLattice}, on first use. The row count
+		 * is the number of data source rows and the cell count the number of
+		 * cells of all the cubes.
+		 */
+		LATTICE,
+
+		/**
+		 * The aggregation of the rows by the database (see {@link JdbcPivotModel}).
+		 * The row count is the number of groups.
+		 */
+		QUERY,
+
+		/**
+		 * The aggregation of the rows read in a single pass from a {@link PivotRowSource}.
+		 * The row count is the number of read rows and the cell count the number of cells.
+		 */
+		STREAM_AGGREGATION,
+
+		/**
+		 * The derivation of the header trees and the cube from a finer cube. The
+		 * row count is the number of cells of the finer cube.
+		 */
+		ROLL_UP,
+
+		/**
+		 * The aggregation of the data source rows in cells. The cell count is the
+		 * number of non empty cells.
+		 */
+		AGGREGATION,
+
+		/**
+		 * The computation of the values of the data fields. The row count is the
+		 * number of row keys and the cell count the number of values.
+		 */
+		FILL,
+
+		/**
+		 * The whole calculation (see {@link PivotModel#calculate()}).
+		 */
+		CALCULATION,
+
+		/**
+		 * The creation of a {@link PivotTableRenderModel}. The row count is the
+		 * number of rendered rows and the cell count the number of rendered cells.
+		 */
+		RENDER_MODEL,
+
+		/**
+		 * The download of a pivot (see {@code PivotExportResource}). The row count
+		 * is the number of row keys and the cell count the number of data cells.
+		 */
+		EXPORT
+
+	}
+
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import java.io.Serializable;
+
+/**
+ * Receives the metrics of the pivot phases (see {@link PivotPhaseEvent.Phase}).
+ * The listeners are added on a {@link PivotModel} and are called synchronously,
+ * in the thread of the calculation, the rendering or the export, so they must
+ * be fast. A listener is serialized together with its pivot model.
+ *
+ * <pre>
+ * pivotModel.addPhaseListener(event -&gt; log.debug("{}", event));
+ * </pre>
+ *
+ * @author Decebal Suiu
+ */
+public interface PivotPhaseListener extends Serializable {
+
+	public void phaseCompleted(PivotPhaseEvent event);
+
+}
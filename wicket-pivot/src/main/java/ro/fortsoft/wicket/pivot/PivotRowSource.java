@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import java.util.function.Consumer;
+
+/**
+ * A data source whose rows can be read sequentially, in a single pass, without
+ * keeping them in memory. A {@link DefaultPivotModel} aggregates such a data
+ * source with a {@link ro.fortsoft.wicket.pivot.engine.StreamAggregationEngine}:
+ * each row is folded in its cell and discarded, so the memory is proportional
+ * to the number of cells and not to the number of rows. The rows are read again
+ * when the ROW or COLUMN fields change.
+ *
+ * @author Decebal Suiu
+ */
+public interface PivotRowSource extends PivotDataSource {
+
+	/**
+	 * Reads all the rows and passes the values of the fields (in the order of
+	 * the field indexes) to the consumer. The array of values is reused for
+	 * the next row.
+	 */
+	public void forEachRow(int[] fieldIndexes, Consumer<Object[]> consumer);
+
+	/**
+	 * Returns the number of rows if it's known without reading (or counting)
+	 * the rows, otherwise -1. By default -1.
+	 */
+	public default int getKnownRowCount() {
+		return -1;
+	}
+
+	/**
+	 * Returns true if the rows can also be read by index, with
+	 * {@link #getValueAt(int, int)}. By default true.
+	 */
+	public default boolean isRandomAccess() {
+		return true;
+	}
+
+}
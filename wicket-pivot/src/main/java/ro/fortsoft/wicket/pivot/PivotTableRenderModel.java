@@ -12,22 +12,20 @@
  */
 package ro.fortsoft.wicket.pivot;
 
-import org.apache.wicket.util.collections.MultiMap;
-
-import ro.fortsoft.wicket.pivot.FieldCalculation.FieldValueProvider;
-import ro.fortsoft.wicket.pivot.tree.Node;
-import ro.fortsoft.wicket.pivot.tree.TreeHelper;
+import ro.fortsoft.wicket.pivot.PivotTableVisitor.CellType;
+import ro.fortsoft.wicket.pivot.PivotTableVisitor.RowType;
+import ro.fortsoft.wicket.pivot.jfr.PivotFlightRecorder;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Render Model of the PivotTable. This is independant of the resulting output
- * format.
+ * format. It's built from the cells of a {@link PivotTableWalker}, the grand
+ * totals are taken from {@link PivotModel#getTotals()}.
  */
 public class PivotTableRenderModel implements Serializable {
 	private static final long serialVersionUID = 1L;
@@ -35,35 +33,6 @@ public class PivotTableRenderModel implements Serializable {
 	private PivotTableRenderModel() {
 	}
 
-	private Map<List<Object>, Integer> spanCache;
-
-	/**
-	 * Get values from pre summed column / row sums. 
-	 */
-	private static final class FieldValueProviderFromSummedValues implements FieldValueProvider {
-		private final MultiMap<PivotField, Object> values;
-
-		private FieldValueProviderFromSummedValues(MultiMap<PivotField, Object> values) {
-			this.values = values;
-		}
-
-		@Override
-		public Object getFieldValue(PivotField field) {
-			// If the field is not in the regular
-			// data, we can not return a sum of it
-			if (!values.containsKey(field))
-				return 0;
-			double sum = 0;
-			List<Object> items = values.get(field);
-			for (Object item : items) {
-				if (item != null) {
-					sum += ((Number) item).doubleValue();
-				}
-			}
-			return sum;
-		}
-	}
-
 	public static abstract class RenderCell implements Serializable {
 		private static final long serialVersionUID = 1L;
 		PivotField pivotField;
@@ -262,235 +231,142 @@ public class PivotTableRenderModel implements Serializable {
 	}
 
 	public static PivotTableRenderModel create(PivotModel pivotModel) {
+		long start = System.nanoTime();
+		Object event = PivotFlightRecorder.begin(PivotFlightRecorder.EventType.RENDER_MODEL);
 		PivotTableRenderModel renderModel = new PivotTableRenderModel();
 		renderModel.calculate(pivotModel);
+		long duration = System.nanoTime() - start;
+		int rowKeyCount = pivotModel.getRowKeys().size();
+		int columnKeyCount = pivotModel.getColumnKeys().size();
+		if (PivotFlightRecorder.shouldCommit(event)) {
+			PivotFlightRecorder.commit(event, pivotModel, renderModel.getRowCount(), rowKeyCount, columnKeyCount,
+					renderModel.getCellCount());
+		}
+		if (pivotModel.hasPhaseListeners()) {
+			pivotModel.firePhaseEvent(new PivotPhaseEvent(pivotModel, PivotPhaseEvent.Phase.RENDER_MODEL, duration,
+					renderModel.getRowCount(), rowKeyCount, columnKeyCount, renderModel.getCellCount()));
+		}
 		return renderModel;
 	}
 
-	private void calculate(PivotModel pivotModel) {
-		spanCache = new HashMap<>();
-		column = new ArrayList<>();
-		row = new ArrayList<>();
-		grandTotalRow = new ArrayList<>();
-
-		List<PivotField> columnFields = pivotModel.getFields(PivotField.Area.COLUMN);
-		List<PivotField> rowFields = pivotModel.getFields(PivotField.Area.ROW);
-		List<PivotField> dataFields = pivotModel.getFields(PivotField.Area.DATA);
-
-		int columnFieldsSize = columnFields.size();
-		int rowFieldsSize = rowFields.size();
-		int dataFieldsSize = dataFields.size();
-
-		List<List<Object>> rowKeys = pivotModel.getRowKeys();
-		List<List<Object>> columnKeys = pivotModel.getColumnKeys();
+	/**
+	 * Returns the number of rendered rows (header, value and grand total rows).
+	 */
+	public int getRowCount() {
+		return column.size() + row.size() + grandTotalRow.size();
+	}
 
-		// rendering header
-		int headerRowCount = columnFieldsSize;
-		if (headerRowCount == 0) {
-			headerRowCount = 1;
+	/**
+	 * Returns the number of rendered cells.
+	 */
+	public long getCellCount() {
+		long cellCount = 0;
+		for (HeaderRenderRow headerRow : column) {
+			cellCount += headerRow.rowHeader.size() + headerRow.value.size() + headerRow.grandTotalColumn.size();
 		}
-		if ((dataFieldsSize > 1) && (columnFieldsSize > 0)) {
-			// add an extra row (the row with data field titles)
-			headerRowCount++;
+		for (DataRenderRow dataRow : row) {
+			cellCount += dataRow.rowHeader.size() + dataRow.value.size();
 		}
-
-		for (int i = 0; i < headerRowCount; i++) {
-			// rendering row header (first columns)
-			HeaderRenderRow tr = new HeaderRenderRow();
-			column.add(tr);
-
-			for (PivotField rowField : rowFields) {
-				if (i < headerRowCount - 1) {
-					// rendering empty cell
-					tr.rowHeader.add(new HeaderRenderCell(null));
-				} else {
-					// rendering row field
-					tr.rowHeader.add(new HeaderRenderCell(rowField));
-				}
-			}
-
-			// rendering column keys
-			Node columnsRoot = pivotModel.getColumnsHeaderTree().getRoot();
-			List<List<Object>> pathRenderedCache = new ArrayList<>();
-			for (List<Object> columnKey : columnKeys) {
-				if (i < columnFieldsSize) {
-					PivotField columnField = columnFields.get(i);
-					List<Object> path = new ArrayList<>(columnKey.subList(0, i + 1));
-					int colspan = getSpan(columnsRoot, path);
-					colspan = colspan * dataFieldsSize;
-
-					HeaderValueRenderCell valueRenderCell = new HeaderValueRenderCell(columnKey.get(i), columnField);
-					valueRenderCell.colspan = colspan;
-
-					if (pathRenderedCache.contains(path)) {
-						/*
-						 * Was: setVisible(false). We just dont add the field
-						 * here.
-						 */
-					} else {
-						tr.value.add(valueRenderCell);
-						pathRenderedCache.add(path);
-					}
-				} else {
-					for (PivotField dataField : dataFields) {
-						tr.value.add(new HeaderRenderCell(dataField));
-					}
-				}
-			}
-
-			if (!columnFields.isEmpty() && pivotModel.isShowGrandTotalForRow()) {
-				// rendering grand total column
-				if (i == 0) {
-					GrandTotalHeaderRenderCell cell = new GrandTotalHeaderRenderCell("Grand Total");
-					cell.colspan = dataFieldsSize;
-					tr.grandTotalColumn.add(cell);
-				} else if (i < columnFieldsSize) {
-					GrandTotalHeaderRenderCell cell = new GrandTotalHeaderRenderCell(null);
-					cell.colspan = dataFieldsSize;
-					tr.grandTotalColumn.add(cell);
-				} else {
-					for (PivotField dataField : dataFields) {
-						HeaderRenderCell cell = new HeaderRenderCell(dataField);
-						tr.grandTotalColumn.add(cell);
-					}
-				}
-			}
+		for (GrandTotalRenderRow totalRow : grandTotalRow) {
+			cellCount += totalRow.rowHeader.size() + totalRow.value.size();
 		}
 
-		// rendering rows
-		Node rowsRoot = pivotModel.getRowsHeaderTree().getRoot();
-		List<List<Object>> pathRenderedCache = new ArrayList<>();
-		for (List<Object> rowKey : rowKeys) {
-			DataRenderRow tr = new DataRenderRow();
-			row.add(tr);
+		return cellCount;
+	}
 
-			for (int k = 0; k < rowKey.size(); k++) {
-				List<Object> path = new ArrayList<>(rowKey.subList(0, k + 1));
-				int rowspan = getSpan(rowsRoot, path);
+	private void calculate(PivotModel pivotModel) {
+		column = new ArrayList<>();
+		row = new ArrayList<>();
+		grandTotalRow = new ArrayList<>();
 
-				PivotField rowField = rowFields.get(k);
-				DataHeaderRenderCell cell = new DataHeaderRenderCell(rowKey.get(k), rowField);
-				cell.rowspan = rowspan;
+		try {
+			PivotTableWalker.walk(pivotModel, new RenderModelBuilder(pivotModel));
+		} catch (IOException e) {
+			// the builder doesn't write
+			throw new UncheckedIOException(e);
+		}
+	}
 
-				// TODO optimization (create an emptyPanel is more optimal)
-				if (pathRenderedCache.contains(path)) {
-					/* tmp.setVisible(false); */
-				} else {
-					pathRenderedCache.add(path);
-					tr.rowHeader.add(cell);
-				}
-			}
+	/**
+	 * Creates the render rows from the cells of the walker. The cells at the
+	 * right of the data values are the grand total column.
+	 */
+	private class RenderModelBuilder implements PivotTableVisitor {
+		private final int rowHeaderCount;
+		private final int grandTotalColumn;
+		private HeaderRenderRow headerRow;
+		private DataRenderRow dataRow;
+		private GrandTotalRenderRow totalRow;
 
-			for (List<Object> columnKey : columnKeys) {
-				for (PivotField dataField : dataFields) {
-					Number cellValue = (Number) pivotModel.getValueAt(dataField, rowKey, columnKey);
-					tr.value.add(new DataValueRenderCell(cellValue, dataField));
-				}
-			}
+		private RenderModelBuilder(PivotModel pivotModel) {
+			rowHeaderCount = pivotModel.getFields(PivotField.Area.ROW).size();
+			grandTotalColumn = rowHeaderCount
+					+ pivotModel.getColumnKeys().size() * pivotModel.getFields(PivotField.Area.DATA).size();
+		}
 
-			if (!columnFields.isEmpty() && pivotModel.isShowGrandTotalForRow()) {
-				final MultiMap<PivotField, Object> values = new MultiMap<>();
-				for (List<Object> columnKey : columnKeys) {
-					for (PivotField dataField : dataFields) {
-						values.addValue(dataField, pivotModel.getValueAt(dataField, rowKey, columnKey));
-					}
-				}
-				for (PivotField dataField : dataFields) {
-					double grandTotalForRow = 0.0d;
-					if (dataField.getFieldCalculation() != null) {
-						grandTotalForRow = PivotUtils.getSummary(dataField, Collections.emptyList(),
-								new FieldValueProviderFromSummedValues(values)).doubleValue();
-					} 
-					else {
-                        List<Object> items = values.get(dataField);
-                        for (Object item : items) {
-                            if (item != null) {
-                                grandTotalForRow += ((Number) item).doubleValue();
-                            }
-                        }
-					}
-                    tr.value.add(new GrandTotalValueRenderCell(grandTotalForRow, true));
-				}
+		@Override
+		public void startRow(RowType rowType) {
+			headerRow = null;
+			dataRow = null;
+			totalRow = null;
+			if (rowType == RowType.HEADER) {
+				headerRow = new HeaderRenderRow();
+				column.add(headerRow);
+			} else if (rowType == RowType.DATA) {
+				dataRow = new DataRenderRow();
+				row.add(dataRow);
+			} else {
+				totalRow = new GrandTotalRenderRow();
+				grandTotalRow.add(totalRow);
 			}
 		}
 
-		if (!rowFields.isEmpty() && pivotModel.isShowGrandTotalForColumn()) {
-			GrandTotalRenderRow tr = new GrandTotalRenderRow();
-			grandTotalRow.add(tr);
-
-			GrandTotalRowHeaderRenderCell grandTotalCell = new GrandTotalRowHeaderRenderCell("Grand Total");
-			tr.rowHeader.add(grandTotalCell);
-			grandTotalCell.colspan = rowFieldsSize;
-
-			final Map<PivotField, Double> grandTotal = new HashMap<>();
-			for (List<Object> columnKey : columnKeys) {
-				MultiMap<PivotField, Object> values = new MultiMap<>();
-				for (List<Object> rowKey : rowKeys) {
-					for (PivotField dataField : dataFields) {
-						if( dataField.getFieldCalculation() == null)
-							values.addValue(dataField, pivotModel.getValueAt(dataField, rowKey, columnKey));
-					}
-				}
-				for (PivotField dataField : dataFields) {
-					double grandTotalForColumn = 0.0d;
-					if (dataField.getFieldCalculation() != null) {
-						grandTotalForColumn = PivotUtils.getSummary(dataField, Collections.emptyList(),
-								new FieldValueProviderFromSummedValues(values)).doubleValue();
-					}
-					else {
-						// We can sum all row values
-                        List<Object> items = values.get(dataField);
-                        for (Object item : items) {
-                            if (item != null) {
-                                grandTotalForColumn += ((Number) item).doubleValue();
-                            }
-                        }
-
-                        if (!grandTotal.containsKey(dataField)) {
-                            grandTotal.put(dataField, grandTotalForColumn);
-                        } else {
-                            grandTotal.put(dataField, grandTotal.get(dataField) + grandTotalForColumn);
-                        }
-
-					}
-                    tr.value.add(new GrandTotalValueRenderCell(grandTotalForColumn, false));
+		@Override
+		public void visitCell(CellType cellType, int columnIndex, Object value, PivotField field, int colspan,
+				int rowspan) {
+			switch (cellType) {
+			case HEADER:
+				HeaderRenderCell headerCell = new HeaderRenderCell(field);
+				if (columnIndex < rowHeaderCount) {
+					headerRow.rowHeader.add(headerCell);
+				} else if (columnIndex < grandTotalColumn) {
+					headerRow.value.add(headerCell);
+				} else {
+					headerRow.grandTotalColumn.add(headerCell);
 				}
-			}
-			if (!columnFields.isEmpty() && pivotModel.isShowGrandTotalForRow()) {
-				for (PivotField dataField : dataFields) {
-					if (dataField.getFieldCalculation() != null) {
-						double grandTotalValue = PivotUtils.getSummary(dataField, Collections.emptyList(),
-								field -> {
-									// If the field is not in the regular
-									// data, we can not return a sum of it
-									if (!grandTotal.containsKey(field))
-										return 0;
-									return grandTotal.get(field);
-								}).doubleValue();
-
-						tr.value.add(new GrandTotalValueRenderCell(grandTotalValue, true));
-					}
-					else {
-						tr.value.add(new GrandTotalValueRenderCell(grandTotal.get(dataField), true));
-					}
+				break;
+			case HEADER_VALUE:
+				HeaderValueRenderCell valueCell = new HeaderValueRenderCell(value, field);
+				valueCell.colspan = colspan;
+				headerRow.value.add(valueCell);
+				break;
+			case GRAND_TOTAL_HEADER:
+				GrandTotalHeaderRenderCell totalHeaderCell = new GrandTotalHeaderRenderCell(value);
+				totalHeaderCell.colspan = colspan;
+				headerRow.grandTotalColumn.add(totalHeaderCell);
+				break;
+			case DATA_HEADER:
+				DataHeaderRenderCell dataHeaderCell = new DataHeaderRenderCell(value, field);
+				dataHeaderCell.rowspan = rowspan;
+				dataRow.rowHeader.add(dataHeaderCell);
+				break;
+			case DATA_VALUE:
+				dataRow.value.add(new DataValueRenderCell((Number) value, field));
+				break;
+			case GRAND_TOTAL_ROW_HEADER:
+				GrandTotalRowHeaderRenderCell totalRowHeaderCell = new GrandTotalRowHeaderRenderCell((String) value);
+				totalRowHeaderCell.colspan = colspan;
+				totalRow.rowHeader.add(totalRowHeaderCell);
+				break;
+			case GRAND_TOTAL_VALUE:
+				double total = ((Number) value).doubleValue();
+				if (dataRow != null) {
+					dataRow.value.add(new GrandTotalValueRenderCell(total, true));
+				} else {
+					totalRow.value.add(new GrandTotalValueRenderCell(total, columnIndex >= grandTotalColumn));
 				}
+				break;
 			}
 		}
 	}
-
-	private int getSpan(Node root, List<Object> path) {
-		if (spanCache.containsKey(path)) {
-			return spanCache.get(path);
-		}
-
-		// quick and dirty
-		Node node = TreeHelper.getNode(root, path);
-
-		int span = 1;
-		if (!node.isLeaf()) {
-			span = TreeHelper.getLeafs(node).size();
-		}
-
-		return span;
-	}
 }
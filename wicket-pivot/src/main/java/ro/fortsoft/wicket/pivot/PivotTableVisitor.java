@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import java.io.IOException;
+
+/**
+ * Receives the cells of a pivot table, row by row (see {@link PivotTableWalker}).
+ * The cells are the same (and in the same order) as the cells of
+ * {@link PivotTableRenderModel#getAllRenderRows()}, but no cell object is
+ * created. The column is the position of the cell in a grid where each span
+ * occupies its own columns, so the columns covered by a row span of a previous
+ * row are skipped.
+ *
+ * @author Decebal Suiu
+ */
+public interface PivotTableVisitor {
+
+	public default void startRow(RowType rowType) throws IOException {
+	}
+
+	public void visitCell(CellType cellType, int column, Object value, PivotField field, int colspan, int rowspan)
+			throws IOException;
+
+	public default void endRow() throws IOException {
+	}
+
+	public enum RowType {
+
+		HEADER,
+		DATA,
+		GRAND_TOTAL
+
+	}
+
+	public enum CellType {
+
+		/**
+		 * A row field title, a data field title or an empty cell of the header.
+		 */
+		HEADER,
+
+		/**
+		 * A value of a column field.
+		 */
+		HEADER_VALUE,
+
+		/**
+		 * A value of a row field.
+		 */
+		DATA_HEADER,
+
+		DATA_VALUE,
+
+		/**
+		 * The title of the grand total column.
+		 */
+		GRAND_TOTAL_HEADER,
+
+		/**
+		 * The title of the grand total row.
+		 */
+		GRAND_TOTAL_ROW_HEADER,
+
+		GRAND_TOTAL_VALUE
+
+	}
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import java.io.IOException;
+import java.util.List;
+
+import ro.fortsoft.wicket.pivot.PivotTableVisitor.CellType;
+import ro.fortsoft.wicket.pivot.PivotTableVisitor.RowType;
+import ro.fortsoft.wicket.pivot.tree.CompactTree;
+
+/**
+ * Walks the cells of a calculated pivot model, row by row, without creating a
+ * {@link PivotTableRenderModel}. The grand totals are taken from
+ * {@link PivotModel#getTotals()}. It's used to export large pivots and to
+ * build the render model.
+ *
+ * @author Decebal Suiu
+ */
+public class PivotTableWalker {
+
+	private PivotModel pivotModel;
+	private List<PivotField> rowFields;
+	private List<PivotField> columnFields;
+	private List<PivotField> dataFields;
+	private int rowCount;
+	private int columnCount;
+	private boolean showGrandTotalColumn;
+	private boolean showGrandTotalRow;
+	private PivotTotals totals;
+
+	public PivotTableWalker(PivotModel pivotModel) {
+		this.pivotModel = pivotModel;
+
+		rowFields = pivotModel.getFields(PivotField.Area.ROW);
+		columnFields = pivotModel.getFields(PivotField.Area.COLUMN);
+		dataFields = pivotModel.getFields(PivotField.Area.DATA);
+		rowCount = pivotModel.getRowKeys().size();
+		columnCount = pivotModel.getColumnKeys().size();
+		showGrandTotalColumn = !columnFields.isEmpty() && pivotModel.isShowGrandTotalForRow();
+		showGrandTotalRow = !rowFields.isEmpty() && pivotModel.isShowGrandTotalForColumn();
+	}
+
+	public static void walk(PivotModel pivotModel, PivotTableVisitor visitor) throws IOException {
+		new PivotTableWalker(pivotModel).walk(visitor);
+	}
+
+	public void walk(PivotTableVisitor visitor) throws IOException {
+		totals = (showGrandTotalColumn || showGrandTotalRow) ? pivotModel.getTotals() : null;
+
+		walkHeaderRows(visitor);
+		CompactTree rowsTree = pivotModel.getRowsHeaderTree().getCompactTree();
+		int rowNode = 1; // in pre-order, the first leaf of the nodes doesn't decrease
+		for (int r = 0; r < rowCount; r++) {
+			visitor.startRow(RowType.DATA);
+			for (; (rowNode < rowsTree.getNodeCount()) && (rowsTree.getFirstLeaf(rowNode) == r); rowNode++) {
+				int depth = rowsTree.getDepth(rowNode);
+				visitor.visitCell(CellType.DATA_HEADER, depth - 1, rowsTree.getValue(rowNode),
+						rowFields.get(depth - 1), 1, rowsTree.getLeafCount(rowNode));
+			}
+			walkDataRow(r, visitor);
+			visitor.endRow();
+		}
+		if (showGrandTotalRow) {
+			walkGrandTotalRow(visitor);
+		}
+	}
+
+	private void walkHeaderRows(PivotTableVisitor visitor) throws IOException {
+		int columnFieldCount = columnFields.size();
+		int dataFieldCount = dataFields.size();
+		int headerRowCount = Math.max(columnFieldCount, 1);
+		if ((dataFieldCount > 1) && (columnFieldCount > 0)) {
+			// add an extra row (the row with data field titles)
+			headerRowCount++;
+		}
+
+		CompactTree columnsTree = pivotModel.getColumnsHeaderTree().getCompactTree();
+		for (int i = 0; i < headerRowCount; i++) {
+			visitor.startRow(RowType.HEADER);
+			int column = 0;
+			for (PivotField rowField : rowFields) {
+				if (i < headerRowCount - 1) {
+					visitor.visitCell(CellType.HEADER, column++, null, null, 1, 1);
+				} else {
+					visitor.visitCell(CellType.HEADER, column++, rowField.getTitle(), rowField, 1, 1);
+				}
+			}
+
+			if (i < columnFieldCount) {
+				PivotField columnField = columnFields.get(i);
+				for (int node : columnsTree.getNodes(i + 1)) {
+					int colspan = columnsTree.getLeafCount(node) * dataFieldCount;
+					visitor.visitCell(CellType.HEADER_VALUE, column, columnsTree.getValue(node), columnField,
+							colspan, 1);
+					column += colspan;
+				}
+			} else {
+				for (int c = 0; c < columnCount; c++) {
+					for (PivotField dataField : dataFields) {
+						visitor.visitCell(CellType.HEADER, column++, dataField.getTitle(), dataField, 1, 1);
+					}
+				}
+			}
+
+			if (showGrandTotalColumn) {
+				if (i < columnFieldCount) {
+					visitor.visitCell(CellType.GRAND_TOTAL_HEADER, column, (i == 0) ? "Grand Total" : null, null,
+							dataFieldCount, 1);
+				} else {
+					for (PivotField dataField : dataFields) {
+						visitor.visitCell(CellType.HEADER, column++, dataField.getTitle(), dataField, 1, 1);
+					}
+				}
+			}
+			visitor.endRow();
+		}
+	}
+
+	private void walkDataRow(int r, PivotTableVisitor visitor) throws IOException {
+		int dataFieldCount = dataFields.size();
+		int column = rowFields.size();
+		for (int c = 0; c < columnCount; c++) {
+			for (int d = 0; d < dataFieldCount; d++) {
+				visitor.visitCell(CellType.DATA_VALUE, column++, pivotModel.getValueAt(d, r, c), dataFields.get(d), 1,
+						1);
+			}
+		}
+
+		if (showGrandTotalColumn) {
+			for (int d = 0; d < dataFieldCount; d++) {
+				visitor.visitCell(CellType.GRAND_TOTAL_VALUE, column++, totals.getRowTotal(d, r), dataFields.get(d), 1,
+						1);
+			}
+		}
+	}
+
+	private void walkGrandTotalRow(PivotTableVisitor visitor) throws IOException {
+		int dataFieldCount = dataFields.size();
+		visitor.startRow(RowType.GRAND_TOTAL);
+		visitor.visitCell(CellType.GRAND_TOTAL_ROW_HEADER, 0, "Grand Total", null, rowFields.size(), 1);
+		int column = rowFields.size();
+		for (int c = 0; c < columnCount; c++) {
+			for (int d = 0; d < dataFieldCount; d++) {
+				visitor.visitCell(CellType.GRAND_TOTAL_VALUE, column++, totals.getColumnTotal(d, c),
+						dataFields.get(d), 1, 1);
+			}
+		}
+
+		if (showGrandTotalColumn) {
+			for (int d = 0; d < dataFieldCount; d++) {
+				visitor.visitCell(CellType.GRAND_TOTAL_VALUE, column++, totals.getGrandTotal(d), dataFields.get(d), 1,
+						1);
+			}
+		}
+		visitor.endRow();
+	}
+
+}
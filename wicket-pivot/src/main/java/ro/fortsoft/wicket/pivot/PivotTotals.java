@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+import ro.fortsoft.wicket.pivot.FieldCalculation.FieldValueProvider;
+
+/**
+ * The grand totals of a calculated pivot, for each data field: the total of
+ * each row (the grand total column), the total of each column (the grand total
+ * row) and the total of the table. The sums are accumulated while the values
+ * are stored, the total of a field with calculation is calculated from the
+ * sums of the other data fields (the column sums and the table sum include
+ * only the fields without calculation).
+ *
+ * @author Decebal Suiu
+ */
+public class PivotTotals implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private List<PivotField> dataFields;
+	private int rowCount;
+	private int columnCount;
+	private double[] rowSums; // for each row, the sum of each data field
+	private double[] columnSums; // for each column, the sum of each data field without calculation
+	private double[] sums; // the sum of each data field without calculation
+
+	public PivotTotals(List<PivotField> dataFields, int rowCount, int columnCount) {
+		this.dataFields = dataFields;
+		this.rowCount = rowCount;
+		this.columnCount = columnCount;
+
+		int dataFieldCount = dataFields.size();
+		rowSums = new double[rowCount * dataFieldCount];
+		columnSums = new double[columnCount * dataFieldCount];
+		sums = new double[dataFieldCount];
+	}
+
+	/**
+	 * Calculates the totals from the values of a calculated model (a scan of
+	 * all the cells).
+	 */
+	public static PivotTotals calculate(PivotModel pivotModel) {
+		List<PivotField> dataFields = pivotModel.getFields(PivotField.Area.DATA);
+		int rowCount = pivotModel.getRowKeys().size();
+		int columnCount = pivotModel.getColumnKeys().size();
+		PivotTotals totals = new PivotTotals(dataFields, rowCount, columnCount);
+		for (int r = 0; r < rowCount; r++) {
+			for (int c = 0; c < columnCount; c++) {
+				for (int d = 0; d < dataFields.size(); d++) {
+					totals.addValue(r, c, d, (Number) pivotModel.getValueAt(d, r, c));
+				}
+			}
+		}
+
+		return totals;
+	}
+
+	/**
+	 * Adds a value (of a cell) to the sums. Each cell must be added once.
+	 */
+	public void addValue(int rowIndex, int columnIndex, int dataFieldIndex, Number value) {
+		if (value == null) {
+			return;
+		}
+
+		int dataFieldCount = dataFields.size();
+		double doubleValue = value.doubleValue();
+		rowSums[rowIndex * dataFieldCount + dataFieldIndex] += doubleValue;
+		if (dataFields.get(dataFieldIndex).getFieldCalculation() == null) {
+			columnSums[columnIndex * dataFieldCount + dataFieldIndex] += doubleValue;
+			sums[dataFieldIndex] += doubleValue;
+		}
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public int getColumnCount() {
+		return columnCount;
+	}
+
+	/**
+	 * Gets the total of a row (a cell of the grand total column).
+	 */
+	public double getRowTotal(int dataFieldIndex, int rowIndex) {
+		return getTotal(dataFieldIndex, rowSums, rowIndex * dataFields.size());
+	}
+
+	/**
+	 * Gets the total of a column (a cell of the grand total row).
+	 */
+	public double getColumnTotal(int dataFieldIndex, int columnIndex) {
+		return getTotal(dataFieldIndex, columnSums, columnIndex * dataFields.size());
+	}
+
+	/**
+	 * Gets the total of the table (a cell at the intersection of the grand
+	 * total row and the grand total column).
+	 */
+	public double getGrandTotal(int dataFieldIndex) {
+		return getTotal(dataFieldIndex, sums, 0);
+	}
+
+	private double getTotal(int dataFieldIndex, final double[] sums, final int offset) {
+		PivotField dataField = dataFields.get(dataFieldIndex);
+		if (dataField.getFieldCalculation() == null) {
+			return sums[offset + dataFieldIndex];
+		}
+
+		FieldValueProvider fieldValueProvider = field -> {
+			int index = dataFields.indexOf(field);
+			return (index != -1) ? sums[offset + index] : 0;
+		};
+
+		return PivotUtils.getSummary(dataField, Collections.emptyList(), fieldValueProvider).doubleValue();
+	}
+
+}
@@ -12,6 +12,9 @@
  */
 package ro.fortsoft.wicket.pivot;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import ro.fortsoft.wicket.pivot.FieldCalculation.FieldValueProvider;
@@ -27,4 +30,65 @@ public class PivotUtils {
 		return (Number) dataField.getAggregator().init().addAll(values).getResult();
 	}
 
+	/**
+	 * Retrieves the comparator for the values of a field according to its sort
+	 * order or null if the field is unsorted. The null values are the smallest.
+	 */
+	@SuppressWarnings("unchecked")
+	public static Comparator<Object> getComparator(PivotField field) {
+		int sortOrder = field.getSortOrder();
+		if (sortOrder == PivotField.SORT_ORDER_UNSORTED) {
+			return null;
+		}
+
+		final int sign = sortOrder == PivotField.SORT_ORDER_ASCENDING ? 1
+				: sortOrder == PivotField.SORT_ORDER_DESCENDING ? -1 : 1;
+		return (o1, o2) -> {
+			if (o1 == o2)
+				return 0;
+			if (o1 == null)
+				return sign * -1;
+			if (o2 == null)
+				return sign;
+			return sign * ((Comparable<Object>) o1).compareTo(o2);
+		};
+	}
+
+	/**
+	 * Returns the row count of a data source or -1 if the rows of a row source
+	 * are not counted (a row source is not read or counted to know its rows).
+	 */
+	public static long getKnownRowCount(PivotDataSource dataSource) {
+		if (dataSource instanceof PivotRowSource) {
+			return ((PivotRowSource) dataSource).getKnownRowCount();
+		}
+
+		return dataSource.getRowCount();
+	}
+
+	public static int[] getFieldIndexes(List<PivotField> fields) {
+		int[] indexes = new int[fields.size()];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = fields.get(i).getIndex();
+		}
+
+		return indexes;
+	}
+
+	/**
+	 * Retrieves the key (the values of the fields) for a row of the data source.
+	 */
+	public static List<Object> getKey(PivotDataSource dataSource, int row, int[] fieldIndexes) {
+		if (fieldIndexes.length == 0) {
+			return Collections.emptyList();
+		}
+
+		List<Object> key = new ArrayList<>(fieldIndexes.length);
+		for (int fieldIndex : fieldIndexes) {
+			key.add(dataSource.getValueAt(row, fieldIndex));
+		}
+
+		return key;
+	}
+
 }
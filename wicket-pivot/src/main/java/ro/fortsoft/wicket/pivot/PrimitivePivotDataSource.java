@@ -0,0 +1,35 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+/**
+ * A data source that stores (some of) its numeric fields as primitives, so
+ * the values can be aggregated without boxing.
+ * 
+ * @author Decebal Suiu
+ */
+public interface PrimitivePivotDataSource extends PivotDataSource {
+
+	/**
+	 * Gets the primitive type (double.class or long.class) used to store the
+	 * values of a field or null if the values are stored as objects.
+	 */
+	public Class<?> getPrimitiveType(int fieldIndex);
+	
+	public boolean isNullAt(int rowIndex, int fieldIndex);
+	
+	public double getDoubleAt(int rowIndex, int fieldIndex);
+	
+	public long getLongAt(int rowIndex, int fieldIndex);
+	
+}
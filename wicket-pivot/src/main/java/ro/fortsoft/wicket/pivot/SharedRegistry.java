@@ -0,0 +1,53 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the objects shared by the pivot models of the JVM (for example a
+ * bitmap index), by id. A model serializes only the id and retrieves the
+ * same object after deserialization. The objects are weakly referenced, an
+ * object not referenced anymore (for example by the application) is removed.
+ *
+ * @author Decebal Suiu
+ */
+class SharedRegistry<T> {
+
+	private final Map<String, WeakReference<T>> objects = new ConcurrentHashMap<>();
+
+	/**
+	 * Adds an object and returns its id.
+	 */
+	public String register(T object) {
+		objects.values().removeIf(reference -> reference.get() == null);
+
+		String id = UUID.randomUUID().toString();
+		objects.put(id, new WeakReference<>(object));
+
+		return id;
+	}
+
+	/**
+	 * Retrieves an object by id, or null if the object was removed.
+	 */
+	public T get(String id) {
+		WeakReference<T> reference = objects.get(id);
+
+		return (reference != null) ? reference.get() : null;
+	}
+
+}
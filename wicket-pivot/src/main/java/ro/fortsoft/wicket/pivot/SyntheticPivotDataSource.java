@@ -0,0 +1,393 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A data source with generated rows, for load and scale tests without a
+ * database. The values of each field are chosen (uniformly or with a Zipf
+ * distribution) from a number of distinct values, some of them can be null.
+ * The rows are the same for the same seed and fields.
+ *
+ * <pre>
+ * SyntheticPivotDataSource dataSource = new SyntheticPivotDataSource(10000000, 42);
+ * dataSource.addField("REGION", String.class, 10);
+ * dataSource.addField("SALESMAN", String.class, 1000).setZipfExponent(1.1).setNullRatio(0.01);
+ * dataSource.addField("YEAR", Integer.class).setValues(2010, 2011, 2012, 2013);
+ * dataSource.addField("SALES", Double.class, 100000);
+ * </pre>
+ *
+ * The rows are generated on first access (the fields must be added before) and,
+ * for each field, only the index of the value is kept (a byte, a char or an int).
+ * After a deserialization the rows are generated again.
+ *
+ * @author Decebal Suiu
+ */
+public class SyntheticPivotDataSource implements PivotDataSource {
+
+	private static final long serialVersionUID = 1L;
+
+	private int rowCount;
+	private long seed;
+	private List<SyntheticField> fields;
+
+	private transient volatile Object[] columns; // for each field, the value index + 1 (0 for null) of each row
+
+	public SyntheticPivotDataSource(int rowCount, long seed) {
+		this.rowCount = rowCount;
+		this.seed = seed;
+
+		fields = new ArrayList<>();
+	}
+
+	/**
+	 * Adds a field with values of a type (String, Integer, Long, Short, Double
+	 * or Float). The value with index k is "NAME_k" for a String field, k for
+	 * an integer field and k / 100 for a decimal field.
+	 */
+	public SyntheticField addField(String name, Class<?> type, int cardinality) {
+		if (isGenerated()) {
+			throw new IllegalStateException("The rows are already generated");
+		}
+
+		SyntheticField field = new SyntheticField(name, type, cardinality);
+		fields.add(field);
+
+		return field;
+	}
+
+	/**
+	 * Adds a field whose values are set with {@link SyntheticField#setValues(Object...)}.
+	 */
+	public SyntheticField addField(String name, Class<?> type) {
+		return addField(name, type, 1);
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public boolean isGenerated() {
+		return columns != null;
+	}
+
+	/**
+	 * Generates the rows. It's called on first access, call it to control
+	 * when the rows are generated (for example before a benchmark).
+	 */
+	public void generate() {
+		getColumns();
+	}
+
+	@Override
+	public String getFieldName(int fieldIndex) {
+		return fields.get(fieldIndex).name;
+	}
+
+	@Override
+	public int getFieldIndex(String fieldName) {
+		for (int i = 0; i < fields.size(); i++) {
+			if (fields.get(i).name.equals(fieldName)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	@Override
+	public Class<?> getFieldType(int fieldIndex) {
+		return fields.get(fieldIndex).type;
+	}
+
+	@Override
+	public int getFieldCount() {
+		return fields.size();
+	}
+
+	@Override
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	@Override
+	public Object getValueAt(int rowIndex, int fieldIndex) {
+		Object column = getColumns()[fieldIndex];
+		int code;
+		if (column instanceof byte[]) {
+			code = ((byte[]) column)[rowIndex] & 0xFF;
+		} else if (column instanceof char[]) {
+			code = ((char[]) column)[rowIndex];
+		} else {
+			code = ((int[]) column)[rowIndex];
+		}
+
+		return (code == 0) ? null : fields.get(fieldIndex).getValue(code - 1);
+	}
+
+	@Override
+	public Object getValueAt(int rowIndex, PivotField field) {
+		return getValueAt(rowIndex, field.getIndex());
+	}
+
+	@Override
+	public String toString() {
+		return "SyntheticPivotDataSource [rowCount=" + rowCount + ", seed=" + seed + ", fields=" + fields + "]";
+	}
+
+	private Object[] getColumns() {
+		Object[] columns = this.columns;
+		if (columns == null) {
+			synchronized (this) {
+				columns = this.columns;
+				if (columns == null) {
+					for (SyntheticField field : fields) {
+						field.generated = true;
+					}
+					columns = generateColumns();
+					this.columns = columns;
+				}
+			}
+		}
+
+		return columns;
+	}
+
+	/*
+	 * Each field has its own random generator, so the values of a field don't
+	 * depend on the other fields.
+	 */
+	private Object[] generateColumns() {
+		Object[] columns = new Object[fields.size()];
+		for (int f = 0; f < fields.size(); f++) {
+			SyntheticField field = fields.get(f);
+			Random random = new Random(seed * 31 + f);
+			double[] distribution = field.getDistribution();
+			if (field.cardinality < 0xFF) {
+				byte[] column = new byte[rowCount];
+				for (int row = 0; row < rowCount; row++) {
+					column[row] = (byte) field.nextCode(random, distribution);
+				}
+				columns[f] = column;
+			} else if (field.cardinality < 0xFFFF) {
+				char[] column = new char[rowCount];
+				for (int row = 0; row < rowCount; row++) {
+					column[row] = (char) field.nextCode(random, distribution);
+				}
+				columns[f] = column;
+			} else {
+				int[] column = new int[rowCount];
+				for (int row = 0; row < rowCount; row++) {
+					column[row] = field.nextCode(random, distribution);
+				}
+				columns[f] = column;
+			}
+		}
+
+		return columns;
+	}
+
+	/**
+	 * The settings of a generated field.
+	 */
+	public static class SyntheticField implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private String name;
+		private Class<?> type;
+		private int cardinality;
+		private double zipfExponent;
+		private double nullRatio;
+		private Object[] values;
+
+		private transient Object[] cachedValues;
+		private transient volatile boolean generated; // the settings cannot change after the rows are generated
+
+		public SyntheticField(String name, Class<?> type, int cardinality) {
+			if (cardinality < 1) {
+				throw new IllegalArgumentException("The cardinality must be positive");
+			}
+			if ((type != String.class) && (type != Integer.class) && (type != Long.class) && (type != Short.class)
+					&& (type != Double.class) && (type != Float.class)) {
+				throw new IllegalArgumentException("Unsupported type " + type.getName());
+			}
+
+			this.name = name;
+			this.type = type;
+			this.cardinality = cardinality;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Class<?> getType() {
+			return type;
+		}
+
+		/**
+		 * Returns the number of distinct (not null) values.
+		 */
+		public int getCardinality() {
+			return cardinality;
+		}
+
+		public double getZipfExponent() {
+			return zipfExponent;
+		}
+
+		/**
+		 * Sets the skew of the values. With 0 (the default) the values are
+		 * uniformly distributed, otherwise the frequency of the value with
+		 * index k is proportional to 1 / (k + 1)^exponent (1 is a typical skew).
+		 */
+		public SyntheticField setZipfExponent(double zipfExponent) {
+			checkNotGenerated();
+			if (zipfExponent < 0) {
+				throw new IllegalArgumentException("The exponent cannot be negative");
+			}
+			this.zipfExponent = zipfExponent;
+
+			return this;
+		}
+
+		public double getNullRatio() {
+			return nullRatio;
+		}
+
+		/**
+		 * Sets the ratio (between 0 and 1) of the rows with a null value.
+		 */
+		public SyntheticField setNullRatio(double nullRatio) {
+			checkNotGenerated();
+			if ((nullRatio < 0) || (nullRatio > 1)) {
+				throw new IllegalArgumentException("The null ratio must be between 0 and 1");
+			}
+			this.nullRatio = nullRatio;
+
+			return this;
+		}
+
+		/**
+		 * Sets the distinct values (of the field type) instead of the generated ones.
+		 */
+		public SyntheticField setValues(Object... values) {
+			checkNotGenerated();
+			if (values.length == 0) {
+				throw new IllegalArgumentException("No values");
+			}
+			for (Object value : values) {
+				if (!type.isInstance(value)) {
+					throw new IllegalArgumentException("The value '" + value + "' is not a " + type.getName());
+				}
+			}
+			this.values = values.clone();
+			cardinality = values.length;
+			cachedValues = null;
+
+			return this;
+		}
+
+		@Override
+		public String toString() {
+			return "SyntheticField [name=" + name + ", type=" + type.getSimpleName() + ", cardinality="
+					+ cardinality + ", zipfExponent=" + zipfExponent + ", nullRatio=" + nullRatio + "]";
+		}
+
+		private void checkNotGenerated() {
+			if (generated) {
+				throw new IllegalStateException("The rows are already generated");
+			}
+		}
+
+		Object getValue(int index) {
+			Object[] cachedValues = this.cachedValues;
+			if (cachedValues == null) {
+				cachedValues = (values != null) ? values : createValues();
+				this.cachedValues = cachedValues;
+			}
+
+			return cachedValues[index];
+		}
+
+		private Object[] createValues() {
+			Object[] values = new Object[cardinality];
+			for (int k = 0; k < cardinality; k++) {
+				if (type == String.class) {
+					values[k] = name + "_" + k;
+				} else if (type == Integer.class) {
+					values[k] = k;
+				} else if (type == Long.class) {
+					values[k] = (long) k;
+				} else if (type == Short.class) {
+					values[k] = (short) k;
+				} else if (type == Double.class) {
+					values[k] = k / 100.0;
+				} else {
+					values[k] = k / 100f;
+				}
+			}
+
+			return values;
+		}
+
+		/*
+		 * Returns the cumulative probabilities of the values (Zipf) or null for
+		 * a uniform distribution.
+		 */
+		double[] getDistribution() {
+			if (zipfExponent == 0) {
+				return null;
+			}
+
+			double[] distribution = new double[cardinality];
+			double sum = 0;
+			for (int k = 0; k < cardinality; k++) {
+				sum += 1 / Math.pow(k + 1, zipfExponent);
+				distribution[k] = sum;
+			}
+			for (int k = 0; k < cardinality; k++) {
+				distribution[k] /= sum;
+			}
+
+			return distribution;
+		}
+
+		/*
+		 * Returns the index + 1 of a random value or 0 for null.
+		 */
+		int nextCode(Random random, double[] distribution) {
+			if ((nullRatio > 0) && (random.nextDouble() < nullRatio)) {
+				return 0;
+			}
+			if (distribution == null) {
+				return random.nextInt(cardinality) + 1;
+			}
+
+			int index = Arrays.binarySearch(distribution, random.nextDouble());
+			if (index < 0) {
+				index = -index - 1;
+			}
+
+			return Math.min(index, cardinality - 1) + 1;
+		}
+
+	}
+
+}
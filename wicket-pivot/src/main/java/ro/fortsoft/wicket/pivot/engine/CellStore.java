@@ -0,0 +1,397 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.engine;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.BitSet;
+
+/**
+ * The calculated values of a pivot, indexed by (row ordinal, column ordinal,
+ * data field ordinal). The values are kept as doubles and boxed back to their
+ * original type (Double, Float, Long, Integer, Short or Byte) when they are
+ * read. Other numbers, or a type that changes inside a data field, are kept as
+ * objects.
+ * <p>
+ * A dense store keeps a flat array with all the cells. A sparse store keeps
+ * only the cells with a value, in an open addressing hash table, and uses
+ * about four times more memory for each value. The sparse store is used when
+ * less than a quarter of the cells are expected to have a value (or when the
+ * number of cells doesn't fit in an array).
+ * <p>
+ * Only the cells with a value are serialized.
+ *
+ * @author Decebal Suiu
+ */
+public class CellStore implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Up to this number of cells the store is always dense.
+	 */
+	public static final int MIN_SPARSE_SIZE = 1 << 16;
+
+	private static final int MAX_DENSE_SIZE = Integer.MAX_VALUE - 8;
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int rowCount;
+	private int columnCount;
+	private int fieldCount;
+
+	private transient double[] values; // indexed by cell for a dense store, by slot for a sparse store
+	private transient BitSet present; // the cells with a (not null) value of a dense store
+	private transient long[] indexes; // the cell + 1 (0 for an empty slot) of each slot of a sparse store
+	private transient int valueCount; // the number of values of a sparse store
+	private Class<?>[] types; // for each data field, the type of the values stored as double
+	private transient Object[] objects; // the values not stored as double, allocated on first use
+
+	public CellStore(int rowCount, int columnCount, int fieldCount) {
+		this(rowCount, columnCount, fieldCount, -1);
+	}
+
+	/**
+	 * @param expectedValueCount the expected number of values (or -1 if it's
+	 * unknown), used to choose between a dense and a sparse store
+	 */
+	public CellStore(int rowCount, int columnCount, int fieldCount, long expectedValueCount) {
+		this.rowCount = rowCount;
+		this.columnCount = columnCount;
+		this.fieldCount = fieldCount;
+
+		long size = (long) rowCount * columnCount * fieldCount;
+		boolean dense = (size <= MIN_SPARSE_SIZE)
+				|| ((size <= MAX_DENSE_SIZE) && (expectedValueCount >= 0) && (expectedValueCount * 4 >= size));
+		if (dense) {
+			values = new double[(int) size];
+			present = new BitSet((int) size);
+		} else {
+			int capacity = getCapacity(expectedValueCount);
+			values = new double[capacity];
+			indexes = new long[capacity];
+		}
+		types = new Class<?>[fieldCount];
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public int getColumnCount() {
+		return columnCount;
+	}
+
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * Returns true if all the cells are stored, false if only the cells with
+	 * a value are stored.
+	 */
+	public boolean isDense() {
+		return indexes == null;
+	}
+
+	public void setValue(int rowOrdinal, int columnOrdinal, int fieldOrdinal, Number value) {
+		long index = getIndex(rowOrdinal, columnOrdinal, fieldOrdinal);
+		if (value == null) {
+			clear(index);
+			return;
+		}
+
+		int slot;
+		if (isDense()) {
+			slot = (int) index;
+			present.set(slot);
+		} else {
+			slot = addSlot(index);
+		}
+		if (isDoubleValue(fieldOrdinal, value)) {
+			values[slot] = value.doubleValue();
+			if (objects != null) {
+				objects[slot] = null;
+			}
+		} else {
+			if (objects == null) {
+				objects = new Object[values.length];
+			}
+			objects[slot] = value;
+		}
+	}
+
+	/**
+	 * Returns the value or null if the cell is empty.
+	 */
+	public Number getValue(int rowOrdinal, int columnOrdinal, int fieldOrdinal) {
+		int slot = getSlot(getIndex(rowOrdinal, columnOrdinal, fieldOrdinal));
+		if (slot == -1) {
+			return null;
+		}
+		if ((objects != null) && (objects[slot] != null)) {
+			return (Number) objects[slot];
+		}
+
+		return box(types[fieldOrdinal], values[slot]);
+	}
+
+	/**
+	 * Returns the value as double or NaN if the cell is empty.
+	 */
+	public double getDouble(int rowOrdinal, int columnOrdinal, int fieldOrdinal) {
+		int slot = getSlot(getIndex(rowOrdinal, columnOrdinal, fieldOrdinal));
+		if (slot == -1) {
+			return Double.NaN;
+		}
+		if ((objects != null) && (objects[slot] != null)) {
+			return ((Number) objects[slot]).doubleValue();
+		}
+
+		return values[slot];
+	}
+
+	/**
+	 * Returns the number of cells with a value.
+	 */
+	public int getValueCount() {
+		return isDense() ? present.cardinality() : valueCount;
+	}
+
+	public boolean hasValue(int rowOrdinal, int columnOrdinal, int fieldOrdinal) {
+		return getSlot(getIndex(rowOrdinal, columnOrdinal, fieldOrdinal)) != -1;
+	}
+
+	@Override
+	public String toString() {
+		return "CellStore [rowCount=" + rowCount + ", columnCount=" + columnCount + ", fieldCount=" + fieldCount
+				+ ", dense=" + isDense() + ", valueCount=" + getValueCount() + "]";
+	}
+
+	/*
+	 * Writes the number of values and the values, with the cell index for a sparse store.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeBoolean(isDense());
+		out.writeBoolean(objects != null);
+		if (isDense()) {
+			out.writeObject(present);
+			for (int slot = present.nextSetBit(0); slot >= 0; slot = present.nextSetBit(slot + 1)) {
+				writeValue(out, slot);
+			}
+		} else {
+			out.writeInt(valueCount);
+			for (int slot = 0; slot < indexes.length; slot++) {
+				if (indexes[slot] != 0) {
+					out.writeLong(indexes[slot] - 1);
+					writeValue(out, slot);
+				}
+			}
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		boolean dense = in.readBoolean();
+		boolean hasObjects = in.readBoolean();
+		if (dense) {
+			present = (BitSet) in.readObject();
+			values = new double[rowCount * columnCount * fieldCount];
+			if (hasObjects) {
+				objects = new Object[values.length];
+			}
+			for (int slot = present.nextSetBit(0); slot >= 0; slot = present.nextSetBit(slot + 1)) {
+				readValue(in, slot);
+			}
+		} else {
+			int count = in.readInt();
+			int capacity = getCapacity(count);
+			values = new double[capacity];
+			indexes = new long[capacity];
+			if (hasObjects) {
+				objects = new Object[capacity];
+			}
+			for (int i = 0; i < count; i++) {
+				readValue(in, addSlot(in.readLong()));
+			}
+		}
+	}
+
+	private void writeValue(ObjectOutputStream out, int slot) throws IOException {
+		if (objects != null) {
+			out.writeObject(objects[slot]);
+		}
+		out.writeDouble(values[slot]);
+	}
+
+	private void readValue(ObjectInputStream in, int slot) throws IOException, ClassNotFoundException {
+		if (objects != null) {
+			objects[slot] = in.readObject();
+		}
+		values[slot] = in.readDouble();
+	}
+
+	/*
+	 * Returns the capacity of a sparse store (a power of two) for a number of values.
+	 */
+	private static int getCapacity(long expectedValueCount) {
+		int capacity = INITIAL_CAPACITY;
+		while ((expectedValueCount > 0) && (capacity < expectedValueCount * 2) && (capacity < (1 << 30))) {
+			capacity *= 2;
+		}
+
+		return capacity;
+	}
+
+	private long getIndex(int rowOrdinal, int columnOrdinal, int fieldOrdinal) {
+		return ((long) rowOrdinal * columnCount + columnOrdinal) * fieldCount + fieldOrdinal;
+	}
+
+	/*
+	 * Returns the slot of the cell or -1 if the cell is empty.
+	 */
+	private int getSlot(long index) {
+		if (isDense()) {
+			return present.get((int) index) ? (int) index : -1;
+		}
+
+		int slot = findSlot(index);
+		return (indexes[slot] != 0) ? slot : -1;
+	}
+
+	/*
+	 * Returns the slot of the cell in a sparse store or the empty slot where
+	 * the cell would be added.
+	 */
+	private int findSlot(long index) {
+		int mask = indexes.length - 1;
+		int slot = hash(index) & mask;
+		while ((indexes[slot] != 0) && (indexes[slot] != index + 1)) {
+			slot = (slot + 1) & mask;
+		}
+
+		return slot;
+	}
+
+	private int addSlot(long index) {
+		int slot = findSlot(index);
+		if (indexes[slot] == 0) {
+			if ((valueCount + 1) * 2L > indexes.length) {
+				resize(indexes.length * 2);
+				slot = findSlot(index);
+			}
+			indexes[slot] = index + 1;
+			valueCount++;
+		}
+
+		return slot;
+	}
+
+	private void clear(long index) {
+		if (isDense()) {
+			present.clear((int) index);
+			return;
+		}
+
+		int slot = findSlot(index);
+		if (indexes[slot] == 0) {
+			return;
+		}
+
+		// backward shift deletion, the following entries of the probe sequence fill the hole
+		int mask = indexes.length - 1;
+		int hole = slot;
+		for (int next = (hole + 1) & mask; indexes[next] != 0; next = (next + 1) & mask) {
+			int home = hash(indexes[next] - 1) & mask;
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				moveSlot(next, hole);
+				hole = next;
+			}
+		}
+		indexes[hole] = 0;
+		if (objects != null) {
+			objects[hole] = null;
+		}
+		valueCount--;
+	}
+
+	private void moveSlot(int from, int to) {
+		indexes[to] = indexes[from];
+		values[to] = values[from];
+		if (objects != null) {
+			objects[to] = objects[from];
+		}
+	}
+
+	private void resize(int capacity) {
+		long[] oldIndexes = indexes;
+		double[] oldValues = values;
+		Object[] oldObjects = objects;
+		indexes = new long[capacity];
+		values = new double[capacity];
+		objects = (oldObjects != null) ? new Object[capacity] : null;
+		for (int i = 0; i < oldIndexes.length; i++) {
+			if (oldIndexes[i] != 0) {
+				int slot = findSlot(oldIndexes[i] - 1);
+				indexes[slot] = oldIndexes[i];
+				values[slot] = oldValues[i];
+				if (oldObjects != null) {
+					objects[slot] = oldObjects[i];
+				}
+			}
+		}
+	}
+
+	private static int hash(long index) {
+		long hash = index * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	/*
+	 * Returns true if the value can be stored as double, without losing its
+	 * type or precision.
+	 */
+	private boolean isDoubleValue(int fieldOrdinal, Number value) {
+		Class<?> type = value.getClass();
+		if (types[fieldOrdinal] == null) {
+			if ((type != Double.class) && (type != Float.class) && (type != Long.class) && (type != Integer.class)
+					&& (type != Short.class) && (type != Byte.class)) {
+				return false;
+			}
+			types[fieldOrdinal] = type;
+		} else if (types[fieldOrdinal] != type) {
+			return false;
+		}
+
+		return (type != Long.class) || ((long) value.doubleValue() == value.longValue());
+	}
+
+	private static Number box(Class<?> type, double value) {
+		if (type == Double.class) {
+			return value;
+		} else if (type == Float.class) {
+			return (float) value;
+		} else if (type == Long.class) {
+			return (long) value;
+		} else if (type == Integer.class) {
+			return (int) value;
+		} else if (type == Short.class) {
+			return (short) value;
+		} else {
+			return (byte) value;
+		}
+	}
+
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ro.fortsoft.wicket.pivot.Aggregator;
+import ro.fortsoft.wicket.pivot.CalculationProgress;
+import ro.fortsoft.wicket.pivot.PivotDataSource;
+import ro.fortsoft.wicket.pivot.PivotField;
+import ro.fortsoft.wicket.pivot.PivotUtils;
+import ro.fortsoft.wicket.pivot.PrimitivePivotDataSource;
+
+/**
+ * Aggregates the raw data in a single pass over the data source. Each row is
+ * assigned to its (row key, column key) cell using hash lookups and the
+ * aggregators of that cell are updated in place, so the cost is linear in the
+ * row count and not in rows x cells. The keys of a row are read in reused
+ * buffers, nothing is allocated for a row of an existing cell. The measures stored as primitives by a
+ * {@link PrimitivePivotDataSource} are aggregated without boxing when their
+ * aggregators accept it.
+ * 
+ * @author Decebal Suiu
+ */
+public class HashAggregationEngine {
+
+	/**
+	 * The number of rows aggregated between two progress reports.
+	 */
+	public static final int PROGRESS_STEP = 4096;
+
+	private PivotDataSource dataSource;
+	private List<List<Object>> rowKeys;
+	private List<List<Object>> columnKeys;
+	private List<PivotField> measures;
+
+	private Map<List<Object>, Integer> rowOrdinals;
+	private Map<List<Object>, Integer> columnOrdinals;
+	private int[] rowFieldIndexes;
+	private int[] columnFieldIndexes;
+	private int[] measureIndexes;
+	private Class<?>[] primitiveTypes; // for each measure, the primitive type used to aggregate it or null
+
+	private int[] rowGroups;
+	private int[] columnGroups;
+
+	private CalculationProgress progress = new CalculationProgress();
+
+	public HashAggregationEngine(PivotDataSource dataSource, List<PivotField> rowFields,
+			List<PivotField> columnFields, List<List<Object>> rowKeys, List<List<Object>> columnKeys,
+			List<PivotField> measures) {
+		this.dataSource = dataSource;
+		this.rowKeys = rowKeys;
+		this.columnKeys = columnKeys;
+		this.measures = measures;
+
+		rowOrdinals = getOrdinals(rowKeys);
+		columnOrdinals = getOrdinals(columnKeys);
+		rowFieldIndexes = PivotUtils.getFieldIndexes(rowFields);
+		columnFieldIndexes = PivotUtils.getFieldIndexes(columnFields);
+		measureIndexes = PivotUtils.getFieldIndexes(measures);
+		primitiveTypes = new Class<?>[measures.size()];
+		if (dataSource instanceof PrimitivePivotDataSource) {
+			for (int m = 0; m < measures.size(); m++) {
+				PivotField measure = measures.get(m);
+				if ((measure.getType() != null) && measure.getAggregator().acceptsPrimitive(measure.getType())) {
+					primitiveTypes[m] = ((PrimitivePivotDataSource) dataSource).getPrimitiveType(measureIndexes[m]);
+				}
+			}
+		}
+	}
+
+	public PivotDataSource getDataSource() {
+		return dataSource;
+	}
+
+	public List<PivotField> getMeasures() {
+		return measures;
+	}
+
+	/**
+	 * Reports the aggregated rows to a progress, that can also cancel the aggregation.
+	 */
+	public void setProgress(CalculationProgress progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Records, for each row of the data source, the ordinal of its row key and
+	 * the ordinal of its column key (-1 if the row is not aggregated) during
+	 * the next aggregation. The arrays must have the size of the data source. 
+	 */
+	public void setGroups(int[] rowGroups, int[] columnGroups) {
+		this.rowGroups = rowGroups;
+		this.columnGroups = columnGroups;
+	}
+
+	/**
+	 * Aggregates all the rows of the data source.
+	 */
+	public PivotCube aggregate() {
+		return aggregate(0, dataSource.getRowCount());
+	}
+
+	/**
+	 * Aggregates the rows in the range [fromRow, toRow) of the data source. 
+	 * It's safe to call this method concurrently for different ranges.
+	 */
+	public PivotCube aggregate(int fromRow, int toRow) {
+		PivotCube cube = new PivotCube(rowFieldIndexes, columnFieldIndexes, rowKeys, columnKeys, measures);
+		// the keys of the current row (local buffers, the ranges can be aggregated concurrently)
+		Object[] rowKeyValues = new Object[rowFieldIndexes.length];
+		Object[] columnKeyValues = new Object[columnFieldIndexes.length];
+		List<Object> rowKey = Arrays.asList(rowKeyValues);
+		List<Object> columnKey = Arrays.asList(columnKeyValues);
+		int reportedRow = fromRow;
+		for (int i = fromRow; i < toRow; i++) {
+			if (i - reportedRow == PROGRESS_STEP) {
+				progress.advance(PROGRESS_STEP);
+				reportedRow = i;
+			}
+
+			readKey(i, rowFieldIndexes, rowKeyValues);
+			readKey(i, columnFieldIndexes, columnKeyValues);
+			Integer rowOrdinal = rowOrdinals.get(rowKey);
+			Integer columnOrdinal = columnOrdinals.get(columnKey);
+			if (rowGroups != null) {
+				rowGroups[i] = (rowOrdinal != null) ? rowOrdinal : -1;
+				columnGroups[i] = (columnOrdinal != null) ? columnOrdinal : -1;
+			}
+			if ((rowOrdinal == null) || (columnOrdinal == null)) {
+				continue;
+			}
+
+			int cell = cube.getOrCreateCell(rowOrdinal, columnOrdinal);
+			for (int m = 0; m < measureIndexes.length; m++) {
+				add(cube.getState(m, cell), i, m);
+			}
+		}
+		progress.advance(toRow - reportedRow);
+
+		return cube;
+	}
+
+	/**
+	 * Aggregates the measures of this engine using the cells of a previous
+	 * cube with the same keys and the groups recorded when that cube was
+	 * aggregated. Only the measures that are not in the previous cube (or
+	 * that have another aggregator now) are computed.
+	 */
+	public PivotCube update(PivotCube previous, int[] rowGroups, int[] columnGroups) {
+		List<Integer> newMeasures = new ArrayList<>();
+		for (int m = 0; m < measures.size(); m++) {
+			if (previous.getMeasureIndex(measures.get(m)) == -1) {
+				newMeasures.add(m);
+			}
+		}
+
+		PivotCube cube = previous.withMeasures(measures);
+		if (newMeasures.isEmpty()) {
+			return cube;
+		}
+
+		int rowCount = dataSource.getRowCount();
+		int reportedRow = 0;
+		for (int i = 0; i < rowCount; i++) {
+			if (i - reportedRow == PROGRESS_STEP) {
+				progress.advance(PROGRESS_STEP);
+				reportedRow = i;
+			}
+
+			if ((rowGroups[i] == -1) || (columnGroups[i] == -1)) {
+				continue;
+			}
+
+			int cell = cube.getCell(rowGroups[i], columnGroups[i]);
+			for (int m : newMeasures) {
+				add(cube.getState(m, cell), i, m);
+			}
+		}
+		progress.advance(rowCount - reportedRow);
+
+		return cube;
+	}
+
+	private void readKey(int row, int[] fieldIndexes, Object[] keyValues) {
+		for (int f = 0; f < fieldIndexes.length; f++) {
+			keyValues[f] = dataSource.getValueAt(row, fieldIndexes[f]);
+		}
+	}
+
+	private void add(Aggregator state, int row, int measure) {
+		Class<?> primitiveType = primitiveTypes[measure];
+		int fieldIndex = measureIndexes[measure];
+		if (primitiveType == null) {
+			state.add(dataSource.getValueAt(row, fieldIndex));
+			return;
+		}
+
+		PrimitivePivotDataSource primitiveDataSource = (PrimitivePivotDataSource) dataSource;
+		if (primitiveDataSource.isNullAt(row, fieldIndex)) {
+			state.addNull();
+		} else if (primitiveType == double.class) {
+			state.add(primitiveDataSource.getDoubleAt(row, fieldIndex));
+		} else {
+			state.add(primitiveDataSource.getLongAt(row, fieldIndex));
+		}
+	}
+
+	static Map<List<Object>, Integer> getOrdinals(List<List<Object>> keys) {
+		Map<List<Object>, Integer> ordinals = new HashMap<>(keys.size() * 2);
+		for (int i = 0; i < keys.size(); i++) {
+			ordinals.put(keys.get(i), i);
+		}
+
+		return ordinals;
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.engine;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import ro.fortsoft.wicket.pivot.PivotField;
+
+/**
+ * Splits the rows of the data source in chunks, aggregates each chunk in a
+ * partial cube on a {@link ForkJoinPool} and merges the partial cubes. If an
+ * aggregator cannot be merged the rows are aggregated on the current thread.
+ * 
+ * @author Decebal Suiu
+ */
+public class ParallelAggregationEngine {
+
+	/**
+	 * The minimum number of rows aggregated by a task.
+	 */
+	public static final int MIN_CHUNK_SIZE = 10000;
+
+	private HashAggregationEngine engine;
+	private int parallelism;
+
+	public ParallelAggregationEngine(HashAggregationEngine engine, int parallelism) {
+		this.engine = engine;
+		this.parallelism = parallelism;
+	}
+
+	public PivotCube aggregate() {
+		int rowCount = engine.getDataSource().getRowCount();
+		if ((parallelism < 2) || (rowCount <= MIN_CHUNK_SIZE) || !isMergeable()) {
+			return engine.aggregate();
+		}
+
+		int chunkSize = Math.max(MIN_CHUNK_SIZE, rowCount / (parallelism * 4));
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			return pool.invoke(new AggregateTask(0, rowCount, chunkSize));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private boolean isMergeable() {
+		for (PivotField measure : engine.getMeasures()) {
+			if (!measure.getAggregator().isMergeable()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private class AggregateTask extends RecursiveTask<PivotCube> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int fromRow;
+		private final int toRow;
+		private final int chunkSize;
+
+		public AggregateTask(int fromRow, int toRow, int chunkSize) {
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		protected PivotCube compute() {
+			if (toRow - fromRow <= chunkSize) {
+				return engine.aggregate(fromRow, toRow);
+			}
+
+			int middle = (fromRow + toRow) >>> 1;
+			AggregateTask left = new AggregateTask(fromRow, middle, chunkSize);
+			left.fork();
+			PivotCube right = new AggregateTask(middle, toRow, chunkSize).compute();
+
+			return left.join().merge(right);
+		}
+
+	}
+
+}
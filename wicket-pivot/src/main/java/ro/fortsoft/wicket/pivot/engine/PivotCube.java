@@ -0,0 +1,285 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.engine;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ro.fortsoft.wicket.pivot.Aggregator;
+import ro.fortsoft.wicket.pivot.PivotField;
+
+/**
+ * The aggregated (not yet summarized) state of a pivot. Only the cells that
+ * received at least one row of the data source are stored. Each cell keeps an
+ * aggregator for each measure. The cells are indexed by an open addressing
+ * hash table with primitive keys, so a lookup doesn't allocate.
+ * 
+ * @author Decebal Suiu
+ */
+public class PivotCube implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	// estimated sizes (in bytes) of an empty key, of a cell (hash table slots
+	// and ordinals) and of an aggregator state
+	private static final long KEY_SIZE = 40;
+	private static final long CELL_SIZE = 40;
+	private static final long STATE_SIZE = 40;
+
+	private static final int INITIAL_CAPACITY = 16;
+	private static final long EMPTY_SLOT = -1;
+
+	private int[] rowFieldIndexes;
+	private int[] columnFieldIndexes;
+	private List<List<Object>> rowKeys;
+	private List<List<Object>> columnKeys;
+	private List<PivotField> measures;
+	private List<Aggregator> aggregators; // the aggregators of the measures at creation time
+
+	private long[] slotKeys; // the cell key of each slot or EMPTY_SLOT
+	private int[] slotCells; // the cell of each used slot
+	private int cellCount;
+	private int[] cellRows;
+	private int[] cellColumns;
+	private Aggregator[][] states; // for each measure, the aggregators indexed by cell
+
+	public PivotCube(int[] rowFieldIndexes, int[] columnFieldIndexes, List<List<Object>> rowKeys,
+			List<List<Object>> columnKeys, List<PivotField> measures) {
+		this.rowFieldIndexes = rowFieldIndexes;
+		this.columnFieldIndexes = columnFieldIndexes;
+		this.rowKeys = rowKeys;
+		this.columnKeys = columnKeys;
+		this.measures = measures;
+
+		aggregators = new ArrayList<>(measures.size());
+		states = new Aggregator[measures.size()][INITIAL_CAPACITY];
+		for (PivotField measure : measures) {
+			aggregators.add(measure.getAggregator().newInstance());
+		}
+		slotKeys = new long[INITIAL_CAPACITY * 2];
+		Arrays.fill(slotKeys, EMPTY_SLOT);
+		slotCells = new int[INITIAL_CAPACITY * 2];
+		cellRows = new int[INITIAL_CAPACITY];
+		cellColumns = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Gets the indexes of the fields in the row keys.
+	 */
+	public int[] getRowFieldIndexes() {
+		return rowFieldIndexes;
+	}
+
+	/**
+	 * Gets the indexes of the fields in the column keys.
+	 */
+	public int[] getColumnFieldIndexes() {
+		return columnFieldIndexes;
+	}
+
+	public List<List<Object>> getRowKeys() {
+		return rowKeys;
+	}
+
+	public List<List<Object>> getColumnKeys() {
+		return columnKeys;
+	}
+
+	public List<PivotField> getMeasures() {
+		return measures;
+	}
+
+	/**
+	 * Returns the index of the measure or -1 if the field is not aggregated in
+	 * this cube with its current aggregator.
+	 */
+	public int getMeasureIndex(PivotField field) {
+		for (int i = 0; i < measures.size(); i++) {
+			if ((measures.get(i).getIndex() == field.getIndex()) && aggregators.get(i).equals(field.getAggregator())) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns true if all the fields are aggregated in this cube with their
+	 * current aggregators.
+	 */
+	public boolean hasMeasures(List<PivotField> fields) {
+		for (PivotField field : fields) {
+			if (getMeasureIndex(field) == -1) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Creates a cube with the same cells and other measures. The states of the
+	 * measures already aggregated in this cube are shared, the other measures
+	 * get empty states that must be aggregated. The returned cube shares the
+	 * cells of this cube, so no cell may be created in it.
+	 */
+	public PivotCube withMeasures(List<PivotField> measures) {
+		PivotCube cube = new PivotCube(rowFieldIndexes, columnFieldIndexes, rowKeys, columnKeys, measures);
+		cube.slotKeys = slotKeys;
+		cube.slotCells = slotCells;
+		cube.cellCount = cellCount;
+		cube.cellRows = cellRows;
+		cube.cellColumns = cellColumns;
+		for (int i = 0; i < measures.size(); i++) {
+			int index = getMeasureIndex(measures.get(i));
+			if (index != -1) {
+				cube.states[i] = states[index];
+			} else {
+				Aggregator[] measureStates = new Aggregator[cellRows.length];
+				for (int cell = 0; cell < cellCount; cell++) {
+					measureStates[cell] = cube.aggregators.get(i).newInstance();
+				}
+				cube.states[i] = measureStates;
+			}
+		}
+
+		return cube;
+	}
+
+	public int getCellCount() {
+		return cellCount;
+	}
+
+	/**
+	 * Returns the cell for a (row ordinal, column ordinal) pair or -1 if the cell is empty.
+	 */
+	public int getCell(int rowOrdinal, int columnOrdinal) {
+		long key = getCellKey(rowOrdinal, columnOrdinal);
+		int slot = getSlot(key);
+
+		return (slotKeys[slot] == key) ? slotCells[slot] : -1;
+	}
+
+	/**
+	 * Returns the cell for a (row ordinal, column ordinal) pair, creating it if it's empty.
+	 */
+	public int getOrCreateCell(int rowOrdinal, int columnOrdinal) {
+		long key = getCellKey(rowOrdinal, columnOrdinal);
+		int slot = getSlot(key);
+		if (slotKeys[slot] == key) {
+			return slotCells[slot];
+		}
+
+		if (cellCount == cellRows.length) {
+			grow();
+			slot = getSlot(key);
+		}
+
+		int cell = cellCount++;
+		slotKeys[slot] = key;
+		slotCells[slot] = cell;
+		cellRows[cell] = rowOrdinal;
+		cellColumns[cell] = columnOrdinal;
+		for (int i = 0; i < states.length; i++) {
+			states[i][cell] = aggregators.get(i).newInstance();
+		}
+
+		return cell;
+	}
+
+	public int getCellRow(int cell) {
+		return cellRows[cell];
+	}
+
+	public int getCellColumn(int cell) {
+		return cellColumns[cell];
+	}
+
+	public Aggregator getState(int measureIndex, int cell) {
+		return states[measureIndex][cell];
+	}
+
+	/**
+	 * Returns an estimate (in bytes) of the memory used by the cells and the
+	 * keys of this cube. The values of the keys are shared with the data
+	 * source and are not counted.
+	 */
+	public long getMemorySize() {
+		long keysSize = rowKeys.size() * (KEY_SIZE + rowFieldIndexes.length * 4L)
+				+ columnKeys.size() * (KEY_SIZE + columnFieldIndexes.length * 4L);
+		long cellsSize = getCellCount() * (CELL_SIZE + measures.size() * STATE_SIZE);
+
+		return keysSize + cellsSize;
+	}
+
+	/**
+	 * Merges the cells of another cube (with the same keys and measures) into this cube.
+	 */
+	public PivotCube merge(PivotCube other) {
+		for (int otherCell = 0; otherCell < other.getCellCount(); otherCell++) {
+			int cell = getOrCreateCell(other.getCellRow(otherCell), other.getCellColumn(otherCell));
+			for (int i = 0; i < measures.size(); i++) {
+				getState(i, cell).merge(other.getState(i, otherCell));
+			}
+		}
+
+		return this;
+	}
+
+	private long getCellKey(int rowOrdinal, int columnOrdinal) {
+		return (long) rowOrdinal * columnKeys.size() + columnOrdinal;
+	}
+
+	/**
+	 * Returns the slot of a key or the empty slot where it would be inserted
+	 * (linear probing).
+	 */
+	private int getSlot(long key) {
+		int mask = slotKeys.length - 1;
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+		while ((slotKeys[slot] != EMPTY_SLOT) && (slotKeys[slot] != key)) {
+			slot = (slot + 1) & mask;
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Doubles the capacity of the cells and rehashes the keys. The hash table
+	 * is kept at most half full.
+	 */
+	private void grow() {
+		int capacity = cellRows.length * 2;
+		cellRows = Arrays.copyOf(cellRows, capacity);
+		cellColumns = Arrays.copyOf(cellColumns, capacity);
+		for (int i = 0; i < states.length; i++) {
+			states[i] = Arrays.copyOf(states[i], capacity);
+		}
+
+		long[] oldKeys = slotKeys;
+		int[] oldCells = slotCells;
+		slotKeys = new long[capacity * 2];
+		Arrays.fill(slotKeys, EMPTY_SLOT);
+		slotCells = new int[capacity * 2];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY_SLOT) {
+				int slot = getSlot(oldKeys[i]);
+				slotKeys[slot] = oldKeys[i];
+				slotCells[slot] = oldCells[i];
+			}
+		}
+	}
+
+}
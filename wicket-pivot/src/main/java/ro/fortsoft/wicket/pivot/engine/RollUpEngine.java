@@ -0,0 +1,210 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.engine;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ro.fortsoft.wicket.pivot.PivotField;
+import ro.fortsoft.wicket.pivot.PivotUtils;
+import ro.fortsoft.wicket.pivot.tree.Node;
+import ro.fortsoft.wicket.pivot.tree.TreeHelper;
+
+/**
+ * Derives a coarser cube from a finer one, without scanning the data source.
+ * It's used when the new row and column fields are a subset (in any order and
+ * area) of the fields of a cube already calculated. The cells of the finer cube
+ * are projected on the new keys and their aggregator states are merged.
+ * <p>
+ * The cells of a cube are stored in the order of their first data row, so the
+ * unsorted fields keep the same order as in a scan of the data source.
+ *
+ * @author Decebal Suiu
+ */
+public class RollUpEngine {
+
+	private PivotCube source;
+	private int[] rowFieldIndexes;
+	private int[] columnFieldIndexes;
+
+	private Node rowsRoot;
+	private Node columnsRoot;
+	private List<List<Object>> rowKeys;
+	private List<List<Object>> columnKeys;
+	private int[] cellRows; // for each cell of the source, the new row ordinal
+	private int[] cellColumns; // for each cell of the source, the new column ordinal
+
+	public RollUpEngine(PivotCube source, List<PivotField> rowFields, List<PivotField> columnFields) {
+		this.source = source;
+		rowFieldIndexes = PivotUtils.getFieldIndexes(rowFields);
+		columnFieldIndexes = PivotUtils.getFieldIndexes(columnFields);
+		if (!canRollUp(source, rowFieldIndexes, columnFieldIndexes)) {
+			throw new IllegalArgumentException("The fields are not a subset of the cube fields");
+		}
+
+		// project the keys of the source cells
+		int cellCount = source.getCellCount();
+		List<List<Object>> cellRowKeys = new ArrayList<>(cellCount);
+		List<List<Object>> cellColumnKeys = new ArrayList<>(cellCount);
+		Set<List<Object>> distinctRowKeys = new LinkedHashSet<>();
+		Set<List<Object>> distinctColumnKeys = new LinkedHashSet<>();
+		for (int cell = 0; cell < cellCount; cell++) {
+			List<Object> rowKey = project(cell, rowFieldIndexes);
+			List<Object> columnKey = project(cell, columnFieldIndexes);
+			cellRowKeys.add(rowKey);
+			cellColumnKeys.add(columnKey);
+			distinctRowKeys.add(rowKey);
+			distinctColumnKeys.add(columnKey);
+		}
+
+		rowsRoot = TreeHelper.createTree(distinctRowKeys, getComparators(rowFields));
+		columnsRoot = TreeHelper.createTree(distinctColumnKeys, getComparators(columnFields));
+		rowKeys = TreeHelper.getLeafValues(rowsRoot);
+		columnKeys = TreeHelper.getLeafValues(columnsRoot);
+
+		Map<List<Object>, Integer> rowOrdinals = HashAggregationEngine.getOrdinals(rowKeys);
+		Map<List<Object>, Integer> columnOrdinals = HashAggregationEngine.getOrdinals(columnKeys);
+		cellRows = new int[cellCount];
+		cellColumns = new int[cellCount];
+		for (int cell = 0; cell < cellCount; cell++) {
+			cellRows[cell] = rowOrdinals.get(cellRowKeys.get(cell));
+			cellColumns[cell] = columnOrdinals.get(cellColumnKeys.get(cell));
+		}
+	}
+
+	/**
+	 * Returns true if all the fields are row or column fields of the cube.
+	 */
+	public static boolean canRollUp(PivotCube cube, List<PivotField> rowFields, List<PivotField> columnFields) {
+		return canRollUp(cube, PivotUtils.getFieldIndexes(rowFields), PivotUtils.getFieldIndexes(columnFields));
+	}
+
+	public Node getRowsRoot() {
+		return rowsRoot;
+	}
+
+	public Node getColumnsRoot() {
+		return columnsRoot;
+	}
+
+	public List<List<Object>> getRowKeys() {
+		return rowKeys;
+	}
+
+	public List<List<Object>> getColumnKeys() {
+		return columnKeys;
+	}
+
+	/**
+	 * Creates the coarser cube. Only the measures of the source cube with a
+	 * mergeable aggregator are rolled up, the other measures must be
+	 * aggregated from the data source (see {@link HashAggregationEngine#update}).
+	 */
+	public PivotCube rollUp(List<PivotField> measures) {
+		List<PivotField> rolledMeasures = new ArrayList<>();
+		List<Integer> sourceMeasures = new ArrayList<>();
+		for (PivotField measure : measures) {
+			int index = source.getMeasureIndex(measure);
+			if ((index != -1) && measure.getAggregator().isMergeable()) {
+				rolledMeasures.add(measure);
+				sourceMeasures.add(index);
+			}
+		}
+
+		PivotCube cube = new PivotCube(rowFieldIndexes, columnFieldIndexes, rowKeys, columnKeys, rolledMeasures);
+		for (int sourceCell = 0; sourceCell < source.getCellCount(); sourceCell++) {
+			int cell = cube.getOrCreateCell(cellRows[sourceCell], cellColumns[sourceCell]);
+			for (int m = 0; m < sourceMeasures.size(); m++) {
+				cube.getState(m, cell).merge(source.getState(sourceMeasures.get(m), sourceCell));
+			}
+		}
+
+		return cube;
+	}
+
+	/**
+	 * Translates (in place) the groups recorded for the source cube in groups
+	 * for the coarser cube.
+	 */
+	public void rollUpGroups(int[] rowGroups, int[] columnGroups) {
+		for (int i = 0; i < rowGroups.length; i++) {
+			if ((rowGroups[i] == -1) || (columnGroups[i] == -1)) {
+				continue;
+			}
+
+			int sourceCell = source.getCell(rowGroups[i], columnGroups[i]);
+			rowGroups[i] = cellRows[sourceCell];
+			columnGroups[i] = cellColumns[sourceCell];
+		}
+	}
+
+	private List<Object> project(int cell, int[] fieldIndexes) {
+		List<Object> rowKey = source.getRowKeys().get(source.getCellRow(cell));
+		List<Object> columnKey = source.getColumnKeys().get(source.getCellColumn(cell));
+		List<Object> key = new ArrayList<>(fieldIndexes.length);
+		for (int fieldIndex : fieldIndexes) {
+			int position = indexOf(source.getRowFieldIndexes(), fieldIndex);
+			if (position != -1) {
+				key.add(rowKey.get(position));
+			} else {
+				key.add(columnKey.get(indexOf(source.getColumnFieldIndexes(), fieldIndex)));
+			}
+		}
+
+		return key;
+	}
+
+	private static boolean canRollUp(PivotCube cube, int[] rowFieldIndexes, int[] columnFieldIndexes) {
+		for (int fieldIndex : rowFieldIndexes) {
+			if (!isCubeField(cube, fieldIndex)) {
+				return false;
+			}
+		}
+		for (int fieldIndex : columnFieldIndexes) {
+			if (!isCubeField(cube, fieldIndex)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean isCubeField(PivotCube cube, int fieldIndex) {
+		return (indexOf(cube.getRowFieldIndexes(), fieldIndex) != -1)
+				|| (indexOf(cube.getColumnFieldIndexes(), fieldIndex) != -1);
+	}
+
+	private static int indexOf(int[] array, int value) {
+		for (int i = 0; i < array.length; i++) {
+			if (array[i] == value) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private static List<Comparator<Object>> getComparators(List<PivotField> fields) {
+		List<Comparator<Object>> comparators = new ArrayList<>(fields.size());
+		for (PivotField field : fields) {
+			comparators.add(PivotUtils.getComparator(field));
+		}
+
+		return comparators;
+	}
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ro.fortsoft.wicket.pivot.CalculationProgress;
+import ro.fortsoft.wicket.pivot.PivotField;
+import ro.fortsoft.wicket.pivot.PivotRowSource;
+import ro.fortsoft.wicket.pivot.PivotUtils;
+
+/**
+ * Aggregates the rows of a {@link PivotRowSource} in a single sequential pass.
+ * Each row is folded in the cell of its key (the values of the fields) and
+ * discarded, so the memory is proportional to the number of cells and not to
+ * the number of rows. All the fields are row fields of the cube, the cube is
+ * rolled up to the ROW and COLUMN fields of the pivot (see {@link RollUpEngine}).
+ *
+ * @author Decebal Suiu
+ */
+public class StreamAggregationEngine {
+
+	private PivotRowSource rowSource;
+	private int[] fieldIndexes;
+	private List<PivotField> measures;
+	private CalculationProgress progress = new CalculationProgress();
+	private long rowCount;
+
+	public StreamAggregationEngine(PivotRowSource rowSource, List<PivotField> fields, List<PivotField> measures) {
+		this.rowSource = rowSource;
+		this.measures = measures;
+
+		fieldIndexes = PivotUtils.getFieldIndexes(fields);
+	}
+
+	/**
+	 * Reports the read rows to a progress, that can also cancel the aggregation.
+	 */
+	public void setProgress(CalculationProgress progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Returns the number of rows read by the last aggregation.
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	public PivotCube aggregate() {
+		final int fieldCount = fieldIndexes.length;
+		int[] measureIndexes = PivotUtils.getFieldIndexes(measures);
+		int[] readIndexes = Arrays.copyOf(fieldIndexes, fieldCount + measureIndexes.length);
+		System.arraycopy(measureIndexes, 0, readIndexes, fieldCount, measureIndexes.length);
+
+		List<Object> noKey = Collections.emptyList();
+		final PivotCube cube = new PivotCube(fieldIndexes, new int[0], new ArrayList<List<Object>>(),
+				Collections.singletonList(noKey), measures);
+		final Map<List<Object>, Integer> ordinals = new HashMap<>();
+		// the key of the current row, copied only for a new cell
+		final Object[] keyValues = new Object[fieldCount];
+		final List<Object> key = Arrays.asList(keyValues);
+		rowCount = 0;
+		rowSource.forEachRow(readIndexes, values -> {
+			System.arraycopy(values, 0, keyValues, 0, fieldCount);
+			Integer ordinal = ordinals.get(key);
+			if (ordinal == null) {
+				ordinal = cube.getRowKeys().size();
+				List<Object> newKey = new ArrayList<>(key);
+				cube.getRowKeys().add(newKey);
+				ordinals.put(newKey, ordinal);
+			}
+
+			int cell = cube.getOrCreateCell(ordinal, 0);
+			for (int m = 0; m < measures.size(); m++) {
+				cube.getState(m, cell).add(values[fieldCount + m]);
+			}
+
+			if (++rowCount % HashAggregationEngine.PROGRESS_STEP == 0) {
+				progress.advance(HashAggregationEngine.PROGRESS_STEP);
+			}
+		});
+		progress.advance(rowCount % HashAggregationEngine.PROGRESS_STEP);
+
+		return cube;
+	}
+
+}
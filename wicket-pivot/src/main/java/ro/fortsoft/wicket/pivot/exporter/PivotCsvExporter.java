@@ -12,20 +12,23 @@
  */
 package ro.fortsoft.wicket.pivot.exporter;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
+import ro.fortsoft.wicket.pivot.PivotField;
 import ro.fortsoft.wicket.pivot.PivotModel;
-import ro.fortsoft.wicket.pivot.PivotTableRenderModel;
-import ro.fortsoft.wicket.pivot.PivotTableRenderModel.RenderCell;
-import ro.fortsoft.wicket.pivot.PivotTableRenderModel.RenderRow;
+import ro.fortsoft.wicket.pivot.PivotTableVisitor;
+import ro.fortsoft.wicket.pivot.PivotTableWalker;
 
 /**
- * Basic CSV exporter
+ * Basic CSV exporter. The cells are written as they are visited (see
+ * {@link PivotTableWalker}), so the memory doesn't depend on the number of cells.
+ * Each cell is followed by the separator and the values that contain the
+ * separator, a quote or a line break are quoted.
  */
 public class PivotCsvExporter implements PivotExporter {	
 	private static final long serialVersionUID = 1L;
@@ -33,52 +36,46 @@ public class PivotCsvExporter implements PivotExporter {
 
 	@Override	
 	public void exportPivot(PivotModel pivotModel, OutputStream outputStream) throws IOException {
-		PivotTableRenderModel renderModel = PivotTableRenderModel.create(pivotModel);
+		final Writer out = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+		PivotTableWalker.walk(pivotModel, new PivotTableVisitor() {
 
-		OutputStreamWriter out = new OutputStreamWriter(outputStream, Charset.forName("UTF-8"));
-		Map<Integer, Integer> rowSpanMap = new HashMap<>();
+			private int col;
 
-		for (RenderRow row : renderModel.getAllRenderRows()) {
-			int col = 0;
-			for (RenderCell cell : row.getRenderCells()) {
+			@Override
+			public void startRow(RowType rowType) {
+				col = 0;
+			}
+
+			@Override
+			public void visitCell(CellType cellType, int column, Object value, PivotField field, int colspan,
+					int rowspan) throws IOException {
 				/*
-				 * Check if we currently have a rowspan at this column from the
-				 * parent row. We only support a colspan of 1 at the moment
-				 * here, if rowspan > 1
+				 * Leave empty the columns covered by a rowspan from a parent row
 				 */
-				Integer rowSpan = rowSpanMap.get(col);
-				if (rowSpan != null) {
-					rowSpan--;
-					if (rowSpan == 0)
-						rowSpanMap.remove(col);
-					else
-						rowSpanMap.put(col, rowSpan);
-					col++;
-					out.append(seperator);
+				for (; col < column; col++) {
+					out.write(seperator);
 				}
 
 				/*
 				 * Output the Value
 				 */
-				Object rawValue = cell.getRawValue();
-				if (rawValue != null)
-					out.append(String.valueOf(rawValue));
-				out.append(seperator);
-				if (cell.getRowspan() > 1)
-					rowSpanMap.put(col, cell.getRowspan() - 1);
+				if (value != null)
+					writeValue(out, String.valueOf(value));
+				out.write(seperator);
 				col++;
 
-				/*
-				 * We only support colspan _OR_ rowspan. The current PivotTable
-				 * also doesnt have rowspan and colspan at the same time.
-				 */
-				for (int i = 1; i < cell.getColspan(); i++) {
-					out.append(seperator);
+				for (int i = 1; i < colspan; i++) {
+					out.write(seperator);
 					col++;
 				}
 			}
-			out.append("\n");
-		}
+
+			@Override
+			public void endRow() throws IOException {
+				out.write('\n');
+			}
+
+		});
 		out.flush();
 	}
 
@@ -100,4 +97,16 @@ public class PivotCsvExporter implements PivotExporter {
 	public String getFilenameExtension() {
 		return ".csv";
 	}
+
+	private void writeValue(Writer out, String value) throws IOException {
+		if (!value.contains(seperator) && (value.indexOf('"') == -1) && (value.indexOf('\n') == -1)
+				&& (value.indexOf('\r') == -1)) {
+			out.write(value);
+			return;
+		}
+
+		out.write('"');
+		out.write(value.replace("\"", "\"\""));
+		out.write('"');
+	}
 }
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A calculation of a pivot model (see {@link ro.fortsoft.wicket.pivot.PivotModel#calculate()}).
+ * The rows are the data source rows.
+ *
+ * @author Decebal Suiu
+ */
+@Name("ro.fortsoft.wicket.pivot.Calculation")
+@Label("Pivot Calculation")
+@Description("A calculation of a pivot model")
+class CalculationEvent extends PivotEvent {
+
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The export of a pivot. The rows are the row keys.
+ *
+ * @author Decebal Suiu
+ */
+@Name("ro.fortsoft.wicket.pivot.Export")
+@Label("Pivot Export")
+@Description("The export of a pivot")
+class ExportEvent extends PivotEvent {
+
+	@Label("Format")
+	String format;
+
+}
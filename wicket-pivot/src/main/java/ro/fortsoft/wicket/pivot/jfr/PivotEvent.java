@@ -0,0 +1,63 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * The fields of all pivot flight recorder events: the fields layout (with the
+ * aggregators of the data fields), the calculation mode and the counts. Use
+ * {@link PivotFlightRecorder} to record the events, the event classes can be
+ * loaded only if the JVM has the jdk.jfr API.
+ *
+ * @author Decebal Suiu
+ */
+@Category("Wicket Pivot")
+@StackTrace(false)
+public abstract class PivotEvent extends Event {
+
+	@Label("Row Fields")
+	String rowFields;
+
+	@Label("Column Fields")
+	String columnFields;
+
+	@Label("Data Fields")
+	@Description("The data fields with their aggregators or field calculations")
+	String dataFields;
+
+	@Label("Calculation Mode")
+	String calculationMode;
+
+	@Label("Data Source Rows")
+	@Description("The rows of the data source or -1 if a row source doesn't know its rows without reading them")
+	long dataSourceRowCount;
+
+	@Label("Rows")
+	@Description("The processed rows (data source rows, rendered rows or exported rows)")
+	long rowCount;
+
+	@Label("Row Keys")
+	int rowKeyCount;
+
+	@Label("Column Keys")
+	int columnKeyCount;
+
+	@Label("Cells")
+	long cellCount;
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.jfr;
+
+import java.util.List;
+
+import ro.fortsoft.wicket.pivot.FieldCalculation;
+import ro.fortsoft.wicket.pivot.PivotField;
+import ro.fortsoft.wicket.pivot.PivotModel;
+import ro.fortsoft.wicket.pivot.PivotUtils;
+import ro.fortsoft.wicket.pivot.jfr.PivotFlightRecorder.EventType;
+
+/**
+ * Creates and fills the {@link PivotEvent}s. It's called by {@link PivotFlightRecorder}
+ * only if the JVM has the jdk.jfr API. The event classes contain only the
+ * recorded fields, as required by the flight recorder instrumentation.
+ *
+ * @author Decebal Suiu
+ */
+class PivotEvents {
+
+	private PivotEvents() {
+	}
+
+	static Object begin(EventType type, String format) {
+		PivotEvent event;
+		switch (type) {
+			case CALCULATION:
+				event = new CalculationEvent();
+				break;
+			case RENDER_MODEL:
+				event = new RenderModelEvent();
+				break;
+			case PIVOT_TABLE:
+				event = new PivotTableEvent();
+				break;
+			default:
+				ExportEvent exportEvent = new ExportEvent();
+				exportEvent.format = format;
+				event = exportEvent;
+		}
+
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+
+		return event;
+	}
+
+	static boolean shouldCommit(Object event) {
+		PivotEvent pivotEvent = (PivotEvent) event;
+		pivotEvent.end();
+
+		return pivotEvent.shouldCommit();
+	}
+
+	static void commit(Object event, PivotModel pivotModel, long rowCount, int rowKeyCount, int columnKeyCount,
+			long cellCount) {
+		PivotEvent pivotEvent = (PivotEvent) event;
+		pivotEvent.rowFields = getNames(pivotModel.getFields(PivotField.Area.ROW));
+		pivotEvent.columnFields = getNames(pivotModel.getFields(PivotField.Area.COLUMN));
+		pivotEvent.dataFields = getNames(pivotModel.getFields(PivotField.Area.DATA));
+		pivotEvent.calculationMode = String.valueOf(pivotModel.getCalculationMode());
+		// a row source is not counted (with a query) for an event
+		pivotEvent.dataSourceRowCount = PivotUtils.getKnownRowCount(pivotModel.getDataSource());
+		pivotEvent.rowCount = rowCount;
+		pivotEvent.rowKeyCount = rowKeyCount;
+		pivotEvent.columnKeyCount = columnKeyCount;
+		pivotEvent.cellCount = cellCount;
+		pivotEvent.commit();
+	}
+
+	/*
+	 * Returns the field names separated by comma. The data fields are followed
+	 * by their aggregator or field calculation (for example "SALES (sum)").
+	 */
+	private static String getNames(List<PivotField> fields) {
+		StringBuilder names = new StringBuilder();
+		for (PivotField field : fields) {
+			if (names.length() > 0) {
+				names.append(", ");
+			}
+			names.append(field.getName());
+			if (field.getArea() == PivotField.Area.DATA) {
+				FieldCalculation fieldCalculation = field.getFieldCalculation();
+				String function = (fieldCalculation != null) ? fieldCalculation.getFunction()
+						: field.getAggregator().getFunction();
+				names.append(" (").append(function).append(')');
+			}
+		}
+
+		return names.toString();
+	}
+
+}
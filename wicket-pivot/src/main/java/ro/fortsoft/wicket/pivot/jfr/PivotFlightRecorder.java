@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.jfr;
+
+import ro.fortsoft.wicket.pivot.PivotModel;
+
+/**
+ * Records the calculations, the render models, the pivot tables and the
+ * exports as JDK Flight Recorder events (see {@link PivotEvent}). When no
+ * recording is running the cost is an enabled check. On a JVM without the
+ * jdk.jfr API (java 8 before 8u262) the events are ignored, the event classes
+ * are never loaded.
+ *
+ * <pre>
+ * Object event = PivotFlightRecorder.begin(EventType.CALCULATION);
+ * try {
+ * 	...
+ * } finally {
+ * 	if (PivotFlightRecorder.shouldCommit(event)) {
+ * 		PivotFlightRecorder.commit(event, pivotModel, rowCount, rowKeyCount, columnKeyCount, cellCount);
+ * 	}
+ * }
+ * </pre>
+ *
+ * @author Decebal Suiu
+ */
+public class PivotFlightRecorder {
+
+	private static final boolean AVAILABLE = checkAvailable();
+
+	private PivotFlightRecorder() {
+	}
+
+	/**
+	 * Returns true if the JVM has the jdk.jfr API.
+	 */
+	public static boolean isAvailable() {
+		return AVAILABLE;
+	}
+
+	/**
+	 * Starts an event. Returns null if the flight recorder is not available or
+	 * the event is not enabled.
+	 */
+	public static Object begin(EventType type) {
+		return AVAILABLE ? PivotEvents.begin(type, null) : null;
+	}
+
+	/**
+	 * Starts an export event, for an export format (see
+	 * {@link ro.fortsoft.wicket.pivot.exporter.PivotExporter#getFormatName()}).
+	 */
+	public static Object beginExport(String format) {
+		return AVAILABLE ? PivotEvents.begin(EventType.EXPORT, format) : null;
+	}
+
+	/**
+	 * Ends the event and returns true if it must be committed (it lasted longer
+	 * than the threshold of the recording).
+	 */
+	public static boolean shouldCommit(Object event) {
+		return (event != null) && PivotEvents.shouldCommit(event);
+	}
+
+	/**
+	 * Fills the event with the fields layout of the pivot model and the counts
+	 * and writes it to the recording.
+	 */
+	public static void commit(Object event, PivotModel pivotModel, long rowCount, int rowKeyCount, int columnKeyCount,
+			long cellCount) {
+		if (event != null) {
+			PivotEvents.commit(event, pivotModel, rowCount, rowKeyCount, columnKeyCount, cellCount);
+		}
+	}
+
+	private static boolean checkAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	public enum EventType {
+
+		CALCULATION,
+		RENDER_MODEL,
+		PIVOT_TABLE,
+		EXPORT
+
+	}
+
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.tree;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An immutable, array based copy of a tree. The nodes are identified by their
+ * index in pre-order (the root is 0), so the nodes of a subtree are contiguous
+ * and the leafs are numbered (leaf ordinals) in the same order as
+ * {@link TreeHelper#getLeafValues(Node)}. For each node the parent, the first
+ * child, the next sibling, the depth and the range of leaf ordinals are stored
+ * in arrays and the child with a value is found with a hash lookup. The
+ * source nodes are kept (see {@link #getSourceNode(int)}) but not serialized.
+ *
+ * @author Decebal Suiu
+ */
+public class CompactTree implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private Object[] values;
+	private int[] parents;
+	private int[] firstChildren;
+	private int[] nextSiblings;
+	private int[] depths;
+	private int[] firstLeafs;
+	private int[] leafCounts;
+	private int[] leafNodes; // for each leaf ordinal, the node
+	private int[] childTable; // open addressing hash table of (parent, value) -> node + 1
+	private transient Node[] sourceNodes;
+
+	private int nodeCount;
+	private int leafCount;
+
+	public CompactTree(Node root) {
+		int count = count(root);
+		values = new Object[count];
+		parents = new int[count];
+		firstChildren = new int[count];
+		nextSiblings = new int[count];
+		depths = new int[count];
+		firstLeafs = new int[count];
+		leafCounts = new int[count];
+		leafNodes = new int[count];
+		sourceNodes = new Node[count];
+
+		add(root, -1, 0);
+		leafNodes = Arrays.copyOf(leafNodes, leafCount);
+		createChildTable();
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Gets the number of leafs of the tree.
+	 */
+	public int getLeafCount() {
+		return leafCount;
+	}
+
+	public int getRoot() {
+		return 0;
+	}
+
+	/**
+	 * Gets the node of the tree this copy was created from or null if this
+	 * copy was deserialized.
+	 */
+	public Node getSourceNode(int node) {
+		return (sourceNodes != null) ? sourceNodes[node] : null;
+	}
+
+	public Object getValue(int node) {
+		return values[node];
+	}
+
+	/**
+	 * Returns the parent or -1 for the root.
+	 */
+	public int getParent(int node) {
+		return parents[node];
+	}
+
+	/**
+	 * Returns the first child or -1 for a leaf.
+	 */
+	public int getFirstChild(int node) {
+		return firstChildren[node];
+	}
+
+	/**
+	 * Returns the next sibling or -1 for the last child.
+	 */
+	public int getNextSibling(int node) {
+		return nextSiblings[node];
+	}
+
+	/**
+	 * Returns the depth (level) of the node. The depth of the root is 0.
+	 */
+	public int getDepth(int node) {
+		return depths[node];
+	}
+
+	public boolean isLeaf(int node) {
+		return firstChildren[node] == -1;
+	}
+
+	/**
+	 * Returns the ordinal of the first leaf of the node's subtree.
+	 */
+	public int getFirstLeaf(int node) {
+		return firstLeafs[node];
+	}
+
+	/**
+	 * Returns the number of leafs of the node's subtree (1 for a leaf).
+	 */
+	public int getLeafCount(int node) {
+		return leafCounts[node];
+	}
+
+	public int getLeafNode(int leafOrdinal) {
+		return leafNodes[leafOrdinal];
+	}
+
+	/**
+	 * Returns the child with the value or -1 if it doesn't exist.
+	 */
+	public int getChild(int node, Object value) {
+		int mask = childTable.length - 1;
+		for (int i = hash(node, value) & mask; childTable[i] != 0; i = (i + 1) & mask) {
+			int child = childTable[i] - 1;
+			if ((parents[child] == node) && Objects.equals(values[child], value)) {
+				return child;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the node with the path values or -1 if it doesn't exist.
+	 */
+	public int getNode(List<Object> pathValues) {
+		int node = 0;
+		for (Object value : pathValues) {
+			node = getChild(node, value);
+			if (node == -1) {
+				break;
+			}
+		}
+
+		return node;
+	}
+
+	/**
+	 * Gets the nodes with a depth, in pre-order.
+	 */
+	public int[] getNodes(int depth) {
+		int count = 0;
+		for (int node = 0; node < nodeCount; node++) {
+			if (depths[node] == depth) {
+				count++;
+			}
+		}
+
+		int[] nodes = new int[count];
+		count = 0;
+		for (int node = 0; node < nodeCount; node++) {
+			if (depths[node] == depth) {
+				nodes[count++] = node;
+			}
+		}
+
+		return nodes;
+	}
+
+	/**
+	 * Gets the values on the path from the root (excluded) to the node.
+	 */
+	public List<Object> getPathValues(int node) {
+		Object[] pathValues = new Object[depths[node]];
+		for (int i = pathValues.length - 1; i >= 0; i--) {
+			pathValues[i] = values[node];
+			node = parents[node];
+		}
+
+		return Arrays.asList(pathValues);
+	}
+
+	/**
+	 * Gets the path values of all leafs, in the leaf ordinal order.
+	 */
+	public List<List<Object>> getLeafValues() {
+		List<List<Object>> leafValues = new ArrayList<>(leafCount);
+		for (int leafNode : leafNodes) {
+			leafValues.add(getPathValues(leafNode));
+		}
+
+		return leafValues;
+	}
+
+	private int add(Node node, int parent, int depth) {
+		int index = nodeCount++;
+		values[index] = node.getData();
+		sourceNodes[index] = node;
+		parents[index] = parent;
+		depths[index] = depth;
+		firstChildren[index] = -1;
+		nextSiblings[index] = -1;
+		firstLeafs[index] = leafCount;
+		if (node.isLeaf()) {
+			leafNodes[leafCount++] = index;
+		} else {
+			int previous = -1;
+			for (Node child : node.getChildren()) {
+				int childIndex = add(child, index, depth + 1);
+				if (previous == -1) {
+					firstChildren[index] = childIndex;
+				} else {
+					nextSiblings[previous] = childIndex;
+				}
+				previous = childIndex;
+			}
+		}
+		leafCounts[index] = leafCount - firstLeafs[index];
+
+		return index;
+	}
+
+	private void createChildTable() {
+		int capacity = Integer.highestOneBit(Math.max(nodeCount, 1)) * 4;
+		childTable = new int[capacity];
+		int mask = capacity - 1;
+		for (int node = 1; node < nodeCount; node++) {
+			int i = hash(parents[node], values[node]) & mask;
+			while (childTable[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			childTable[i] = node + 1;
+		}
+	}
+
+	private static int hash(int parent, Object value) {
+		int hash = parent * 31 + Objects.hashCode(value);
+		return hash ^ (hash >>> 16);
+	}
+
+	private static int count(Node node) {
+		int count = 1;
+		for (Node child : node.getChildren()) {
+			count += count(child);
+		}
+
+		return count;
+	}
+
+}
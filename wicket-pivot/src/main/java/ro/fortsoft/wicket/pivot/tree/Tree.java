@@ -13,6 +13,7 @@
 package ro.fortsoft.wicket.pivot.tree;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * @author Decebal Suiu
@@ -22,6 +23,7 @@ public class Tree implements Serializable {
 	private static final long serialVersionUID = 1L;
 	
 	private Node root;
+	private transient CompactTree compactTree; // rebuilt after deserialization
 	
     public Tree(Node root) {
     	this.root = root;
@@ -31,4 +33,39 @@ public class Tree implements Serializable {
         return this.root;
     }
 
+    /**
+     * Gets an array based copy of this tree, created on the first call. 
+     * The tree must not be changed after this call.
+     */
+    public CompactTree getCompactTree() {
+    	if (compactTree == null) {
+    		compactTree = new CompactTree(root);
+    	}
+    	
+    	return compactTree;
+    }
+
+    /**
+     * Returns the node with the path values or null if it doesn't exist. The
+     * node is found with hash lookups in the compact tree.
+     */
+    public Node getNode(List<Object> pathValues) {
+    	CompactTree compactTree = getCompactTree();
+    	int node = compactTree.getNode(pathValues);
+
+    	return (node != -1) ? compactTree.getSourceNode(node) : null;
+    }
+
+    /**
+     * Returns the child of a node (of this tree) with the value or null if it
+     * doesn't exist. The child is found with hash lookups in the compact tree.
+     */
+    public Node getChild(Node node, Object value) {
+    	CompactTree compactTree = getCompactTree();
+    	int index = compactTree.getNode(node.getPathValues());
+    	int child = (index != -1) ? compactTree.getChild(index, value) : -1;
+
+    	return (child != -1) ? compactTree.getSourceNode(child) : null;
+    }
+
 }
@@ -13,8 +13,13 @@
 package ro.fortsoft.wicket.pivot.tree;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -36,15 +41,30 @@ public class TreeHelper {
 	}
 	
 	public static List<List<Object>> getLeafValues(Node root) {
-		List<List<Object>> leafValues = new ArrayList<>();
-		List<Node> leafs = getLeafs(root);
-		for (Node leaf : leafs) {
-			leafValues.add(leaf.getPathValues());
-		}
-
-		return leafValues;
+		return new CompactTree(root).getLeafValues();
 	}
 	
+	/**
+	 * Returns the node with the path values or null if it doesn't exist, with
+	 * hash lookups (see {@link Tree#getNode(List)}).
+	 */
+	public static Node getNode(Tree tree, List<Object> pathValues) {
+		return tree.getNode(pathValues);
+	}
+
+	/**
+	 * Returns the child of a node with the value or null if it doesn't exist,
+	 * with hash lookups (see {@link Tree#getChild(Node, Object)}).
+	 */
+	public static Node getChild(Tree tree, Node node, Object value) {
+		return tree.getChild(node, value);
+	}
+
+	/**
+	 * @deprecated The children are scanned for each value, use
+	 *             {@link #getNode(Tree, List)}.
+	 */
+	@Deprecated
 	public static Node getNode(Node root, List<Object> pathValues) {
 		Node node = root;
 		for (Object value : pathValues) {
@@ -54,6 +74,11 @@ public class TreeHelper {
 		return node;
 	}
 	
+	/**
+	 * @deprecated The children are scanned, use
+	 *             {@link #getChild(Tree, Node, Object)}.
+	 */
+	@Deprecated
 	public static Node getChild(Node node, Object value) {
 		for (Node child : node.getChildren()) {
 			Object data = child.getData();
@@ -65,6 +90,50 @@ public class TreeHelper {
 		return null;
 	}
 
+
+	/**
+	 * Creates a tree from the paths of its leafs. The children of a node are
+	 * inserted in the order of the first path that contains them and then
+	 * sorted with the comparator for their level (if it's not null).
+	 */
+	public static Node createTree(Collection<List<Object>> paths, List<Comparator<Object>> comparators) {
+		Node root = new Node();
+		Map<Node, Map<Object, Node>> childrenCache = new IdentityHashMap<>();
+		for (List<Object> path : paths) {
+			Node node = root;
+			for (Object value : path) {
+				Map<Object, Node> children = childrenCache.get(node);
+				if (children == null) {
+					children = new HashMap<>();
+					childrenCache.put(node, children);
+				}
+				Node child = children.get(value);
+				if (child == null) {
+					child = new Node(value);
+					node.addChild(child);
+					children.put(value, child);
+				}
+				node = child;
+			}
+		}
+		sortChildren(root, comparators, 0);
+
+		return root;
+	}
+
+	private static void sortChildren(Node node, List<Comparator<Object>> comparators, int level) {
+		if (node.isLeaf()) {
+			return;
+		}
+
+		final Comparator<Object> comparator = comparators.get(level);
+		if (comparator != null) {
+			node.getChildren().sort((n1, n2) -> comparator.compare(n1.getData(), n2.getData()));
+		}
+		for (Node child : node.getChildren()) {
+			sortChildren(child, comparators, level + 1);
+		}
+	}
 	
 	public static void printTree(Node root) {
 		Iterator<Node> it = new TreeIterator(root);
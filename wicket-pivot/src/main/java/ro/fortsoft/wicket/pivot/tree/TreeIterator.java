@@ -12,24 +12,31 @@
  */
 package ro.fortsoft.wicket.pivot.tree;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
+ * Iterates the nodes of a tree in pre-order. The nodes are visited lazily,
+ * only the pending siblings are kept.
+ * 
  * @author Decebal Suiu
  */
 public class TreeIterator implements Iterator<Node> {
 
-    private Iterator<Node> iterator;
+    private Deque<Node> stack;
 
     public TreeIterator(Node root) {
-        this.iterator = getList(root).iterator();
+        stack = new ArrayDeque<>();
+        stack.push(root);
     }
 
     @Override
     public boolean hasNext() {
-        return iterator.hasNext();
+        return !stack.isEmpty();
     }
 
     @Override
@@ -39,7 +46,17 @@ public class TreeIterator implements Iterator<Node> {
 
     @Override
 	public Node next() {
-		return iterator.next();
+    	if (stack.isEmpty()) {
+    		throw new NoSuchElementException();
+    	}
+    	
+		Node node = stack.pop();
+		List<Node> children = node.getChildren();
+		for (int i = children.size() - 1; i >= 0; i--) {
+			stack.push(children.get(i));
+		}
+		
+		return node;
 	}
 
     public Iterator<Object> getValuesIterator() {
@@ -51,14 +68,4 @@ public class TreeIterator implements Iterator<Node> {
         return values.iterator();
     }
 
-    private List<Node> getList(Node node) {
-        List<Node> nodes = new ArrayList<>();
-        nodes.add(node);
-        for (Node value : node.getChildren()) {
-            nodes.addAll(getList(value));
-        }
-
-        return nodes;
-    }
-
 }
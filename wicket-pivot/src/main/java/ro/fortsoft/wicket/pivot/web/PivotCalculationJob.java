@@ -0,0 +1,276 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.web;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.wicket.WicketRuntimeException;
+import org.apache.wicket.util.io.IOUtils;
+
+import ro.fortsoft.wicket.pivot.AggregateLattice;
+import ro.fortsoft.wicket.pivot.BitmapIndex;
+import ro.fortsoft.wicket.pivot.CalculationProgress;
+import ro.fortsoft.wicket.pivot.DefaultPivotModel;
+import ro.fortsoft.wicket.pivot.PivotDataSource;
+import ro.fortsoft.wicket.pivot.PivotModel;
+import ro.fortsoft.wicket.pivot.PivotPhaseListener;
+import ro.fortsoft.wicket.pivot.PivotTotals;
+import ro.fortsoft.wicket.pivot.engine.CellStore;
+
+/**
+ * A pivot calculation that runs in background (see {@link PivotSettings#getCalculationExecutor()}).
+ * The jobs are kept in a registry, by id, because the pages that poll them are
+ * serialized between requests. A finished job is removed when its result is
+ * taken or when it's not taken in {@link #EXPIRATION_TIME} milliseconds.
+ *
+ * @author Decebal Suiu
+ */
+public class PivotCalculationJob implements Runnable {
+
+	/**
+	 * The time (in milliseconds) a finished job is kept in the registry.
+	 */
+	public static final long EXPIRATION_TIME = TimeUnit.MINUTES.toMillis(10);
+
+	private static final Map<String, PivotCalculationJob> jobs = new ConcurrentHashMap<>();
+
+	private final String id;
+	private final PivotModel pivotModel;
+	private final CalculationProgress progress;
+	private volatile Future<?> future;
+	private volatile boolean done;
+	private volatile RuntimeException failure;
+	private volatile long doneTime;
+
+	private PivotCalculationJob(PivotModel pivotModel) {
+		this.pivotModel = pivotModel;
+
+		id = UUID.randomUUID().toString();
+		progress = new CalculationProgress();
+	}
+
+	/**
+	 * Submits the calculation of a pivot model. The model must not be used by
+	 * other threads until the job is done.
+	 */
+	public static PivotCalculationJob submit(PivotModel pivotModel, ExecutorService executor) {
+		removeExpiredJobs();
+
+		PivotCalculationJob job = new PivotCalculationJob(pivotModel);
+		jobs.put(job.getId(), job);
+		job.future = executor.submit(job);
+
+		return job;
+	}
+
+	/**
+	 * Retrieves a job by id or null if the job doesn't exist (anymore).
+	 */
+	public static PivotCalculationJob get(String id) {
+		return (id != null) ? jobs.get(id) : null;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public PivotModel getPivotModel() {
+		return pivotModel;
+	}
+
+	public CalculationProgress getProgress() {
+		return progress;
+	}
+
+	public boolean isDone() {
+		return done;
+	}
+
+	/**
+	 * Returns the exception thrown by the calculation or null.
+	 */
+	public RuntimeException getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Cancels the calculation and removes the job. A job that hasn't started
+	 * yet is not started anymore, a running job stops at the next progress check.
+	 */
+	public void cancel() {
+		progress.cancel();
+		if (future != null) {
+			future.cancel(false);
+		}
+		jobs.remove(id);
+	}
+
+	/**
+	 * Removes the job (after its result was taken).
+	 */
+	public void remove() {
+		jobs.remove(id);
+	}
+
+	@Override
+	public void run() {
+		try {
+			pivotModel.calculate(progress);
+		} catch (CancellationException e) {
+			// cancelled
+		} catch (RuntimeException e) {
+			failure = e;
+		} finally {
+			doneTime = System.currentTimeMillis();
+			done = true;
+		}
+	}
+
+	/**
+	 * Copies the configuration of a pivot model (fields, aggregators, field
+	 * calculations, options) for a background calculation. The data source,
+	 * the phase listeners and the calculated values are shared with the copy,
+	 * not copied. The state of the last calculation of a {@link DefaultPivotModel}
+	 * is shared too (see {@link DefaultPivotModel#shareCalculation(DefaultPivotModel)}),
+	 * so the copy is rolled up or updated like the pivot model would be.
+	 */
+	public static PivotModel copy(PivotModel pivotModel) {
+		List<Object> sharedObjects = new ArrayList<>();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			ObjectOutputStream output = new SharingObjectOutputStream(bytes, pivotModel, sharedObjects);
+			output.writeObject(pivotModel);
+			output.close();
+
+			ObjectInputStream input = new SharingObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()),
+					sharedObjects);
+			try {
+				PivotModel copy = (PivotModel) input.readObject();
+				if ((pivotModel instanceof DefaultPivotModel) && (copy instanceof DefaultPivotModel)) {
+					((DefaultPivotModel) pivotModel).shareCalculation((DefaultPivotModel) copy);
+				}
+
+				return copy;
+			} finally {
+				IOUtils.closeQuietly(input);
+			}
+		} catch (IOException | ClassNotFoundException e) {
+			throw new WicketRuntimeException("Cannot copy the pivot model", e);
+		}
+	}
+
+	private static void removeExpiredJobs() {
+		long now = System.currentTimeMillis();
+		Iterator<PivotCalculationJob> it = jobs.values().iterator();
+		while (it.hasNext()) {
+			PivotCalculationJob job = it.next();
+			if (job.isDone() && (now - job.doneTime > EXPIRATION_TIME)) {
+				it.remove();
+			}
+		}
+	}
+
+	/*
+	 * Writes a reference (the index in a list) instead of the objects shared
+	 * with the copy.
+	 */
+	private static class SharingObjectOutputStream extends ObjectOutputStream {
+
+		private final Object root;
+		private final List<Object> sharedObjects;
+
+		public SharingObjectOutputStream(OutputStream out, Object root, List<Object> sharedObjects)
+				throws IOException {
+			super(out);
+
+			this.root = root;
+			this.sharedObjects = sharedObjects;
+			enableReplaceObject(true);
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) throws IOException {
+			if ((obj != root) && ((obj instanceof PivotDataSource) || (obj instanceof AggregateLattice)
+					|| (obj instanceof BitmapIndex) || (obj instanceof PivotPhaseListener)
+					|| (obj instanceof CellStore) || (obj instanceof PivotTotals))) {
+				sharedObjects.add(obj);
+				return new SharedReference(sharedObjects.size() - 1);
+			}
+
+			return obj;
+		}
+
+	}
+
+	private static class SharingObjectInputStream extends ObjectInputStream {
+
+		private final List<Object> sharedObjects;
+
+		public SharingObjectInputStream(InputStream in, List<Object> sharedObjects) throws IOException {
+			super(in);
+
+			this.sharedObjects = sharedObjects;
+			enableResolveObject(true);
+		}
+
+		@Override
+		protected Object resolveObject(Object obj) throws IOException {
+			if (obj instanceof SharedReference) {
+				return sharedObjects.get(((SharedReference) obj).index);
+			}
+
+			return obj;
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			try {
+				return Class.forName(desc.getName(), false, Thread.currentThread().getContextClassLoader());
+			} catch (ClassNotFoundException e) {
+				return super.resolveClass(desc);
+			}
+		}
+
+	}
+
+	private static class SharedReference implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int index;
+
+		public SharedReference(int index) {
+			this.index = index;
+		}
+
+	}
+
+}
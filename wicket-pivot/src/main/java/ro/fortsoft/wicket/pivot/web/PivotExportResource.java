@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.web;
+
+import java.io.IOException;
+
+import org.apache.wicket.request.resource.AbstractResource;
+import org.apache.wicket.request.resource.ContentDisposition;
+
+import ro.fortsoft.wicket.pivot.PivotField;
+import ro.fortsoft.wicket.pivot.PivotModel;
+import ro.fortsoft.wicket.pivot.PivotPhaseEvent;
+import ro.fortsoft.wicket.pivot.exporter.PivotExporter;
+import ro.fortsoft.wicket.pivot.jfr.PivotFlightRecorder;
+
+/**
+ * Downloads a calculated pivot model. The exporter writes directly to the
+ * response output stream, the export is not buffered in memory.
+ *
+ * @author Decebal Suiu
+ */
+public class PivotExportResource extends AbstractResource {
+
+	private static final long serialVersionUID = 1L;
+
+	private PivotModel pivotModel;
+	private PivotExporter exporter;
+	private String fileName;
+
+	/**
+	 * The file name is completed with the extension of the exporter.
+	 */
+	public PivotExportResource(PivotModel pivotModel, PivotExporter exporter, String fileName) {
+		this.pivotModel = pivotModel;
+		this.exporter = exporter;
+		this.fileName = fileName;
+	}
+
+	@Override
+	protected ResourceResponse newResourceResponse(Attributes attributes) {
+		ResourceResponse response = new ResourceResponse();
+		response.setContentType(exporter.getFormatMimetype());
+		response.setFileName(getFileName());
+		response.setContentDisposition(ContentDisposition.ATTACHMENT);
+		response.disableCaching();
+		response.setWriteCallback(new WriteCallback() {
+
+			@Override
+			public void writeData(Attributes attributes) throws IOException {
+				long start = System.nanoTime();
+				Object event = PivotFlightRecorder.beginExport(exporter.getFormatName());
+				exporter.exportPivot(pivotModel, attributes.getResponse().getOutputStream());
+				long duration = System.nanoTime() - start;
+				int rowKeyCount = pivotModel.getRowKeys().size();
+				int columnKeyCount = pivotModel.getColumnKeys().size();
+				long cellCount = (long) rowKeyCount * columnKeyCount
+						* pivotModel.getFields(PivotField.Area.DATA).size();
+				if (PivotFlightRecorder.shouldCommit(event)) {
+					PivotFlightRecorder.commit(event, pivotModel, rowKeyCount, rowKeyCount, columnKeyCount, cellCount);
+				}
+				if (pivotModel.hasPhaseListeners()) {
+					pivotModel.firePhaseEvent(new PivotPhaseEvent(pivotModel, PivotPhaseEvent.Phase.EXPORT, duration,
+							rowKeyCount, rowKeyCount, columnKeyCount, cellCount));
+				}
+			}
+
+		});
+
+		return response;
+	}
+
+	private String getFileName() {
+		String extension = exporter.getFilenameExtension();
+		if (extension.startsWith(".")) {
+			extension = extension.substring(1);
+		}
+
+		return fileName + "." + extension;
+	}
+
+}
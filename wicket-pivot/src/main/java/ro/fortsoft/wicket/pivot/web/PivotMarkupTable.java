@@ -0,0 +1,190 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.web;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import org.apache.wicket.markup.ComponentTag;
+import org.apache.wicket.markup.MarkupStream;
+import org.apache.wicket.markup.parser.XmlTag.TagType;
+import org.apache.wicket.markup.html.WebComponent;
+import org.apache.wicket.model.Model;
+import org.apache.wicket.request.Response;
+
+import ro.fortsoft.wicket.pivot.PivotField;
+import ro.fortsoft.wicket.pivot.PivotModel;
+import ro.fortsoft.wicket.pivot.PivotTableVisitor;
+import ro.fortsoft.wicket.pivot.PivotTableWalker;
+
+/**
+ * A pivot table without a component for each cell. The markup of the table
+ * (the same as {@link PivotTable}) is written to the response when the
+ * component is rendered, cell by cell while the pivot is walked (see
+ * {@link PivotTableWalker}), so nothing is kept in the page except the pivot
+ * model and no render model is created. Use it on a &lt;table&gt; tag.
+ *
+ * @author Decebal Suiu
+ */
+public class PivotMarkupTable extends WebComponent {
+
+	private static final long serialVersionUID = 1L;
+
+	public PivotMarkupTable(String id, PivotModel pivotModel) {
+		super(id, Model.of(pivotModel));
+	}
+
+	@Override
+	protected void onComponentTag(ComponentTag tag) {
+		super.onComponentTag(tag);
+
+		if (tag.isOpenClose()) {
+			tag.setType(TagType.OPEN);
+		}
+	}
+
+	@Override
+	public void onComponentTagBody(MarkupStream markupStream, ComponentTag openTag) {
+		PivotModel pivotModel = getPivotModel();
+		MarkupWriter markupWriter = new MarkupWriter(pivotModel, getResponse());
+		try {
+			PivotTableWalker.walk(pivotModel, markupWriter);
+		} catch (IOException e) {
+			// the response doesn't throw
+			throw new UncheckedIOException(e);
+		}
+		markupWriter.close();
+
+		// skip the body of the tag (if any)
+		replaceComponentTagBody(markupStream, openTag, "");
+	}
+
+	public PivotModel getPivotModel() {
+		return (PivotModel) getDefaultModelObject();
+	}
+
+	/**
+	 * Retrieves a name that display the pivot table title (for fields on ROW
+	 * and DATA areas)
+	 */
+	protected String getTitle(PivotField pivotField) {
+		return PivotMarkupUtils.getTitle(pivotField);
+	}
+
+	/**
+	 * Converts a value to string, with the converter of the field (if any).
+	 */
+	protected String getValueString(Object value, PivotField pivotField) {
+		return PivotMarkupUtils.getValueString(this, value, pivotField);
+	}
+
+	/**
+	 * Writes the cells of the walker to the response. The cells at the right
+	 * of the data values are the grand total column.
+	 */
+	private class MarkupWriter implements PivotTableVisitor {
+
+		private final Response response;
+		private final int rowFieldCount;
+		private final int grandTotalColumn;
+		private final StringBuilder buffer = new StringBuilder();
+		private RowType rowType;
+		private boolean body;
+
+		public MarkupWriter(PivotModel pivotModel, Response response) {
+			this.response = response;
+
+			rowFieldCount = pivotModel.getFields(PivotField.Area.ROW).size();
+			grandTotalColumn = rowFieldCount
+					+ pivotModel.getColumnKeys().size() * pivotModel.getFields(PivotField.Area.DATA).size();
+			response.write("<thead>");
+		}
+
+		@Override
+		public void startRow(RowType rowType) {
+			this.rowType = rowType;
+			if (!body && (rowType != RowType.HEADER)) {
+				startBody();
+			}
+			response.write((rowType == RowType.GRAND_TOTAL) ? "<tr class=\"grand-total\">" : "<tr>");
+		}
+
+		@Override
+		public void visitCell(CellType cellType, int column, Object value, PivotField field, int colspan,
+				int rowspan) {
+			String tag = "th";
+			String cssClass;
+			String text;
+			switch (cellType) {
+			case HEADER:
+				if (column < rowFieldCount) {
+					cssClass = (field == null) ? "row-header empty" : "row-header";
+				} else {
+					cssClass = (column < grandTotalColumn) ? "col" : "grand-total";
+				}
+				text = (field == null) ? "" : getTitle(field);
+				break;
+			case HEADER_VALUE:
+				cssClass = "col";
+				text = getValueString(value, field);
+				break;
+			case GRAND_TOTAL_HEADER:
+				cssClass = (value == null) ? "grand-total empty" : "grand-total";
+				text = (value == null) ? "" : value.toString();
+				break;
+			case DATA_HEADER:
+				cssClass = "row";
+				text = getValueString(value, field);
+				break;
+			case DATA_VALUE:
+				tag = "td";
+				cssClass = "data";
+				text = getValueString(value, field);
+				break;
+			case GRAND_TOTAL_ROW_HEADER:
+				cssClass = "row-header";
+				text = "Grand Total";
+				break;
+			default:
+				tag = "td";
+				cssClass = (rowType == RowType.DATA) ? "data grand-total" : "data";
+				text = getValueString(value, null);
+				break;
+			}
+
+			buffer.setLength(0);
+			PivotMarkupUtils.appendCell(buffer, tag, cssClass, colspan, rowspan, text);
+			response.write(buffer);
+		}
+
+		@Override
+		public void endRow() {
+			response.write("</tr>");
+		}
+
+		public void close() {
+			if (!body) {
+				startBody();
+			}
+			response.write("</tbody>");
+		}
+
+		private void startBody() {
+			response.write("</thead>");
+			response.write("<tbody>");
+			body = true;
+		}
+
+	}
+
+}
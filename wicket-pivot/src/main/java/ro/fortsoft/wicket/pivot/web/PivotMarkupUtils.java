@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.web;
+
+import org.apache.wicket.Component;
+import org.apache.wicket.util.convert.IConverter;
+import org.apache.wicket.util.string.Strings;
+
+import ro.fortsoft.wicket.pivot.PivotField;
+
+/**
+ * The texts and the cells shared by the tables that write their markup
+ * without components ({@link PivotMarkupTable} and {@link PivotWindowTable}).
+ *
+ * @author Decebal Suiu
+ */
+public class PivotMarkupUtils {
+
+	/**
+	 * Retrieves the title of a field (for fields on ROW and DATA areas).
+	 */
+	public static String getTitle(PivotField pivotField) {
+		String title = pivotField.getTitle();
+		if (pivotField.getArea().equals(PivotField.Area.DATA)) {
+			title += " (" + pivotField.getCalculationDescription() + ")";
+		}
+
+		return title;
+	}
+
+	/**
+	 * Converts a value to string, with the converter of the field (if any) or
+	 * the converter of the component for the value type.
+	 */
+	@SuppressWarnings("unchecked")
+	public static String getValueString(Component component, Object value, PivotField pivotField) {
+		if (value == null) {
+			return "";
+		}
+
+		IConverter<Object> converter = null;
+		if (pivotField != null) {
+			converter = (IConverter<Object>) pivotField.getConverter();
+		}
+		if (converter == null) {
+			converter = (IConverter<Object>) component.getConverter(value.getClass());
+		}
+
+		return converter.convertToString(value, component.getLocale());
+	}
+
+	/**
+	 * Appends a table cell, the text is escaped.
+	 */
+	public static void appendCell(StringBuilder buffer, String tag, String cssClass, int colspan, int rowspan,
+			String text) {
+		buffer.append('<').append(tag).append(" class=\"").append(cssClass).append("\"");
+		if (colspan > 1) {
+			buffer.append(" colspan=\"").append(colspan).append("\"");
+		}
+		if (rowspan > 1) {
+			buffer.append(" rowspan=\"").append(rowspan).append("\"");
+		}
+		buffer.append('>');
+		buffer.append(Strings.escapeMarkup(text));
+		buffer.append("</").append(tag).append('>');
+	}
+
+}
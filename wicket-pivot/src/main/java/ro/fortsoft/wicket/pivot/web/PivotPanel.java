@@ -12,11 +12,11 @@
  */
 package ro.fortsoft.wicket.pivot.web;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.util.List;
 
 import org.apache.wicket.AttributeModifier;
+import org.apache.wicket.Component;
+import org.apache.wicket.ajax.AbstractAjaxTimerBehavior;
 import org.apache.wicket.ajax.AjaxRequestTarget;
 import org.apache.wicket.ajax.markup.html.AjaxLink;
 import org.apache.wicket.ajax.markup.html.form.AjaxCheckBox;
@@ -36,15 +36,21 @@ import org.apache.wicket.model.PropertyModel;
 import org.apache.wicket.model.StringResourceModel;
 import org.apache.wicket.request.cycle.RequestCycle;
 import org.apache.wicket.request.handler.resource.ResourceRequestHandler;
-import org.apache.wicket.request.resource.ByteArrayResource;
+import org.apache.wicket.util.time.Duration;
 
+import com.google.gson.Gson;
+
+import ro.fortsoft.wicket.pivot.CalculationProgress;
 import ro.fortsoft.wicket.pivot.DefaultPivotFieldActionsFactory;
 import ro.fortsoft.wicket.pivot.DefaultPivotModel;
+import ro.fortsoft.wicket.pivot.JdbcPivotDataSource;
+import ro.fortsoft.wicket.pivot.JdbcPivotModel;
 import ro.fortsoft.wicket.pivot.PivotDataSource;
 import ro.fortsoft.wicket.pivot.PivotField;
 import ro.fortsoft.wicket.pivot.PivotFieldActionsFactory;
 import ro.fortsoft.wicket.pivot.PivotModel;
 import ro.fortsoft.wicket.pivot.config.IPivotConfigStorage;
+import ro.fortsoft.wicket.pivot.config.PivotConfig;
 import ro.fortsoft.wicket.pivot.exporter.PivotCsvExporter;
 import ro.fortsoft.wicket.pivot.exporter.PivotExporter;
 
@@ -66,7 +72,8 @@ public class PivotPanel extends GenericPanel<PivotDataSource> {
 
 	private WebMarkupContainer areasContainer;
 	private PivotModel pivotModel;
-	private PivotTable pivotTable;
+	private String calculatedState; // the state of the pivot model when it was calculated
+	private Component pivotTable;
 	private AjaxLink<Void> computeLink;
 	private WebMarkupContainer downloadContainer;
 	private PivotExporter[] pivotExporters = new PivotExporter[] { new PivotCsvExporter() };
@@ -74,6 +81,14 @@ public class PivotPanel extends GenericPanel<PivotDataSource> {
 	private PivotFieldActionsFactory pivotFieldActionsFactory;
 	private String pivotExportFilename = "pivottable";
 	private IPivotConfigStorage pivotConfigStorage;
+	private int parallelism;
+	private boolean windowed;
+	private boolean streaming;
+	private boolean asynchronous;
+	private String calculationJobId;
+	private String calculationJobState; // the state of the pivot model when the job was submitted
+	private WebMarkupContainer progressContainer;
+	private AbstractAjaxTimerBehavior progressTimer;
 
 	private ModalWindow modal;
 
@@ -88,10 +103,17 @@ public class PivotPanel extends GenericPanel<PivotDataSource> {
 		// create a pivot model
 		pivotModel = createPivotModel(getModelObject());
 
+		if (parallelism > 0) {
+			pivotModel.setCalculationMode(PivotModel.CalculationMode.PARALLEL);
+			pivotModel.setParallelism(parallelism);
+		}
+
 		// create pivot field action factory
 		pivotFieldActionsFactory = createPivotFieldActionsFactory();
 
-		pivotModel.calculate();
+		if (!asynchronous) {
+			calculate();
+		}
 
 		areasContainer = new WebMarkupContainer("areas");
 		areasContainer.setOutputMarkupId(true);
@@ -104,7 +126,13 @@ public class PivotPanel extends GenericPanel<PivotDataSource> {
 			areaRepeater.add(new PivotAreaPanel(areaRepeater.newChildId(), area));
 		}
 
-		pivotTable = createPivotTabel("pivotTable", pivotModel);
+		if (windowed) {
+			pivotTable = createPivotWindowTable("pivotTable", pivotModel);
+		} else if (streaming) {
+			pivotTable = createPivotMarkupTable("pivotTable", pivotModel);
+		} else {
+			pivotTable = createPivotTabel("pivotTable", pivotModel);
+		}
 		add(pivotTable);
 
 		modal = new ModalWindow("modal");
@@ -207,6 +235,36 @@ public class PivotPanel extends GenericPanel<PivotDataSource> {
 		computeLink.setVisible(!pivotModel.isAutoCalculate());
 		add(computeLink);
 
+		progressContainer = new WebMarkupContainer("progress");
+		progressContainer.setOutputMarkupPlaceholderTag(true);
+		progressContainer.setVisible(false);
+		add(progressContainer);
+
+		progressContainer.add(new Label("message", (IModel<String>) this::getProgressMessage));
+
+		progressContainer.add(new AjaxLink<Void>("cancel") {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void onClick(AjaxRequestTarget target) {
+				cancelCalculation(target);
+			}
+
+		});
+
+		progressTimer = new AbstractAjaxTimerBehavior(Duration.milliseconds(500)) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void onTimer(AjaxRequestTarget target) {
+				updateCalculation(target);
+			}
+
+		};
+		progressContainer.add(progressTimer);
+
 		downloadContainer = new WebMarkupContainer("downloadContainer");
 		downloadContainer.setOutputMarkupPlaceholderTag(true);
 		downloadContainer.setVisible(pivotTable.isVisible() && (pivotExporters.length > 0));
@@ -220,16 +278,11 @@ public class PivotPanel extends GenericPanel<PivotDataSource> {
 
 				@Override
 				public void onClick() {
-					pivotModel.calculate();
-					ByteArrayOutputStream out = new ByteArrayOutputStream();
-					try {
-						exporter.exportPivot(getPivotModel(), out);
-					} catch (IOException e) {
-						throw new RuntimeException(e);
+					if (!isCalculated()) {
+						calculate();
 					}
-					ResourceRequestHandler downloadHandler = new ResourceRequestHandler(new ByteArrayResource(
-							exporter.getFormatMimetype(), out.toByteArray(), pivotExportFilename + "."
-									+ exporter.getFilenameExtension()), null);
+					ResourceRequestHandler downloadHandler = new ResourceRequestHandler(new PivotExportResource(
+							getPivotModel(), exporter, pivotExportFilename), null);
 					RequestCycle.get().scheduleRequestHandlerAfterCurrent(downloadHandler);
 				}
 			};
@@ -258,6 +311,9 @@ public class PivotPanel extends GenericPanel<PivotDataSource> {
 			target.add(areasContainer);
 			target.add(computeLink);
 
+			// the calculation in progress is for the old areas
+			cancelCalculation(target);
+
 			if (pivotModel.isAutoCalculate()) {
 				compute(target);
 			}
@@ -277,8 +333,48 @@ public class PivotPanel extends GenericPanel<PivotDataSource> {
 			return;
 		}
 
+		if (asynchronous) {
+			startCalculation(target);
+			return;
+		}
+
+		calculate();
+		showPivotTable(target);
+	}
+
+	/**
+	 * Returns true if the pivot model was calculated and it's unchanged since
+	 * (the same fields on areas, aggregators and calculations).
+	 */
+	public boolean isCalculated() {
+		return (calculatedState != null) && calculatedState.equals(getModelState(pivotModel));
+	}
+
+	private void calculate() {
 		pivotModel.calculate();
-		PivotTable newPivotTable = new PivotTable("pivotTable", pivotModel);
+		calculatedState = getModelState(pivotModel);
+	}
+
+	/*
+	 * The configuration of the pivot model, compared to find out if the model
+	 * must be calculated again.
+	 */
+	private static String getModelState(PivotModel pivotModel) {
+		PivotConfig config = new PivotConfig();
+		config.storeModelState(pivotModel);
+
+		return new Gson().toJson(config);
+	}
+
+	private void showPivotTable(AjaxRequestTarget target) {
+		Component newPivotTable;
+		if (windowed) {
+			newPivotTable = new PivotWindowTable("pivotTable", pivotModel);
+		} else if (streaming) {
+			newPivotTable = new PivotMarkupTable("pivotTable", pivotModel);
+		} else {
+			newPivotTable = new PivotTable("pivotTable", pivotModel);
+		}
 		pivotTable.replaceWith(newPivotTable);
 		pivotTable = newPivotTable;
 		if (target != null) {
@@ -291,8 +387,106 @@ public class PivotPanel extends GenericPanel<PivotDataSource> {
 		}
 	}
 
+	/*
+	 * Calculates a copy of the pivot model in background. The page (and the
+	 * pivot model) is serialized while the job is running. The copy shares
+	 * the data source with the pivot model.
+	 */
+	private void startCalculation(AjaxRequestTarget target) {
+		cancelCalculation(target);
+
+		PivotModel calculatedModel = PivotCalculationJob.copy(pivotModel);
+		calculationJobState = getModelState(pivotModel);
+		calculationJobId = PivotCalculationJob.submit(calculatedModel, PivotSettings.get().getCalculationExecutor())
+				.getId();
+
+		progressContainer.setVisible(true);
+		if (target != null) {
+			progressTimer.restart(target);
+			target.add(progressContainer);
+		}
+	}
+
+	private void updateCalculation(AjaxRequestTarget target) {
+		PivotCalculationJob job = PivotCalculationJob.get(calculationJobId);
+		if ((job != null) && !job.isDone()) {
+			target.add(progressContainer);
+			return;
+		}
+
+		String jobState = calculationJobState;
+		stopCalculation(target);
+		if (job == null) {
+			return;
+		}
+
+		job.remove();
+		if (job.getFailure() != null) {
+			throw job.getFailure();
+		}
+
+		if (!getModelState(pivotModel).equals(jobState)) {
+			// the pivot model was changed (aggregators, calculations, totals) while it was calculated
+			startCalculation(target);
+			return;
+		}
+
+		// the copy has the configuration of the pivot model, use the calculated copy
+		pivotModel = job.getPivotModel();
+		calculatedState = jobState;
+		showPivotTable(target);
+		target.add(this);
+	}
+
+	/**
+	 * Cancels the background calculation (if any).
+	 */
+	public void cancelCalculation(AjaxRequestTarget target) {
+		PivotCalculationJob job = PivotCalculationJob.get(calculationJobId);
+		if (job != null) {
+			job.cancel();
+		}
+		stopCalculation(target);
+	}
+
+	private void stopCalculation(AjaxRequestTarget target) {
+		calculationJobId = null;
+		calculationJobState = null;
+		if (progressContainer.isVisible()) {
+			progressContainer.setVisible(false);
+			if (target != null) {
+				progressTimer.stop(target);
+				target.add(progressContainer);
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the message displayed while the pivot is calculated in background.
+	 */
+	protected String getProgressMessage() {
+		PivotCalculationJob job = PivotCalculationJob.get(calculationJobId);
+		CalculationProgress progress = (job != null) ? job.getProgress() : null;
+		if ((progress == null) || (progress.getPhase() == null)) {
+			return getString("calculating");
+		}
+
+		String message = getString("phase." + progress.getPhase().name()) + ": " + progress.getProcessedRows();
+		if (progress.getRowCount() >= 0) {
+			message += " / " + progress.getRowCount();
+		}
+
+		return message;
+	}
+
 	protected PivotModel createPivotModel(PivotDataSource pivotDataSource) {
-		PivotModel pivotModel = new DefaultPivotModel(pivotDataSource);
+		PivotModel pivotModel;
+		if (pivotDataSource instanceof JdbcPivotDataSource) {
+			// aggregate in the database
+			pivotModel = new JdbcPivotModel((JdbcPivotDataSource) pivotDataSource);
+		} else {
+			pivotModel = new DefaultPivotModel(pivotDataSource);
+		}
 
 		// debug
 		/*
@@ -318,6 +512,22 @@ public class PivotPanel extends GenericPanel<PivotDataSource> {
 		return pivotTable;
 	}
 
+	protected PivotWindowTable createPivotWindowTable(String id, PivotModel pivotModel) {
+		PivotWindowTable pivotTable = new PivotWindowTable(id, pivotModel);
+		pivotTable.setOutputMarkupPlaceholderTag(true);
+		pivotTable.setVisible(false);
+
+		return pivotTable;
+	}
+
+	protected PivotMarkupTable createPivotMarkupTable(String id, PivotModel pivotModel) {
+		PivotMarkupTable pivotTable = new PivotMarkupTable(id, pivotModel);
+		pivotTable.setOutputMarkupPlaceholderTag(true);
+		pivotTable.setVisible(false);
+
+		return pivotTable;
+	}
+
 	protected PivotFieldActionsFactory createPivotFieldActionsFactory() {
 		return new DefaultPivotFieldActionsFactory();
 	}
@@ -344,6 +554,68 @@ public class PivotPanel extends GenericPanel<PivotDataSource> {
 		this.pivotExportFilename = pivotExportFilename;
 	}
 
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Calculate the pivot in parallel, using the given number of threads. By
+	 * default the calculation mode of the pivot model is used.
+	 * 
+	 * @param parallelism
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	public boolean isWindowed() {
+		return windowed;
+	}
+
+	/**
+	 * Render the pivot with a {@link PivotWindowTable} (only the visible rows
+	 * and columns are rendered). Use it for large pivots. By default all the
+	 * cells are rendered (see {@link PivotTable}).
+	 * 
+	 * @param windowed
+	 */
+	public void setWindowed(boolean windowed) {
+		this.windowed = windowed;
+	}
+
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * Render the pivot with a {@link PivotMarkupTable} (the cells are written
+	 * as markup, without components). By default a component is created for
+	 * each cell (see {@link PivotTable}).
+	 * 
+	 * @param streaming
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	public boolean isAsynchronous() {
+		return asynchronous;
+	}
+
+	/**
+	 * Calculate the pivot in background (see
+	 * {@link PivotSettings#getCalculationExecutor()}). The progress is displayed
+	 * and the calculation can be cancelled. A change of the areas cancels the
+	 * calculation in progress, after other changes the pivot is calculated
+	 * again when the calculation in progress ends. By default the pivot is
+	 * calculated in the request.
+	 * 
+	 * @param asynchronous
+	 */
+	public void setAsynchronous(boolean asynchronous) {
+		this.asynchronous = asynchronous;
+	}
+
 	public IPivotConfigStorage getPivotConfigStorage() {
 		return pivotConfigStorage;
 	}
@@ -12,7 +12,11 @@
  */
 package ro.fortsoft.wicket.pivot.web;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import org.apache.wicket.Application;
+import org.apache.wicket.IApplicationListener;
 import org.apache.wicket.MetaDataKey;
 import org.apache.wicket.request.resource.PackageResourceReference;
 import org.apache.wicket.request.resource.ResourceReference;
@@ -47,6 +51,9 @@ public class PivotSettings {
 	private boolean includeCss = true;
 	private boolean includeBootstrap = true;
 
+	private ExecutorService calculationExecutor;
+	private ExecutorService defaultCalculationExecutor; // created by the settings, shut down with the application
+
 	/**
 	 * Private constructor, use {@link #get()} instead.
 	 */
@@ -169,6 +176,45 @@ public class PivotSettings {
 		return this;
 	}
 
+	/**
+	 * Retrieves the executor of the background calculations (see
+	 * {@link PivotPanel#setAsynchronous(boolean)}). By default a pool with a
+	 * thread for each processor is created on first use and it's shut down
+	 * when the application is destroyed.
+	 */
+	public synchronized ExecutorService getCalculationExecutor() {
+		if (calculationExecutor == null) {
+			calculationExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+				Thread thread = new Thread(runnable, "pivot-calculation");
+				thread.setDaemon(true);
+
+				return thread;
+			});
+			defaultCalculationExecutor = calculationExecutor;
+		}
+
+		return calculationExecutor;
+	}
+
+	/**
+	 * Set the executor of the background calculations. The executor is not
+	 * shut down by the settings.
+	 */
+	public synchronized PivotSettings setCalculationExecutor(ExecutorService calculationExecutor) {
+		this.calculationExecutor = calculationExecutor;
+		return this;
+	}
+
+	private synchronized void shutdownCalculationExecutor() {
+		if (defaultCalculationExecutor != null) {
+			defaultCalculationExecutor.shutdownNow();
+			if (calculationExecutor == defaultCalculationExecutor) {
+				calculationExecutor = null;
+			}
+			defaultCalculationExecutor = null;
+		}
+	}
+
 	/**
 	 * Retrieves the instance of settings object.
 	 * 
@@ -183,6 +229,15 @@ public class PivotSettings {
 				if (settings == null) {
 					settings = new PivotSettings();
 					application.setMetaData(KEY, settings);
+					final PivotSettings applicationSettings = settings;
+					application.getApplicationListeners().add(new IApplicationListener() {
+
+						@Override
+						public void onBeforeDestroyed(Application application) {
+							applicationSettings.shutdownCalculationExecutor();
+						}
+
+					});
 				}
 			}
 		}
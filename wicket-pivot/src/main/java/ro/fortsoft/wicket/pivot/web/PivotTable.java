@@ -37,6 +37,7 @@ import ro.fortsoft.wicket.pivot.PivotTableRenderModel.HeaderRenderCell;
 import ro.fortsoft.wicket.pivot.PivotTableRenderModel.HeaderRenderRow;
 import ro.fortsoft.wicket.pivot.PivotTableRenderModel.HeaderValueRenderCell;
 import ro.fortsoft.wicket.pivot.PivotTableRenderModel.RenderCell;
+import ro.fortsoft.wicket.pivot.jfr.PivotFlightRecorder;
 
 /**
  * @author Decebal Suiu
@@ -62,6 +63,7 @@ public class PivotTable extends GenericPanel<PivotModel> {
 		super.onInitialize();
 
 		PivotModel pivotModel = getModelObject();
+		Object event = PivotFlightRecorder.begin(PivotFlightRecorder.EventType.PIVOT_TABLE);
 		PivotTableRenderModel renderModel =	PivotTableRenderModel.create(pivotModel);
 
 		// rendering header
@@ -190,6 +192,11 @@ public class PivotTable extends GenericPanel<PivotModel> {
 				value.add(tmp);
 			}
 		}
+
+		if (PivotFlightRecorder.shouldCommit(event)) {
+			PivotFlightRecorder.commit(event, pivotModel, renderModel.getRowCount(), pivotModel.getRowKeys().size(),
+					pivotModel.getColumnKeys().size(), renderModel.getCellCount());
+		}
 	}
 
 	/**
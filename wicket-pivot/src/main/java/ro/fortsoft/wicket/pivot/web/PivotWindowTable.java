@@ -0,0 +1,456 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.web;
+
+import java.util.List;
+
+import org.apache.wicket.ajax.AbstractDefaultAjaxBehavior;
+import org.apache.wicket.ajax.AjaxChannel;
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.ajax.attributes.AjaxRequestAttributes;
+import org.apache.wicket.ajax.attributes.CallbackParameter;
+import org.apache.wicket.markup.ComponentTag;
+import org.apache.wicket.markup.head.IHeaderResponse;
+import org.apache.wicket.markup.head.JavaScriptHeaderItem;
+import org.apache.wicket.markup.head.OnDomReadyHeaderItem;
+import org.apache.wicket.markup.html.panel.GenericPanel;
+import org.apache.wicket.model.Model;
+import org.apache.wicket.request.IRequestParameters;
+import org.apache.wicket.request.resource.PackageResourceReference;
+import org.apache.wicket.request.resource.ResourceReference;
+
+import com.google.gson.Gson;
+
+import ro.fortsoft.wicket.pivot.PivotField;
+import ro.fortsoft.wicket.pivot.PivotModel;
+import ro.fortsoft.wicket.pivot.PivotTotals;
+import ro.fortsoft.wicket.pivot.tree.CompactTree;
+
+/**
+ * A pivot table that renders only the rows and the columns visible in a
+ * scrollable viewport (a window). The cells are written as markup, without
+ * components, and the other windows are fetched with an ajax request when the
+ * user scrolls. Each window contains the column header rows and the row header
+ * columns, so the headers are frozen. The cost of a request is bounded by
+ * the window size (see {@link #setMaxWindowRowCount(int)} and
+ * {@link #setMaxWindowColumnCount(int)}).
+ * <p>
+ * The grand totals (if they are shown) are taken from the model (see
+ * {@link PivotModel#getTotals()}), the cells are not scanned.
+ *
+ * @author Decebal Suiu
+ */
+public class PivotWindowTable extends GenericPanel<PivotModel> {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final ResourceReference JAVA_SCRIPT_REFERENCE = new PackageResourceReference(
+			PivotWindowTable.class, "res/pivot-window.js");
+
+	private static final String GRAND_TOTAL = "Grand Total";
+
+	private int height = 500;
+	private int rowHeight = 25;
+	private int columnWidth = 100;
+	private int rowHeaderWidth = 150;
+	private int maxWindowRowCount = 100;
+	private int maxWindowColumnCount = 50;
+
+	private AbstractDefaultAjaxBehavior windowBehavior;
+
+	private List<PivotField> rowFields;
+	private List<PivotField> columnFields;
+	private List<PivotField> dataFields;
+	private int rowCount;
+	private int columnCount;
+	private int headerRowCount;
+	private boolean showRowTotals; // the grand total column
+	private boolean showColumnTotals; // the grand total row
+
+	public PivotWindowTable(String id, PivotModel pivotModel) {
+		super(id, Model.of(pivotModel));
+	}
+
+	@Override
+	protected void onInitialize() {
+		super.onInitialize();
+
+		PivotModel pivotModel = getModelObject();
+		rowFields = pivotModel.getFields(PivotField.Area.ROW);
+		columnFields = pivotModel.getFields(PivotField.Area.COLUMN);
+		dataFields = pivotModel.getFields(PivotField.Area.DATA);
+		rowCount = getRowsTree().getLeafCount();
+		columnCount = getColumnsTree().getLeafCount();
+
+		headerRowCount = Math.max(columnFields.size(), 1);
+		if ((dataFields.size() > 1) && !columnFields.isEmpty()) {
+			// the row with data field titles
+			headerRowCount++;
+		}
+
+		showRowTotals = !columnFields.isEmpty() && pivotModel.isShowGrandTotalForRow();
+		showColumnTotals = !rowFields.isEmpty() && pivotModel.isShowGrandTotalForColumn();
+
+		windowBehavior = new AbstractDefaultAjaxBehavior() {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void updateAjaxAttributes(AjaxRequestAttributes attributes) {
+				super.updateAjaxAttributes(attributes);
+
+				// only the last window requested while scrolling is rendered
+				attributes.setChannel(new AjaxChannel(getComponent().getMarkupId(), AjaxChannel.Type.DROP));
+			}
+
+			@Override
+			protected void respond(AjaxRequestTarget target) {
+				IRequestParameters parameters = getRequest().getRequestParameters();
+				int firstRow = parameters.getParameterValue("firstRow").toInt(0);
+				int windowRowCount = parameters.getParameterValue("rowCount").toInt(maxWindowRowCount);
+				int firstColumn = parameters.getParameterValue("firstColumn").toInt(0);
+				int windowColumnCount = parameters.getParameterValue("columnCount").toInt(maxWindowColumnCount);
+
+				String markup = renderWindow(firstRow, windowRowCount, firstColumn, windowColumnCount);
+				target.appendJavaScript("PivotWindow.update('" + getMarkupId() + "', " + new Gson().toJson(markup)
+						+ ");");
+			}
+
+		};
+		add(windowBehavior);
+
+		setOutputMarkupId(true);
+	}
+
+	@Override
+	protected void onComponentTag(ComponentTag tag) {
+		super.onComponentTag(tag);
+
+		tag.setName("div");
+		tag.put("class", "pivot pivot-window");
+		tag.put("style", "height: " + height + "px;");
+	}
+
+	@Override
+	public void renderHead(IHeaderResponse response) {
+		super.renderHead(response);
+
+		response.render(JavaScriptHeaderItem.forReference(JAVA_SCRIPT_REFERENCE));
+
+		CharSequence callback = windowBehavior.getCallbackFunction(CallbackParameter.explicit("firstRow"),
+				CallbackParameter.explicit("rowCount"), CallbackParameter.explicit("firstColumn"),
+				CallbackParameter.explicit("columnCount"));
+
+		StringBuilder options = new StringBuilder();
+		options.append("{");
+		options.append("rowCount: ").append(getTotalRowCount()).append(", ");
+		options.append("columnCount: ").append(getTotalColumnCount()).append(", ");
+		options.append("headerRowCount: ").append(headerRowCount).append(", ");
+		options.append("rowFieldCount: ").append(rowFields.size()).append(", ");
+		options.append("dataFieldCount: ").append(dataFields.size()).append(", ");
+		options.append("rowHeight: ").append(rowHeight).append(", ");
+		options.append("columnWidth: ").append(columnWidth).append(", ");
+		options.append("rowHeaderWidth: ").append(rowHeaderWidth).append(", ");
+		options.append("callback: ").append(callback);
+		options.append("}");
+
+		response.render(OnDomReadyHeaderItem.forScript("PivotWindow.init('" + getMarkupId() + "', " + options + ");"));
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Set the height (in pixels) of the viewport. Default is 500.
+	 */
+	public PivotWindowTable setHeight(int height) {
+		this.height = height;
+		return this;
+	}
+
+	public int getRowHeight() {
+		return rowHeight;
+	}
+
+	/**
+	 * Set the height (in pixels) of a row. All the rows have the same height. Default is 25.
+	 */
+	public PivotWindowTable setRowHeight(int rowHeight) {
+		this.rowHeight = rowHeight;
+		return this;
+	}
+
+	public int getColumnWidth() {
+		return columnWidth;
+	}
+
+	/**
+	 * Set the width (in pixels) of a data column. Default is 100.
+	 */
+	public PivotWindowTable setColumnWidth(int columnWidth) {
+		this.columnWidth = columnWidth;
+		return this;
+	}
+
+	public int getRowHeaderWidth() {
+		return rowHeaderWidth;
+	}
+
+	/**
+	 * Set the width (in pixels) of a row header column. Default is 150.
+	 */
+	public PivotWindowTable setRowHeaderWidth(int rowHeaderWidth) {
+		this.rowHeaderWidth = rowHeaderWidth;
+		return this;
+	}
+
+	public int getMaxWindowRowCount() {
+		return maxWindowRowCount;
+	}
+
+	/**
+	 * Set the maximum number of rows rendered by a request. Default is 100.
+	 */
+	public PivotWindowTable setMaxWindowRowCount(int maxWindowRowCount) {
+		this.maxWindowRowCount = maxWindowRowCount;
+		return this;
+	}
+
+	public int getMaxWindowColumnCount() {
+		return maxWindowColumnCount;
+	}
+
+	/**
+	 * Set the maximum number of columns (column keys) rendered by a request. Default is 50.
+	 */
+	public PivotWindowTable setMaxWindowColumnCount(int maxWindowColumnCount) {
+		this.maxWindowColumnCount = maxWindowColumnCount;
+		return this;
+	}
+
+	/**
+	 * Renders the markup (a table) of a window. The row after the last row is
+	 * the grand total row and the column after the last column is the grand
+	 * total column.
+	 */
+	protected String renderWindow(int firstRow, int windowRowCount, int firstColumn, int windowColumnCount) {
+		int totalRowCount = getTotalRowCount();
+		int totalColumnCount = getTotalColumnCount();
+		firstRow = Math.max(0, Math.min(firstRow, totalRowCount - 1));
+		firstColumn = Math.max(0, Math.min(firstColumn, totalColumnCount - 1));
+		int lastRow = Math.min(firstRow + Math.max(1, Math.min(windowRowCount, maxWindowRowCount)), totalRowCount);
+		int lastColumn = Math.min(firstColumn + Math.max(1, Math.min(windowColumnCount, maxWindowColumnCount)),
+				totalColumnCount);
+		// the rows and the columns with keys
+		int lastKeyRow = Math.min(lastRow, rowCount);
+		int lastKeyColumn = Math.min(lastColumn, columnCount);
+		boolean totalRow = lastRow > rowCount;
+		boolean totalColumn = lastColumn > columnCount;
+
+		int dataFieldCount = dataFields.size();
+		int width = rowFields.size() * rowHeaderWidth + (lastColumn - firstColumn) * dataFieldCount * columnWidth;
+
+		StringBuilder buffer = new StringBuilder();
+		buffer.append("<table class=\"table table-bordered table-condensed\" style=\"width: ").append(width)
+				.append("px;\">");
+
+		buffer.append("<colgroup>");
+		for (int i = 0; i < rowFields.size(); i++) {
+			appendCol(buffer, rowHeaderWidth);
+		}
+		for (int i = (lastColumn - firstColumn) * dataFieldCount; i > 0; i--) {
+			appendCol(buffer, columnWidth);
+		}
+		buffer.append("</colgroup>");
+
+		buffer.append("<thead>");
+		for (int i = 0; i < headerRowCount; i++) {
+			appendHeaderRow(buffer, i, firstColumn, lastKeyColumn, totalColumn);
+		}
+		buffer.append("</thead>");
+
+		buffer.append("<tbody>");
+		for (int r = firstRow; r < lastKeyRow; r++) {
+			appendRow(buffer, r, firstRow, lastKeyRow, firstColumn, lastKeyColumn, totalColumn);
+		}
+		if (totalRow) {
+			appendTotalRow(buffer, firstColumn, lastKeyColumn, totalColumn);
+		}
+		buffer.append("</tbody>");
+
+		buffer.append("</table>");
+
+		return buffer.toString();
+	}
+
+	/**
+	 * Retrieves the title of a field (for fields on ROW and DATA areas).
+	 */
+	protected String getTitle(PivotField pivotField) {
+		return PivotMarkupUtils.getTitle(pivotField);
+	}
+
+	/**
+	 * Converts a value to string, with the converter of the field (if any).
+	 */
+	protected String getValueString(Object value, PivotField pivotField) {
+		return PivotMarkupUtils.getValueString(this, value, pivotField);
+	}
+
+	private void appendHeaderRow(StringBuilder buffer, int i, int firstColumn, int lastColumn, boolean totalColumn) {
+		appendRowStart(buffer, null);
+
+		// row header (first columns)
+		for (PivotField rowField : rowFields) {
+			if (i < headerRowCount - 1) {
+				appendCell(buffer, "th", "empty", 1, 1, "");
+			} else {
+				appendCell(buffer, "th", "row-header", 1, 1, getTitle(rowField));
+			}
+		}
+
+		// column keys (a cell for each node on this level, cut to the window)
+		CompactTree columnsTree = getColumnsTree();
+		if (i < columnFields.size()) {
+			PivotField columnField = columnFields.get(i);
+			for (int c = firstColumn; c < lastColumn; c++) {
+				int node = getAncestor(columnsTree, columnsTree.getLeafNode(c), i + 1);
+				if ((c == firstColumn) || (columnsTree.getFirstLeaf(node) == c)) {
+					int end = Math.min(columnsTree.getFirstLeaf(node) + columnsTree.getLeafCount(node), lastColumn);
+					appendCell(buffer, "th", "col", (end - c) * dataFields.size(), 1,
+							getValueString(columnsTree.getValue(node), columnField));
+				}
+			}
+		} else {
+			for (int c = firstColumn; c < lastColumn; c++) {
+				for (PivotField dataField : dataFields) {
+					appendCell(buffer, "th", "col", 1, 1, getTitle(dataField));
+				}
+			}
+		}
+
+		if (totalColumn) {
+			if (i == 0) {
+				appendCell(buffer, "th", "grand-total", dataFields.size(), 1, GRAND_TOTAL);
+			} else if (i < columnFields.size()) {
+				appendCell(buffer, "th", "grand-total empty", dataFields.size(), 1, "");
+			} else {
+				for (PivotField dataField : dataFields) {
+					appendCell(buffer, "th", "grand-total", 1, 1, getTitle(dataField));
+				}
+			}
+		}
+
+		buffer.append("</tr>");
+	}
+
+	private void appendRow(StringBuilder buffer, int r, int firstRow, int lastRow, int firstColumn, int lastColumn,
+			boolean totalColumn) {
+		appendRowStart(buffer, null);
+
+		// row header (a cell on the first row of each node, cut to the window)
+		CompactTree rowsTree = getRowsTree();
+		int leaf = rowsTree.getLeafNode(r);
+		for (int depth = 1; depth <= rowFields.size(); depth++) {
+			int node = getAncestor(rowsTree, leaf, depth);
+			if ((r == firstRow) || (rowsTree.getFirstLeaf(node) == r)) {
+				int end = Math.min(rowsTree.getFirstLeaf(node) + rowsTree.getLeafCount(node), lastRow);
+				appendCell(buffer, "th", "row", 1, end - r, getValueString(rowsTree.getValue(node),
+						rowFields.get(depth - 1)));
+			}
+		}
+
+		PivotModel pivotModel = getModelObject();
+		int dataFieldCount = dataFields.size();
+		for (int c = firstColumn; c < lastColumn; c++) {
+			for (int d = 0; d < dataFieldCount; d++) {
+				appendCell(buffer, "td", "data", 1, 1, getValueString(pivotModel.getValueAt(d, r, c),
+						dataFields.get(d)));
+			}
+		}
+
+		if (totalColumn) {
+			PivotTotals totals = pivotModel.getTotals();
+			for (int d = 0; d < dataFieldCount; d++) {
+				appendCell(buffer, "td", "data grand-total", 1, 1, getValueString(totals.getRowTotal(d, r), null));
+			}
+		}
+
+		buffer.append("</tr>");
+	}
+
+	private void appendTotalRow(StringBuilder buffer, int firstColumn, int lastColumn, boolean totalColumn) {
+		appendRowStart(buffer, "grand-total");
+
+		appendCell(buffer, "th", "row-header", rowFields.size(), 1, GRAND_TOTAL);
+
+		PivotTotals totals = getModelObject().getTotals();
+		int dataFieldCount = dataFields.size();
+		for (int c = firstColumn; c < lastColumn; c++) {
+			for (int d = 0; d < dataFieldCount; d++) {
+				appendCell(buffer, "td", "data", 1, 1, getValueString(totals.getColumnTotal(d, c), null));
+			}
+		}
+
+		if (totalColumn) {
+			for (int d = 0; d < dataFieldCount; d++) {
+				appendCell(buffer, "td", "data", 1, 1, getValueString(totals.getGrandTotal(d), null));
+			}
+		}
+
+		buffer.append("</tr>");
+	}
+
+	private void appendRowStart(StringBuilder buffer, String cssClass) {
+		buffer.append("<tr");
+		if (cssClass != null) {
+			buffer.append(" class=\"").append(cssClass).append("\"");
+		}
+		buffer.append(" style=\"height: ").append(rowHeight).append("px;\">");
+	}
+
+	private void appendCell(StringBuilder buffer, String tag, String cssClass, int colspan, int rowspan,
+			String text) {
+		PivotMarkupUtils.appendCell(buffer, tag, cssClass, colspan, rowspan, text);
+	}
+
+	private void appendCol(StringBuilder buffer, int width) {
+		buffer.append("<col style=\"width: ").append(width).append("px;\"/>");
+	}
+
+	private int getTotalRowCount() {
+		return showColumnTotals ? rowCount + 1 : rowCount;
+	}
+
+	private int getTotalColumnCount() {
+		return showRowTotals ? columnCount + 1 : columnCount;
+	}
+
+	private CompactTree getRowsTree() {
+		return getModelObject().getRowsHeaderTree().getCompactTree();
+	}
+
+	private CompactTree getColumnsTree() {
+		return getModelObject().getColumnsHeaderTree().getCompactTree();
+	}
+
+	private static int getAncestor(CompactTree tree, int node, int depth) {
+		while (tree.getDepth(node) > depth) {
+			node = tree.getParent(node);
+		}
+
+		return node;
+	}
+
+}
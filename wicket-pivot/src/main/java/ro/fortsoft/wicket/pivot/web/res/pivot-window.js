@@ -0,0 +1,54 @@
+var PivotWindow = {
+
+	init: function(id, options) {
+		var viewport = $('#' + id);
+		var canvas = viewport.children('.pivot-window-canvas');
+		var content = viewport.children('.pivot-window-content');
+		var dataColumnWidth = Math.max(options.dataFieldCount, 1) * options.columnWidth;
+		var rowHeaderWidth = options.rowFieldCount * options.rowHeaderWidth;
+
+		// the canvas has the size of the whole table, so the scrollbars are right
+		canvas.css({
+			width: rowHeaderWidth + options.columnCount * dataColumnWidth,
+			height: (options.headerRowCount + options.rowCount) * options.rowHeight
+		});
+
+		var timer = null;
+		var fetch = function() {
+			timer = null;
+			var width = viewport[0].clientWidth;
+			var height = viewport[0].clientHeight;
+			var firstRow = Math.floor(viewport.scrollTop() / options.rowHeight);
+			var rowCount = Math.ceil(height / options.rowHeight) - options.headerRowCount + 1;
+			var firstColumn = Math.floor(viewport.scrollLeft() / dataColumnWidth);
+			var columnCount = Math.ceil((width - rowHeaderWidth) / dataColumnWidth) + 1;
+			options.callback(firstRow, Math.max(rowCount, 1), firstColumn, Math.max(columnCount, 1));
+		};
+
+		// the content (the rendered window) stays in the visible area
+		var place = function() {
+			content.css({
+				top: viewport.scrollTop(),
+				left: viewport.scrollLeft(),
+				width: viewport[0].clientWidth,
+				height: viewport[0].clientHeight
+			});
+		};
+
+		viewport.on('scroll', function() {
+			place();
+			if (timer != null) {
+				clearTimeout(timer);
+			}
+			timer = setTimeout(fetch, 50);
+		});
+
+		place();
+		fetch();
+	},
+
+	update: function(id, html) {
+		$('#' + id).children('.pivot-window-content').html(html);
+	}
+
+};
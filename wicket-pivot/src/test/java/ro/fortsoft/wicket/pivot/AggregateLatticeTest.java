@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.assertSamePivot;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.createDataSource;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.deserialize;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.serialize;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.setLayout;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ro.fortsoft.wicket.pivot.PivotModel.CalculationMode;
+
+/**
+ * Checks that a pivot answered from an {@link AggregateLattice} is the same
+ * as a pivot calculated from the data source.
+ *
+ * @author Decebal Suiu
+ */
+public class AggregateLatticeTest {
+
+	private static PivotDataSource dataSource;
+	private static AggregateLattice aggregateLattice;
+
+	@BeforeClass
+	public static void setUpClass() {
+		dataSource = createDataSource(5000, 11);
+
+		aggregateLattice = new AggregateLattice(dataSource)
+			.addDimensions("REGION", "SALESMAN", "YEAR")
+			.addDimensions("REGION", "MONTH");
+		for (String function : Aggregator.getFunctions()) {
+			aggregateLattice.addMeasure("SALES", function).addMeasure("COST", function);
+		}
+	}
+
+	@Test
+	public void testAggregators() {
+		for (String function : Aggregator.getFunctions()) {
+			assertSameLattice(new String[] { "REGION", "SALESMAN" }, new String[] { "YEAR" }, "SALES:" + function,
+					"COST:" + function);
+		}
+		assertTrue(aggregateLattice.isBuilt());
+	}
+
+	@Test
+	public void testCoarserCube() {
+		assertSameLattice(new String[] { "SALESMAN" }, new String[0], "SALES:sum", "COST:avg");
+		assertSameLattice(new String[] { "MONTH" }, new String[] { "REGION" }, "SALES:count", "COST:max");
+	}
+
+	@Test
+	public void testMissingDimension() {
+		// no cube has SALESMAN and MONTH, the rows are aggregated
+		assertSameLattice(new String[] { "SALESMAN" }, new String[] { "MONTH" }, "SALES:sum", "COST:min");
+	}
+
+	@Test
+	public void testSerialization() {
+		DefaultPivotModel pivotModel = new DefaultPivotModel(dataSource);
+		int size = serialize(pivotModel).length;
+		pivotModel.setAggregateLattice(aggregateLattice);
+		pivotModel.calculate();
+		pivotModel.setAggregateLattice(null);
+		int calculatedSize = serialize(pivotModel).length;
+		pivotModel.setAggregateLattice(aggregateLattice);
+
+		// only the id of the lattice is serialized
+		assertTrue(serialize(pivotModel).length < calculatedSize + 100);
+		DefaultPivotModel copy = (DefaultPivotModel) deserialize(serialize(pivotModel));
+		assertSame(aggregateLattice, copy.getAggregateLattice());
+
+		// a lattice serialized alone is built again
+		AggregateLattice latticeCopy = (AggregateLattice) deserialize(serialize(aggregateLattice));
+		assertFalse(latticeCopy.isBuilt());
+		assertTrue(serialize(aggregateLattice).length < size + 5000);
+	}
+
+	private void assertSameLattice(String[] rowFields, String[] columnFields, String... dataFields) {
+		DefaultPivotModel pivotModel = new DefaultPivotModel(dataSource);
+		pivotModel.setAggregateLattice(aggregateLattice);
+		pivotModel.setCalculationMode(CalculationMode.SINGLE_PASS);
+		pivotModel.setShowGrandTotalForColumn(true);
+		pivotModel.setShowGrandTotalForRow(true);
+		setLayout(pivotModel, rowFields, columnFields, dataFields);
+		pivotModel.calculate();
+
+		PivotModel expected = new DefaultPivotModel(dataSource);
+		expected.setCalculationMode(CalculationMode.CELL_SCAN);
+		expected.setShowGrandTotalForColumn(true);
+		expected.setShowGrandTotalForRow(true);
+		setLayout(expected, rowFields, columnFields, dataFields);
+		expected.calculate();
+
+		assertSamePivot(expected, pivotModel);
+	}
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * @author Decebal Suiu
+ */
+public class AggregatorTest {
+
+	@Test
+	public void testNewInstance() {
+		for (String function : Aggregator.getFunctions()) {
+			Aggregator aggregator = Aggregator.get(function);
+			aggregator.add(5);
+			Aggregator state = aggregator.newInstance();
+			assertNotSame(aggregator, state);
+			assertSame(aggregator.getClass(), state.getClass());
+			// the new instance is initialized
+			state.add(2);
+			assertEquals(Aggregator.get(function).add(2).getResult(), state.getResult());
+		}
+	}
+
+	@Test
+	public void testNewInstanceOfSubclass() {
+		Aggregator state = new Percent().newInstance();
+		assertSame(Percent.class, state.getClass());
+	}
+
+	public static class Percent extends Aggregator.Sum {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public String getFunction() {
+			return "percent";
+		}
+
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.assertSamePivot;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.createDataSource;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.deserialize;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.serialize;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.setLayout;
+
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ro.fortsoft.wicket.pivot.PivotModel.CalculationMode;
+
+/**
+ * Checks that the rows filtered with a {@link BitmapIndex} are the rows
+ * filtered by value.
+ *
+ * @author Decebal Suiu
+ */
+public class BitmapIndexTest {
+
+	private static final String[] ROW_FIELDS = { "REGION", "SALESMAN" };
+	private static final String[] COLUMN_FIELDS = { "YEAR" };
+
+	private static PivotDataSource dataSource;
+
+	@BeforeClass
+	public static void setUpClass() {
+		dataSource = createDataSource(5000, 23);
+	}
+
+	@Test
+	public void testCalculation() {
+		DefaultPivotModel pivotModel = createModel(new BitmapIndex(dataSource));
+		DefaultPivotModel expected = createModel(null);
+
+		assertSamePivot(expected, pivotModel);
+	}
+
+	@Test
+	public void testCellRows() {
+		DefaultPivotModel pivotModel = createModel(new BitmapIndex(dataSource));
+		DefaultPivotModel expected = createModel(null);
+
+		int rowCount = 0;
+		for (List<Object> rowKey : expected.getRowKeys()) {
+			for (List<Object> columnKey : expected.getColumnKeys()) {
+				BitSet rows = expected.getCellRows(rowKey, columnKey);
+				assertEquals(rows, pivotModel.getCellRows(rowKey, columnKey));
+				rowCount += rows.cardinality();
+			}
+		}
+		assertEquals(dataSource.getRowCount(), rowCount);
+	}
+
+	@Test
+	public void testSerialization() {
+		BitmapIndex bitmapIndex = new BitmapIndex(dataSource);
+		DefaultPivotModel pivotModel = createModel(bitmapIndex);
+		int size = serialize(pivotModel).length;
+		pivotModel.setBitmapIndex(null);
+
+		// only the id of the index is serialized
+		assertTrue(size < serialize(pivotModel).length + 100);
+		pivotModel.setBitmapIndex(bitmapIndex);
+		DefaultPivotModel copy = (DefaultPivotModel) deserialize(serialize(pivotModel));
+		assertSame(bitmapIndex, copy.getBitmapIndex());
+	}
+
+	private DefaultPivotModel createModel(BitmapIndex bitmapIndex) {
+		DefaultPivotModel pivotModel = new DefaultPivotModel(dataSource);
+		pivotModel.setBitmapIndex(bitmapIndex);
+		pivotModel.setCalculationMode(CalculationMode.CELL_SCAN);
+		pivotModel.setShowGrandTotalForColumn(true);
+		pivotModel.setShowGrandTotalForRow(true);
+		setLayout(pivotModel, ROW_FIELDS, COLUMN_FIELDS, "SALES:sum", "COST:avg");
+		pivotModel.calculate();
+
+		return pivotModel;
+	}
+
+}
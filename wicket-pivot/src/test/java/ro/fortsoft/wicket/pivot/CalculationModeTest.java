@@ -0,0 +1,124 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import static org.junit.Assert.assertEquals;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.addFieldCalculation;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.assertSamePivot;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.createDataSource;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.deserialize;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.serialize;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.setLayout;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ro.fortsoft.wicket.pivot.PivotModel.CalculationMode;
+
+/**
+ * Checks that all the calculation modes produce the same pivot table.
+ *
+ * @author Decebal Suiu
+ */
+public class CalculationModeTest {
+
+	private static PivotDataSource dataSource;
+
+	@BeforeClass
+	public static void setUpClass() {
+		dataSource = createDataSource(5000, 42);
+	}
+
+	@Test
+	public void testAggregators() {
+		for (String function : Aggregator.getFunctions()) {
+			assertSameModes(new String[] { "REGION", "SALESMAN" }, new String[] { "YEAR" }, "SALES:" + function,
+					"COST:" + function);
+		}
+	}
+
+	@Test
+	public void testOnlyRowFields() {
+		assertSameModes(new String[] { "REGION", "MONTH" }, new String[0], "SALES:sum", "COST:avg");
+	}
+
+	@Test
+	public void testOnlyColumnFields() {
+		assertSameModes(new String[0], new String[] { "YEAR", "SALESMAN" }, "SALES:max", "COST:count");
+	}
+
+	@Test
+	public void testFieldCalculations() {
+		for (String function : FieldCalculation.getFunctions()) {
+			PivotModel expected = createModel(CalculationMode.CELL_SCAN, function);
+			PivotModel singlePass = createModel(CalculationMode.SINGLE_PASS, function);
+			PivotModel parallel = createModel(CalculationMode.PARALLEL, function);
+
+			assertSamePivot(expected, singlePass);
+			assertSamePivot(expected, parallel);
+		}
+	}
+
+	@Test
+	public void testSerialization() {
+		for (CalculationMode calculationMode : CalculationMode.values()) {
+			PivotModel pivotModel = createModel(calculationMode, new String[] { "REGION", "SALESMAN" },
+					new String[] { "YEAR" }, "SALES:sum", "COST:avg");
+			PivotModel copy = (PivotModel) deserialize(serialize(pivotModel));
+
+			// the values are read without a calculation
+			AtomicInteger eventCount = new AtomicInteger();
+			copy.addPhaseListener(event -> eventCount.incrementAndGet());
+			assertSamePivot(pivotModel, copy);
+			assertEquals(0, eventCount.get());
+		}
+	}
+
+	private void assertSameModes(String[] rowFields, String[] columnFields, String... dataFields) {
+		PivotModel expected = createModel(CalculationMode.CELL_SCAN, rowFields, columnFields, dataFields);
+		PivotModel singlePass = createModel(CalculationMode.SINGLE_PASS, rowFields, columnFields, dataFields);
+		PivotModel parallel = createModel(CalculationMode.PARALLEL, rowFields, columnFields, dataFields);
+
+		assertSamePivot(expected, singlePass);
+		assertSamePivot(expected, parallel);
+	}
+
+	private PivotModel createModel(CalculationMode calculationMode, String[] rowFields, String[] columnFields,
+			String... dataFields) {
+		PivotModel pivotModel = new DefaultPivotModel(dataSource);
+		pivotModel.setCalculationMode(calculationMode);
+		pivotModel.setParallelism(4);
+		pivotModel.setShowGrandTotalForColumn(true);
+		pivotModel.setShowGrandTotalForRow(true);
+		setLayout(pivotModel, rowFields, columnFields, dataFields);
+		pivotModel.calculate();
+
+		return pivotModel;
+	}
+
+	private PivotModel createModel(CalculationMode calculationMode, String fieldCalculation) {
+		PivotModel pivotModel = new DefaultPivotModel(dataSource);
+		pivotModel.setCalculationMode(calculationMode);
+		pivotModel.setParallelism(4);
+		pivotModel.setShowGrandTotalForColumn(true);
+		pivotModel.setShowGrandTotalForRow(true);
+		setLayout(pivotModel, new String[] { "REGION" }, new String[] { "YEAR" }, "SALES:sum", "COST:sum");
+		addFieldCalculation(pivotModel, fieldCalculation, "SALES", "COST");
+		pivotModel.calculate();
+
+		return pivotModel;
+	}
+
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.assertSamePivot;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.createDataSource;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.setLayout;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ro.fortsoft.wicket.pivot.PivotModel.CalculationMode;
+import ro.fortsoft.wicket.pivot.tree.Tree;
+
+/**
+ * Checks that a calculation stops with a {@link CalculationCancelledException}
+ * when it's cancelled or its deadline passes, and that the model can be
+ * calculated again.
+ *
+ * @author Decebal Suiu
+ */
+public class CalculationProgressTest {
+
+	private static PivotDataSource rows;
+
+	@BeforeClass
+	public static void setUpClass() {
+		rows = createDataSource(20000, 17);
+	}
+
+	@Test
+	public void testTimeout() {
+		for (CalculationMode calculationMode : CalculationMode.values()) {
+			PivotModel pivotModel = createModel(new SlowDataSource(rows), calculationMode);
+			try {
+				pivotModel.calculate(10, TimeUnit.MILLISECONDS);
+				fail("The calculation of " + calculationMode + " didn't time out");
+			} catch (CalculationCancelledException e) {
+				assertTrue(e.isTimedOut());
+			}
+
+			// the partial results are discarded
+			pivotModel.calculate();
+			assertSamePivot(createExpectedModel(), pivotModel);
+		}
+	}
+
+	@Test
+	public void testCancel() {
+		PivotModel pivotModel = createModel(rows, CalculationMode.SINGLE_PASS);
+		CalculationProgress progress = new CalculationProgress();
+		progress.cancel();
+		try {
+			pivotModel.calculate(progress);
+			fail("The calculation wasn't cancelled");
+		} catch (CalculationCancelledException e) {
+			assertFalse(e.isTimedOut());
+		}
+	}
+
+	@Test
+	public void testDeadlineNotReached() {
+		PivotModel pivotModel = createModel(rows, CalculationMode.SINGLE_PASS);
+		pivotModel.calculate(1, TimeUnit.MINUTES);
+
+		assertSamePivot(createExpectedModel(), pivotModel);
+	}
+
+	@Test
+	public void testDefaultTimeout() {
+		// a model without progress support is checked after the calculation
+		PivotModel pivotModel = new SimplePivotModel(createModel(new SlowDataSource(rows), CalculationMode.CELL_SCAN));
+		try {
+			pivotModel.calculate(10, TimeUnit.MILLISECONDS);
+			fail("The calculation didn't time out");
+		} catch (CalculationCancelledException e) {
+			assertTrue(e.isTimedOut());
+		}
+	}
+
+	private PivotModel createModel(PivotDataSource dataSource, CalculationMode calculationMode) {
+		PivotModel pivotModel = new DefaultPivotModel(dataSource);
+		pivotModel.setCalculationMode(calculationMode);
+		pivotModel.setShowGrandTotalForColumn(true);
+		pivotModel.setShowGrandTotalForRow(true);
+		setLayout(pivotModel, new String[] { "REGION" }, new String[] { "YEAR" }, "SALES:sum");
+
+		return pivotModel;
+	}
+
+	private PivotModel createExpectedModel() {
+		PivotModel pivotModel = createModel(rows, CalculationMode.CELL_SCAN);
+		pivotModel.calculate();
+
+		return pivotModel;
+	}
+
+	/**
+	 * A model that implements only the abstract methods of {@link PivotModel}.
+	 */
+	private static class SimplePivotModel implements PivotModel {
+
+		private static final long serialVersionUID = 1L;
+
+		private PivotModel pivotModel;
+
+		public SimplePivotModel(PivotModel pivotModel) {
+			this.pivotModel = pivotModel;
+		}
+
+		@Override
+		public List<PivotField> getFields() {
+			return pivotModel.getFields();
+		}
+
+		@Override
+		public List<PivotField> getFields(PivotField.Area area) {
+			return pivotModel.getFields(area);
+		}
+
+		@Override
+		public PivotField getField(String name) {
+			return pivotModel.getField(name);
+		}
+
+		@Override
+		public PivotField getField(int index) {
+			return pivotModel.getField(index);
+		}
+
+		@Override
+		public PivotDataSource getDataSource() {
+			return pivotModel.getDataSource();
+		}
+
+		@Override
+		public void calculate() {
+			pivotModel.calculate();
+		}
+
+		@Override
+		public List<List<Object>> getRowKeys() {
+			return pivotModel.getRowKeys();
+		}
+
+		@Override
+		public List<List<Object>> getColumnKeys() {
+			return pivotModel.getColumnKeys();
+		}
+
+		@Override
+		public Object getValueAt(PivotField dataField, List<Object> rowKey, List<Object> columnKey) {
+			return pivotModel.getValueAt(dataField, rowKey, columnKey);
+		}
+
+		@Override
+		public boolean isShowGrandTotalForColumn() {
+			return pivotModel.isShowGrandTotalForColumn();
+		}
+
+		@Override
+		public void setShowGrandTotalForColumn(boolean showGrandTotalForColumn) {
+			pivotModel.setShowGrandTotalForColumn(showGrandTotalForColumn);
+		}
+
+		@Override
+		public boolean isShowGrandTotalForRow() {
+			return pivotModel.isShowGrandTotalForRow();
+		}
+
+		@Override
+		public void setShowGrandTotalForRow(boolean showGrandTotalForRow) {
+			pivotModel.setShowGrandTotalForRow(showGrandTotalForRow);
+		}
+
+		@Override
+		public Tree getColumnsHeaderTree() {
+			return pivotModel.getColumnsHeaderTree();
+		}
+
+		@Override
+		public Tree getRowsHeaderTree() {
+			return pivotModel.getRowsHeaderTree();
+		}
+
+		@Override
+		public boolean isAutoCalculate() {
+			return pivotModel.isAutoCalculate();
+		}
+
+		@Override
+		public void setAutoCalculate(boolean autoCalculate) {
+			pivotModel.setAutoCalculate(autoCalculate);
+		}
+
+	}
+
+	/**
+	 * A data source that sleeps while its first field is read.
+	 */
+	private static class SlowDataSource implements PivotDataSource {
+
+		private static final long serialVersionUID = 1L;
+
+		private PivotDataSource dataSource;
+
+		public SlowDataSource(PivotDataSource dataSource) {
+			this.dataSource = dataSource;
+		}
+
+		@Override
+		public String getFieldName(int fieldIndex) {
+			return dataSource.getFieldName(fieldIndex);
+		}
+
+		@Override
+		public int getFieldIndex(String fieldName) {
+			return dataSource.getFieldIndex(fieldName);
+		}
+
+		@Override
+		public Class<?> getFieldType(int fieldIndex) {
+			return dataSource.getFieldType(fieldIndex);
+		}
+
+		@Override
+		public int getFieldCount() {
+			return dataSource.getFieldCount();
+		}
+
+		@Override
+		public int getRowCount() {
+			return dataSource.getRowCount();
+		}
+
+		@Override
+		public Object getValueAt(int rowIndex, int fieldIndex) {
+			if ((fieldIndex == 0) && ((rowIndex % 500) == 0)) {
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			return dataSource.getValueAt(rowIndex, fieldIndex);
+		}
+
+		@Override
+		public Object getValueAt(int rowIndex, PivotField field) {
+			return getValueAt(rowIndex, getFieldIndex(field.getName()));
+		}
+
+	}
+
+}
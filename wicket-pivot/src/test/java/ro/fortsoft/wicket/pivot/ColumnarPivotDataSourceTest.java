@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.assertSamePivot;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.createDataSource;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.setLayout;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ro.fortsoft.wicket.pivot.PivotModel.CalculationMode;
+
+/**
+ * @author Decebal Suiu
+ */
+public class ColumnarPivotDataSourceTest {
+
+	private static PivotDataSource rows;
+
+	@BeforeClass
+	public static void setUpClass() {
+		rows = createDataSource(5000, 19);
+	}
+
+	@Test
+	public void testValues() {
+		ColumnarPivotDataSource dataSource = new ColumnarPivotDataSource(rows,
+				new HashSet<>(Arrays.asList("SALES", "COST")));
+		assertEquals(rows.getRowCount(), dataSource.getRowCount());
+		assertTrue(dataSource.isDictionaryEncoded(dataSource.getFieldIndex("REGION")));
+		assertFalse(dataSource.isDictionaryEncoded(dataSource.getFieldIndex("SALES")));
+		assertEquals(long.class, dataSource.getPrimitiveType(dataSource.getFieldIndex("SALES")));
+		assertEquals(double.class, dataSource.getPrimitiveType(dataSource.getFieldIndex("COST")));
+
+		for (int row = 0; row < rows.getRowCount(); row++) {
+			for (int i = 0; i < rows.getFieldCount(); i++) {
+				Object value = rows.getValueAt(row, i);
+				assertEquals(value, dataSource.getValueAt(row, i));
+				assertEquals(value == null, dataSource.isNullAt(row, i));
+				if (dataSource.isDictionaryEncoded(i)) {
+					assertEquals(dataSource.getCode(i, value), dataSource.getValueCode(row, i));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCalculationModes() {
+		ColumnarPivotDataSource dataSource = new ColumnarPivotDataSource(rows);
+		for (CalculationMode calculationMode : CalculationMode.values()) {
+			for (String function : Aggregator.getFunctions()) {
+				String[] rowFields = { "REGION", "SALESMAN" };
+				String[] columnFields = { "YEAR" };
+				PivotModel pivotModel = createModel(dataSource, calculationMode, rowFields, columnFields,
+						"SALES:" + function, "COST:" + function);
+				PivotModel expected = createModel(rows, CalculationMode.CELL_SCAN, rowFields, columnFields,
+						"SALES:" + function, "COST:" + function);
+
+				assertSamePivot(expected, pivotModel);
+			}
+		}
+	}
+
+	private PivotModel createModel(PivotDataSource dataSource, CalculationMode calculationMode, String[] rowFields,
+			String[] columnFields, String... dataFields) {
+		PivotModel pivotModel = new DefaultPivotModel(dataSource);
+		pivotModel.setCalculationMode(calculationMode);
+		pivotModel.setShowGrandTotalForColumn(true);
+		pivotModel.setShowGrandTotalForRow(true);
+		setLayout(pivotModel, rowFields, columnFields, dataFields);
+		pivotModel.calculate();
+
+		return pivotModel;
+	}
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.assertSamePivot;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.createDataSource;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.setLayout;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ro.fortsoft.wicket.pivot.PivotModel.CalculationMode;
+
+/**
+ * Checks that a pivot aggregated in a single pass over an iterator is the
+ * same as a pivot calculated from the rows.
+ *
+ * @author Decebal Suiu
+ */
+public class IteratorPivotDataSourceTest {
+
+	private static PivotDataSource rows;
+	private static IteratorPivotDataSource dataSource;
+
+	@BeforeClass
+	public static void setUpClass() {
+		rows = createDataSource(5000, 13);
+
+		dataSource = new IteratorPivotDataSource(new RowList(rows));
+		for (int i = 0; i < rows.getFieldCount(); i++) {
+			dataSource.addField(rows.getFieldName(i), rows.getFieldType(i));
+		}
+	}
+
+	@Test
+	public void testAggregators() {
+		for (String function : Aggregator.getFunctions()) {
+			assertSameAggregation(new String[] { "REGION", "SALESMAN" }, new String[] { "YEAR" }, "SALES:" + function,
+					"COST:" + function);
+		}
+		assertEquals(rows.getRowCount(), dataSource.getRowCount());
+		// the rows read by the last pass are not a known row count
+		assertEquals(-1, PivotUtils.getKnownRowCount(dataSource));
+	}
+
+	@Test
+	public void testChangeLayout() {
+		PivotModel pivotModel = new DefaultPivotModel(dataSource);
+		pivotModel.setCalculationMode(CalculationMode.SINGLE_PASS);
+		pivotModel.setShowGrandTotalForColumn(true);
+		pivotModel.setShowGrandTotalForRow(true);
+		setLayout(pivotModel, new String[] { "REGION" }, new String[] { "YEAR", "MONTH" }, "SALES:sum");
+		pivotModel.calculate();
+		setLayout(pivotModel, new String[] { "MONTH" }, new String[] { "SALESMAN" }, "COST:avg");
+		pivotModel.calculate();
+
+		assertSamePivot(createExpectedModel(new String[] { "MONTH" }, new String[] { "SALESMAN" }, "COST:avg"),
+				pivotModel);
+	}
+
+	@Test
+	public void testRandomAccess() {
+		DefaultPivotModel pivotModel = new DefaultPivotModel(dataSource);
+		setLayout(pivotModel, new String[] { "REGION" }, new String[] { "YEAR" }, "SALES:sum");
+		try {
+			pivotModel.setCalculationMode(CalculationMode.CELL_SCAN);
+			fail("The rows cannot be scanned by cell");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		try {
+			pivotModel.getRowsHeaderTree();
+			fail("The header trees are created by the calculation");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		pivotModel.calculate();
+		assertNotNull(pivotModel.getRowsHeaderTree());
+		assertNotNull(pivotModel.getColumnsHeaderTree());
+	}
+
+	private void assertSameAggregation(String[] rowFields, String[] columnFields, String... dataFields) {
+		PivotModel pivotModel = new DefaultPivotModel(dataSource);
+		pivotModel.setCalculationMode(CalculationMode.SINGLE_PASS);
+		pivotModel.setShowGrandTotalForColumn(true);
+		pivotModel.setShowGrandTotalForRow(true);
+		setLayout(pivotModel, rowFields, columnFields, dataFields);
+		pivotModel.calculate();
+
+		assertSamePivot(createExpectedModel(rowFields, columnFields, dataFields), pivotModel);
+	}
+
+	private PivotModel createExpectedModel(String[] rowFields, String[] columnFields, String... dataFields) {
+		PivotModel pivotModel = new DefaultPivotModel(rows);
+		pivotModel.setCalculationMode(CalculationMode.CELL_SCAN);
+		pivotModel.setShowGrandTotalForColumn(true);
+		pivotModel.setShowGrandTotalForRow(true);
+		setLayout(pivotModel, rowFields, columnFields, dataFields);
+		pivotModel.calculate();
+
+		return pivotModel;
+	}
+
+	/**
+	 * Iterates over a copy of the rows of a data source.
+	 */
+	private static class RowList implements IteratorPivotDataSource.RowIteratorFactory {
+
+		private static final long serialVersionUID = 1L;
+
+		private List<Object[]> rows;
+
+		public RowList(PivotDataSource dataSource) {
+			rows = new ArrayList<>();
+			for (int row = 0; row < dataSource.getRowCount(); row++) {
+				Object[] values = new Object[dataSource.getFieldCount()];
+				for (int i = 0; i < values.length; i++) {
+					values[i] = dataSource.getValueAt(row, i);
+				}
+				rows.add(values);
+			}
+		}
+
+		@Override
+		public Iterator<Object[]> iterator() {
+			return rows.iterator();
+		}
+
+	}
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.assertSamePivot;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.createDataSource;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.setLayout;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ro.fortsoft.wicket.pivot.PivotModel.CalculationMode;
+import ro.fortsoft.wicket.pivot.PivotPhaseEvent.Phase;
+
+/**
+ * Checks that a {@link JdbcPivotModel} (aggregation in an embedded Derby
+ * database or in a single pass over the rows) produces the same pivot table
+ * as a {@link DefaultPivotModel} over the loaded rows.
+ *
+ * @author Decebal Suiu
+ */
+public class JdbcPivotModelTest {
+
+	private static final String URL = "jdbc:derby:memory:pivot";
+
+	private static PivotDataSource rows;
+
+	private JdbcPivotDataSource dataSource;
+
+	@BeforeClass
+	public static void setUpClass() throws SQLException {
+		System.setProperty("derby.stream.error.file", "target/derby.log");
+
+		PivotDataSource dataSource = createDataSource(3000, 3);
+		try (Connection connection = DriverManager.getConnection(URL + ";create=true");
+				Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE STATISTIC (REGION VARCHAR(20), SALESMAN VARCHAR(20), \"YEAR\" INTEGER, "
+					+ "\"MONTH\" INTEGER, SALES INTEGER, COST DOUBLE)");
+			try (PreparedStatement insert = connection.prepareStatement("INSERT INTO STATISTIC VALUES (?, ?, ?, ?, ?, ?)")) {
+				for (int row = 0; row < dataSource.getRowCount(); row++) {
+					for (int i = 0; i < dataSource.getFieldCount(); i++) {
+						insert.setObject(i + 1, dataSource.getValueAt(row, i), getSqlType(dataSource.getFieldType(i)));
+					}
+					insert.addBatch();
+				}
+				insert.executeBatch();
+			}
+
+			// 9 million rows, slow to aggregate
+			statement.execute("CREATE VIEW LARGE_STATISTIC AS SELECT A.REGION, B.SALESMAN, A.SALES "
+					+ "FROM STATISTIC A, STATISTIC B");
+
+			try (ResultSet resultSet = statement.executeQuery("SELECT * FROM STATISTIC")) {
+				rows = new ResultSetPivotDataSource(resultSet);
+			}
+		}
+	}
+
+	@AfterClass
+	public static void tearDownClass() {
+		try {
+			DriverManager.getConnection(URL + ";drop=true");
+		} catch (SQLException e) {
+			// the database is dropped with an exception
+		}
+	}
+
+	@Before
+	public void setUp() throws SQLException {
+		dataSource = new JdbcPivotDataSource(() -> DriverManager.getConnection(URL), "STATISTIC");
+	}
+
+	@Test
+	public void testPushDown() {
+		for (String function : Aggregator.getFunctions()) {
+			JdbcPivotModel pivotModel = new JdbcPivotModel(dataSource);
+			assertSameModels(pivotModel, new String[] { "REGION", "SALESMAN" }, new String[] { "YEAR" },
+					"SALES:" + function, "COST:" + function);
+			assertTrue(pivotModel.isPushedDown(pivotModel.getField("SALES")));
+		}
+		assertFalse(dataSource.isLoaded());
+	}
+
+	@Test
+	public void testRollUp() {
+		JdbcPivotModel pivotModel = new JdbcPivotModel(dataSource);
+		AtomicInteger queryCount = new AtomicInteger();
+		assertFalse(pivotModel.hasPhaseListeners());
+		pivotModel.addPhaseListener(event -> {
+			if (event.getPhase() == Phase.QUERY) {
+				queryCount.incrementAndGet();
+			}
+		});
+		assertTrue(pivotModel.hasPhaseListeners());
+
+		assertSameModels(pivotModel, new String[] { "REGION", "SALESMAN" }, new String[] { "YEAR", "MONTH" },
+				"SALES:sum", "COST:avg");
+		assertSameModels(pivotModel, new String[] { "REGION" }, new String[] { "YEAR", "SALESMAN" }, "SALES:sum",
+				"COST:avg");
+		assertSameModels(pivotModel, new String[] { "SALESMAN" }, new String[0], "SALES:sum", "COST:avg");
+		assertEquals(1, queryCount.get());
+		assertFalse(dataSource.isLoaded());
+	}
+
+	@Test
+	public void testStreaming() {
+		JdbcPivotModel pivotModel = new JdbcPivotModel(dataSource);
+		setLayout(pivotModel, new String[] { "REGION" }, new String[] { "YEAR" }, "SALES:sum", "COST:max");
+		pivotModel.getField("SALES").setAggregator(new Total());
+		assertFalse(pivotModel.isPushedDown(pivotModel.getField("SALES")));
+		pivotModel.setShowGrandTotalForColumn(true);
+		pivotModel.setShowGrandTotalForRow(true);
+		pivotModel.calculate();
+
+		PivotModel expected = createExpectedModel(new String[] { "REGION" }, new String[] { "YEAR" }, "SALES:sum",
+				"COST:max");
+		assertSamePivot(expected, pivotModel);
+		assertFalse(dataSource.isLoaded());
+		assertEquals(rows.getRowCount(), dataSource.getKnownRowCount());
+	}
+
+	@Test
+	public void testQueryTimeout() throws SQLException {
+		JdbcPivotModel pivotModel = new JdbcPivotModel(
+				new JdbcPivotDataSource(() -> DriverManager.getConnection(URL), "LARGE_STATISTIC"));
+		setLayout(pivotModel, new String[] { "REGION", "SALESMAN" }, new String[0], "SALES:sum");
+		long start = System.currentTimeMillis();
+		try {
+			pivotModel.calculate(100, TimeUnit.MILLISECONDS);
+			fail("The query didn't time out");
+		} catch (CalculationCancelledException e) {
+			assertTrue(e.isTimedOut());
+		}
+		// the query timeout is in seconds
+		assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+
+	@Test
+	public void testCancel() {
+		JdbcPivotModel pivotModel = new JdbcPivotModel(dataSource);
+		setLayout(pivotModel, new String[] { "REGION" }, new String[0], "SALES:sum");
+		CalculationProgress progress = new CalculationProgress();
+		progress.cancel();
+		try {
+			pivotModel.calculate(progress);
+			fail("The calculation wasn't cancelled");
+		} catch (CalculationCancelledException e) {
+			assertFalse(e.isTimedOut());
+		}
+	}
+
+	private void assertSameModels(PivotModel pivotModel, String[] rowFields, String[] columnFields,
+			String... dataFields) {
+		setLayout(pivotModel, rowFields, columnFields, dataFields);
+		pivotModel.setShowGrandTotalForColumn(true);
+		pivotModel.setShowGrandTotalForRow(true);
+		pivotModel.calculate();
+
+		assertSamePivot(createExpectedModel(rowFields, columnFields, dataFields), pivotModel);
+	}
+
+	private PivotModel createExpectedModel(String[] rowFields, String[] columnFields, String... dataFields) {
+		PivotModel pivotModel = new DefaultPivotModel(rows);
+		pivotModel.setCalculationMode(CalculationMode.CELL_SCAN);
+		pivotModel.setShowGrandTotalForColumn(true);
+		pivotModel.setShowGrandTotalForRow(true);
+		setLayout(pivotModel, rowFields, columnFields, dataFields);
+		pivotModel.calculate();
+
+		return pivotModel;
+	}
+
+	private static int getSqlType(Class<?> type) {
+		if (type == Integer.class) {
+			return java.sql.Types.INTEGER;
+		} else if (type == Double.class) {
+			return java.sql.Types.DOUBLE;
+		}
+
+		return java.sql.Types.VARCHAR;
+	}
+
+	/**
+	 * A sum that is not a built-in aggregator, so it's not pushed down.
+	 */
+	public static class Total extends Aggregator.Sum {
+
+		private static final long serialVersionUID = 1L;
+
+	}
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.addFieldCalculation;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.assertSamePivot;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.createDataSource;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.setLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ro.fortsoft.wicket.pivot.PivotModel.CalculationMode;
+
+/**
+ * Checks that a pivot recalculated after a change of the DATA fields only
+ * (the same ROW and COLUMN fields) is the same as a pivot calculated from
+ * scratch.
+ *
+ * @author Decebal Suiu
+ */
+public class MeasureUpdateTest {
+
+	private static final String[] ROW_FIELDS = { "REGION", "SALESMAN" };
+	private static final String[] COLUMN_FIELDS = { "YEAR" };
+
+	private PivotDataSource dataSource;
+	private PivotModel pivotModel;
+
+	@Before
+	public void setUp() {
+		dataSource = createDataSource(5000, 5);
+
+		pivotModel = new DefaultPivotModel(dataSource);
+		pivotModel.setCalculationMode(CalculationMode.SINGLE_PASS);
+		pivotModel.setShowGrandTotalForColumn(true);
+		pivotModel.setShowGrandTotalForRow(true);
+		setLayout(pivotModel, ROW_FIELDS, COLUMN_FIELDS, "SALES:sum");
+		pivotModel.calculate();
+	}
+
+	@Test
+	public void testChangeAggregator() {
+		assertRecalculation("SALES:avg");
+		assertRecalculation("SALES:max");
+	}
+
+	@Test
+	public void testAddMeasure() {
+		assertRecalculation("SALES:sum", "COST:min");
+		assertRecalculation("SALES:sum", "COST:min", "SALES:count");
+	}
+
+	@Test
+	public void testRemoveMeasure() {
+		assertRecalculation("SALES:sum", "COST:avg");
+		assertRecalculation("COST:avg");
+	}
+
+	@Test
+	public void testAddFieldCalculation() {
+		setLayout(pivotModel, ROW_FIELDS, COLUMN_FIELDS, "SALES:sum", "COST:sum");
+		pivotModel.calculate();
+		addFieldCalculation(pivotModel, FieldCalculation.PERCENT_OF, "SALES", "COST");
+		pivotModel.calculate();
+
+		PivotModel expected = createExpectedModel("SALES:sum", "COST:sum");
+		addFieldCalculation(expected, FieldCalculation.PERCENT_OF, "SALES", "COST");
+		expected.calculate();
+
+		assertSamePivot(expected, pivotModel);
+	}
+
+	private void assertRecalculation(String... dataFields) {
+		setLayout(pivotModel, ROW_FIELDS, COLUMN_FIELDS, dataFields);
+		pivotModel.calculate();
+
+		PivotModel expected = createExpectedModel(dataFields);
+		expected.calculate();
+
+		assertSamePivot(expected, pivotModel);
+	}
+
+	private PivotModel createExpectedModel(String... dataFields) {
+		PivotModel expected = new DefaultPivotModel(dataSource);
+		expected.setCalculationMode(CalculationMode.CELL_SCAN);
+		expected.setShowGrandTotalForColumn(true);
+		expected.setShowGrandTotalForRow(true);
+		setLayout(expected, ROW_FIELDS, COLUMN_FIELDS, dataFields);
+
+		return expected;
+	}
+
+}
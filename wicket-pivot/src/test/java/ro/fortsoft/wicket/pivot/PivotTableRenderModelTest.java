@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import static org.junit.Assert.assertEquals;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.addFieldCalculation;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.createDataSource;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.setLayout;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ro.fortsoft.wicket.pivot.PivotTableRenderModel.GrandTotalValueRenderCell;
+import ro.fortsoft.wicket.pivot.PivotTableRenderModel.RenderCell;
+import ro.fortsoft.wicket.pivot.PivotTableRenderModel.RenderRow;
+
+/**
+ * @author Decebal Suiu
+ */
+public class PivotTableRenderModelTest {
+
+	@Test
+	public void testSameCellsAsWalker() throws IOException {
+		PivotModel pivotModel = new DefaultPivotModel(createDataSource(2000, 7));
+		pivotModel.setShowGrandTotalForColumn(true);
+		pivotModel.setShowGrandTotalForRow(true);
+		setLayout(pivotModel, new String[] { "REGION", "SALESMAN" }, new String[] { "YEAR", "MONTH" }, "SALES:sum",
+				"COST:avg");
+		addFieldCalculation(pivotModel, FieldCalculation.PERCENT_OF, "SALES", "COST");
+		pivotModel.calculate();
+
+		final List<Object> expected = new ArrayList<>();
+		PivotTableWalker.walk(pivotModel, (cellType, column, value, field, colspan, rowspan) -> {
+			expected.add((value instanceof Number) ? ((Number) value).doubleValue() : value);
+			expected.add(colspan);
+			expected.add(rowspan);
+		});
+
+		List<Object> actual = new ArrayList<>();
+		int grandTotalCount = 0;
+		for (RenderRow renderRow : PivotTableRenderModel.create(pivotModel).getAllRenderRows()) {
+			for (RenderCell cell : renderRow.getRenderCells()) {
+				Object value = cell.getRawValue();
+				actual.add((value instanceof Number) ? ((Number) value).doubleValue() : value);
+				actual.add(cell.getColspan());
+				actual.add(cell.getRowspan());
+				if (cell instanceof GrandTotalValueRenderCell) {
+					grandTotalCount++;
+				}
+			}
+		}
+
+		assertEquals(expected, actual);
+		// a grand total column and a grand total row
+		int rowCount = pivotModel.getRowKeys().size();
+		int columnCount = pivotModel.getColumnKeys().size();
+		assertEquals(3 * (rowCount + columnCount + 1), grandTotalCount);
+	}
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the data sources and the layouts used by the tests and compares two
+ * calculated pivots, cell by cell (grand totals included).
+ *
+ * @author Decebal Suiu
+ */
+public class PivotTestUtils {
+
+	private PivotTestUtils() {
+	}
+
+	/**
+	 * Creates a data source with nulls in all the fields and a skewed SALESMAN.
+	 */
+	public static SyntheticPivotDataSource createDataSource(int rowCount, long seed) {
+		SyntheticPivotDataSource dataSource = new SyntheticPivotDataSource(rowCount, seed);
+		dataSource.addField("REGION", String.class, 4).setNullRatio(0.05);
+		dataSource.addField("SALESMAN", String.class, 12).setZipfExponent(1.1).setNullRatio(0.1);
+		dataSource.addField("YEAR", Integer.class).setValues(2010, 2011, 2012, 2013);
+		dataSource.addField("MONTH", Integer.class, 12);
+		dataSource.addField("SALES", Integer.class, 10000).setNullRatio(0.05);
+		dataSource.addField("COST", Double.class, 5000).setNullRatio(0.05);
+
+		return dataSource;
+	}
+
+	/**
+	 * Puts the fields on the areas, all the other fields are unused. A data
+	 * field is given as "NAME:function" (see {@link Aggregator#getFunctions()}).
+	 */
+	public static void setLayout(PivotModel pivotModel, String[] rowFields, String[] columnFields,
+			String... dataFields) {
+		for (PivotField field : pivotModel.getFields()) {
+			field.setArea(PivotField.Area.UNUSED);
+		}
+		for (int i = 0; i < rowFields.length; i++) {
+			pivotModel.getField(rowFields[i]).setArea(PivotField.Area.ROW).setAreaIndex(i);
+		}
+		for (int i = 0; i < columnFields.length; i++) {
+			pivotModel.getField(columnFields[i]).setArea(PivotField.Area.COLUMN).setAreaIndex(i);
+		}
+		for (int i = 0; i < dataFields.length; i++) {
+			String[] tokens = dataFields[i].split(":");
+			PivotField field = pivotModel.getField(tokens[0]);
+			field.setArea(PivotField.Area.DATA).setAreaIndex(i);
+			field.setAggregator(Aggregator.get(tokens[1]));
+		}
+	}
+
+	/**
+	 * Adds a DATA field calculated from two fields (like the "Add calculation" action).
+	 */
+	public static PivotField addFieldCalculation(PivotModel pivotModel, String function, String fieldA,
+			String fieldB) {
+		List<PivotField> fields = pivotModel.getFields();
+		PivotField field = new PivotField("", fields.size());
+		field.setArea(PivotField.Area.DATA).setAreaIndex(pivotModel.getFields(PivotField.Area.DATA).size());
+		field.setType(Double.class);
+		field.setTitle("Calculation");
+		field.setAggregator(null);
+		field.setFieldCalculation(FieldCalculation.get(function));
+		field.getFieldCalculation().setFieldA(pivotModel.getField(fieldA));
+		field.getFieldCalculation().setFieldB(pivotModel.getField(fieldB));
+		fields.add(field);
+
+		return field;
+	}
+
+	/**
+	 * Asserts that two calculated pivots have the same keys and the same
+	 * cells. The decimal values can differ by a rounding error (the parallel
+	 * and the database aggregations add the values in another order).
+	 */
+	public static void assertSamePivot(PivotModel expected, PivotModel actual) {
+		assertEquals("row keys", expected.getRowKeys(), actual.getRowKeys());
+		assertEquals("column keys", expected.getColumnKeys(), actual.getColumnKeys());
+
+		List<Object> expectedCells = getCells(expected);
+		List<Object> actualCells = getCells(actual);
+		assertEquals("cell count", expectedCells.size(), actualCells.size());
+		for (int i = 0; i < expectedCells.size(); i++) {
+			assertSameValue("cell " + i, expectedCells.get(i), actualCells.get(i));
+		}
+	}
+
+	public static void assertSameValue(String message, Object expected, Object actual) {
+		if ((expected instanceof Double) && (actual instanceof Double)) {
+			double expectedValue = (Double) expected;
+			double actualValue = (Double) actual;
+			double delta = 1e-9 * Math.max(1, Math.abs(expectedValue));
+			assertTrue(message + ": expected " + expected + " but was " + actual,
+					Math.abs(expectedValue - actualValue) <= delta);
+		} else {
+			assertEquals(message, expected, actual);
+		}
+	}
+
+	public static byte[] serialize(Object object) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+			output.writeObject(object);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	public static Object deserialize(byte[] bytes) {
+		try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return input.readObject();
+		} catch (IOException | ClassNotFoundException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/*
+	 * Retrieves the type and the value of all the cells of the pivot table.
+	 */
+	private static List<Object> getCells(PivotModel pivotModel) {
+		final List<Object> cells = new ArrayList<>();
+		try {
+			PivotTableWalker.walk(pivotModel, (cellType, column, value, field, colspan, rowspan) -> {
+				cells.add(cellType);
+				cells.add(value);
+			});
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		return cells;
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import static org.junit.Assert.assertEquals;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.addFieldCalculation;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.createDataSource;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.setLayout;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ro.fortsoft.wicket.pivot.PivotModel.CalculationMode;
+
+/**
+ * @author Decebal Suiu
+ */
+public class PivotTotalsTest {
+
+	private static PivotDataSource dataSource;
+
+	@BeforeClass
+	public static void setUpClass() {
+		dataSource = createDataSource(5000, 42);
+	}
+
+	@Test
+	public void testTotals() {
+		for (CalculationMode calculationMode : CalculationMode.values()) {
+			PivotModel pivotModel = new DefaultPivotModel(dataSource);
+			pivotModel.setCalculationMode(calculationMode);
+			setLayout(pivotModel, new String[] { "REGION", "SALESMAN" }, new String[] { "YEAR" }, "SALES:sum",
+					"COST:avg");
+			addFieldCalculation(pivotModel, FieldCalculation.PERCENT_OF, "SALES", "COST");
+			pivotModel.calculate();
+
+			// the totals accumulated during the calculation are the totals of the values
+			assertSameTotals(PivotTotals.calculate(pivotModel), pivotModel.getTotals());
+			assertEquals(getSum(pivotModel.getField("SALES").getIndex()), pivotModel.getTotals().getGrandTotal(0),
+					1e-6);
+		}
+	}
+
+	private static void assertSameTotals(PivotTotals expected, PivotTotals actual) {
+		assertEquals(expected.getRowCount(), actual.getRowCount());
+		assertEquals(expected.getColumnCount(), actual.getColumnCount());
+		for (int d = 0; d < 3; d++) {
+			for (int r = 0; r < expected.getRowCount(); r++) {
+				assertEquals(expected.getRowTotal(d, r), actual.getRowTotal(d, r), 1e-6);
+			}
+			for (int c = 0; c < expected.getColumnCount(); c++) {
+				assertEquals(expected.getColumnTotal(d, c), actual.getColumnTotal(d, c), 1e-6);
+			}
+			assertEquals(expected.getGrandTotal(d), actual.getGrandTotal(d), 1e-6);
+		}
+	}
+
+	private static double getSum(int fieldIndex) {
+		double sum = 0;
+		for (int i = 0; i < dataSource.getRowCount(); i++) {
+			Object value = dataSource.getValueAt(i, fieldIndex);
+			if (value != null) {
+				sum += ((Number) value).doubleValue();
+			}
+		}
+
+		return sum;
+	}
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot;
+
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.assertSamePivot;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.createDataSource;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.setLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ro.fortsoft.wicket.pivot.PivotModel.CalculationMode;
+
+/**
+ * Checks that a pivot rolled up from the previous cube (a field removed or
+ * moved) is the same as a pivot calculated from scratch.
+ *
+ * @author Decebal Suiu
+ */
+public class RollUpTest {
+
+	private PivotDataSource dataSource;
+	private PivotModel pivotModel;
+
+	@Before
+	public void setUp() {
+		dataSource = createDataSource(5000, 7);
+
+		pivotModel = new DefaultPivotModel(dataSource);
+		pivotModel.setCalculationMode(CalculationMode.SINGLE_PASS);
+		pivotModel.setShowGrandTotalForColumn(true);
+		pivotModel.setShowGrandTotalForRow(true);
+		setLayout(pivotModel, new String[] { "REGION", "SALESMAN" }, new String[] { "YEAR", "MONTH" }, "SALES:sum",
+				"COST:avg");
+		pivotModel.calculate();
+	}
+
+	@Test
+	public void testRemoveRowField() {
+		assertRecalculation(new String[] { "REGION" }, new String[] { "YEAR", "MONTH" }, "SALES:sum", "COST:avg");
+	}
+
+	@Test
+	public void testRemoveColumnField() {
+		assertRecalculation(new String[] { "REGION", "SALESMAN" }, new String[] { "YEAR" }, "SALES:sum", "COST:avg");
+	}
+
+	@Test
+	public void testMoveField() {
+		assertRecalculation(new String[] { "REGION" }, new String[] { "YEAR", "SALESMAN" }, "SALES:sum", "COST:avg");
+	}
+
+	@Test
+	public void testReorderFields() {
+		assertRecalculation(new String[] { "SALESMAN", "REGION" }, new String[] { "MONTH", "YEAR" }, "SALES:sum",
+				"COST:avg");
+	}
+
+	@Test
+	public void testSuccessiveRollUps() {
+		assertRecalculation(new String[] { "REGION", "SALESMAN" }, new String[] { "YEAR" }, "SALES:sum", "COST:avg");
+		assertRecalculation(new String[] { "SALESMAN" }, new String[] { "YEAR" }, "SALES:sum", "COST:avg");
+		assertRecalculation(new String[] { "SALESMAN" }, new String[0], "SALES:sum", "COST:avg");
+	}
+
+	@Test
+	public void testRollUpAndChangeMeasures() {
+		assertRecalculation(new String[] { "REGION" }, new String[] { "YEAR" }, "SALES:min", "COST:sum");
+	}
+
+	@Test
+	public void testAddField() {
+		assertRecalculation(new String[] { "REGION", "SALESMAN" }, new String[] { "MONTH" }, "SALES:sum", "COST:avg");
+		assertRecalculation(new String[] { "REGION", "SALESMAN" }, new String[] { "YEAR", "MONTH" }, "SALES:sum",
+				"COST:avg");
+	}
+
+	private void assertRecalculation(String[] rowFields, String[] columnFields, String... dataFields) {
+		setLayout(pivotModel, rowFields, columnFields, dataFields);
+		pivotModel.calculate();
+
+		PivotModel expected = new DefaultPivotModel(dataSource);
+		expected.setCalculationMode(CalculationMode.CELL_SCAN);
+		expected.setShowGrandTotalForColumn(true);
+		expected.setShowGrandTotalForRow(true);
+		setLayout(expected, rowFields, columnFields, dataFields);
+		expected.calculate();
+
+		assertSamePivot(expected, pivotModel);
+	}
+
+}
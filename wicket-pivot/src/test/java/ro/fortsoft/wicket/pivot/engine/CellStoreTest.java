@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Decebal Suiu
+ */
+public class CellStoreTest {
+
+	@Test
+	public void testDense() {
+		CellStore cellStore = new CellStore(100, 50, 2);
+		assertTrue(cellStore.isDense());
+		assertSameValues(cellStore, new HashMap<String, Number>(), 1, 20000);
+	}
+
+	@Test
+	public void testSparse() {
+		CellStore cellStore = new CellStore(50000, 50000, 2, 1000);
+		assertFalse(cellStore.isDense());
+		assertSameValues(cellStore, new HashMap<String, Number>(), 1, 20000);
+	}
+
+	@Test
+	public void testExpectedValueCount() {
+		assertTrue(new CellStore(1000, 1000, 1, 500000).isDense());
+		assertFalse(new CellStore(1000, 1000, 1, 1000).isDense());
+		assertFalse(new CellStore(1000, 1000, 1).isDense());
+	}
+
+	@Test
+	public void testSerialization() throws Exception {
+		CellStore[] cellStores = { new CellStore(100, 50, 2), new CellStore(50000, 50000, 2, 1000) };
+		for (CellStore cellStore : cellStores) {
+			Map<String, Number> expected = new HashMap<>();
+			assertSameValues(cellStore, expected, 1, 5000);
+			CellStore copy = copy(cellStore);
+			assertEquals(cellStore.isDense(), copy.isDense());
+			assertSameValues(copy, expected, 2, 0);
+			// the copy can be changed
+			assertSameValues(copy, expected, 2, 5000);
+		}
+	}
+
+	private CellStore copy(CellStore cellStore) throws IOException, ClassNotFoundException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+			output.writeObject(cellStore);
+		}
+		try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			return (CellStore) input.readObject();
+		}
+	}
+
+	/*
+	 * Sets, replaces and clears random cells (in the store and in the map of
+	 * the expected values) and compares the store with the map.
+	 */
+	private void assertSameValues(CellStore cellStore, Map<String, Number> expected, long seed,
+			int operationCount) {
+		Random random = new Random(seed);
+		int rowCount = Math.min(cellStore.getRowCount(), 200);
+		int columnCount = Math.min(cellStore.getColumnCount(), 200);
+		for (int i = 0; i < operationCount; i++) {
+			int row = random.nextInt(rowCount) * (cellStore.getRowCount() / rowCount);
+			int column = random.nextInt(columnCount) * (cellStore.getColumnCount() / columnCount);
+			int field = random.nextInt(2);
+			Number value;
+			int kind = random.nextInt(10);
+			if (kind < 2) {
+				value = null;
+			} else if (field == 0) {
+				value = random.nextDouble();
+			} else {
+				value = (kind == 9) ? new BigDecimal(random.nextInt(1000)).movePointLeft(2) : random.nextInt(1000);
+			}
+
+			cellStore.setValue(row, column, field, value);
+			String key = row + ":" + column + ":" + field;
+			if (value == null) {
+				expected.remove(key);
+			} else {
+				expected.put(key, value);
+			}
+		}
+
+		assertEquals(expected.size(), cellStore.getValueCount());
+		for (int row = 0; row < rowCount; row++) {
+			for (int column = 0; column < columnCount; column++) {
+				for (int field = 0; field < 2; field++) {
+					int rowOrdinal = row * (cellStore.getRowCount() / rowCount);
+					int columnOrdinal = column * (cellStore.getColumnCount() / columnCount);
+					Number value = expected.get(rowOrdinal + ":" + columnOrdinal + ":" + field);
+					assertEquals(value, cellStore.getValue(rowOrdinal, columnOrdinal, field));
+					assertEquals(value != null, cellStore.hasValue(rowOrdinal, columnOrdinal, field));
+				}
+			}
+		}
+	}
+
+}
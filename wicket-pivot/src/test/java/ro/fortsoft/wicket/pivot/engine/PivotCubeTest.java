@@ -0,0 +1,96 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ro.fortsoft.wicket.pivot.Aggregator;
+import ro.fortsoft.wicket.pivot.PivotField;
+
+/**
+ * @author Decebal Suiu
+ */
+public class PivotCubeTest {
+
+	@Test
+	public void testCells() {
+		PivotCube cube = createCube(1000, 100);
+		Map<Long, Integer> expected = new HashMap<>();
+		Random random = new Random(1);
+		for (int i = 0; i < 20000; i++) {
+			int row = random.nextInt(1000);
+			int column = random.nextInt(100);
+			Long key = (long) row * 100 + column;
+			int cell = cube.getOrCreateCell(row, column);
+			if (expected.containsKey(key)) {
+				assertEquals((int) expected.get(key), cell);
+			} else {
+				assertEquals(expected.size(), cell);
+				expected.put(key, cell);
+			}
+			cube.getState(0, cell).add(1);
+		}
+
+		assertEquals(expected.size(), cube.getCellCount());
+		long total = 0;
+		for (int cell = 0; cell < cube.getCellCount(); cell++) {
+			assertEquals(cell, cube.getCell(cube.getCellRow(cell), cube.getCellColumn(cell)));
+			total += ((Number) cube.getState(0, cell).getResult()).longValue();
+		}
+		assertEquals(20000, total);
+		assertEquals(-1, cube.getCell(1000, 0));
+	}
+
+	@Test
+	public void testMerge() {
+		PivotCube left = createCube(10, 10);
+		PivotCube right = createCube(10, 10);
+		for (int row = 0; row < 10; row++) {
+			left.getState(0, left.getOrCreateCell(row, row)).add(1);
+			right.getState(0, right.getOrCreateCell(row, (row < 5) ? row : 9 - row)).add(2);
+		}
+
+		left.merge(right);
+		assertEquals(15, left.getCellCount());
+		assertEquals(3.0, ((Number) left.getState(0, left.getCell(4, 4)).getResult()).doubleValue(), 0);
+		assertEquals(1.0, ((Number) left.getState(0, left.getCell(5, 5)).getResult()).doubleValue(), 0);
+		assertEquals(2.0, ((Number) left.getState(0, left.getCell(5, 4)).getResult()).doubleValue(), 0);
+	}
+
+	private static PivotCube createCube(int rowCount, int columnCount) {
+		PivotField measure = new PivotField("value", 0);
+		measure.setAggregator(Aggregator.get(Aggregator.SUM));
+
+		return new PivotCube(new int[] { 0 }, new int[] { 1 }, createKeys(rowCount), createKeys(columnCount),
+				Collections.singletonList(measure));
+	}
+
+	private static List<List<Object>> createKeys(int count) {
+		List<List<Object>> keys = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			keys.add(Collections.<Object> singletonList(i));
+		}
+
+		return keys;
+	}
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.exporter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ro.fortsoft.wicket.pivot.DefaultPivotModel;
+import ro.fortsoft.wicket.pivot.PivotField;
+import ro.fortsoft.wicket.pivot.PivotModel;
+import ro.fortsoft.wicket.pivot.SyntheticPivotDataSource;
+
+/**
+ * @author Decebal Suiu
+ */
+public class PivotCsvExporterTest {
+
+	private static final String[] REGIONS = { "plain", "north;south", "the \"east\"", "first\nsecond", "île" };
+
+	@Test
+	public void testQuoting() throws IOException {
+		String csv = export(";");
+
+		assertTrue(csv.contains("\"north;south\""));
+		assertTrue(csv.contains("\"the \"\"east\"\"\""));
+		assertTrue(csv.contains("\"first\nsecond\""));
+		assertTrue(csv.contains("\nplain;"));
+		assertTrue(csv.contains("\nîle;"));
+	}
+
+	@Test
+	public void testRecords() throws IOException {
+		List<List<String>> records = parse(export(";"), ';');
+
+		// the header, a record for each region and the grand total
+		assertEquals(REGIONS.length + 2, records.size());
+		List<String> regions = new ArrayList<>();
+		for (List<String> record : records) {
+			assertEquals(records.get(0).size(), record.size());
+			regions.add(record.get(0));
+		}
+		for (String region : REGIONS) {
+			assertTrue(region, regions.contains(region));
+		}
+	}
+
+	@Test
+	public void testSeparator() throws IOException {
+		String csv = export(",");
+
+		assertTrue(csv.contains("\nnorth;south,"));
+		assertEquals(REGIONS.length + 2, parse(csv, ',').size());
+	}
+
+	private String export(String separator) throws IOException {
+		SyntheticPivotDataSource dataSource = new SyntheticPivotDataSource(1000, 1);
+		dataSource.addField("REGION", String.class).setValues((Object[]) REGIONS);
+		dataSource.addField("SALES", Integer.class, 100);
+
+		PivotModel pivotModel = new DefaultPivotModel(dataSource);
+		pivotModel.getField("REGION").setArea(PivotField.Area.ROW);
+		pivotModel.getField("SALES").setArea(PivotField.Area.DATA);
+		pivotModel.setShowGrandTotalForColumn(true);
+		pivotModel.calculate();
+
+		PivotCsvExporter exporter = new PivotCsvExporter();
+		exporter.setSeperator(separator);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		exporter.exportPivot(pivotModel, out);
+
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Splits the CSV in records and the records in values (each value is
+	 * followed by the separator).
+	 */
+	private List<List<String>> parse(String csv, char separator) {
+		List<List<String>> records = new ArrayList<>();
+		List<String> record = new ArrayList<>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < csv.length(); i++) {
+			char c = csv.charAt(i);
+			if (quoted) {
+				if (c != '"') {
+					value.append(c);
+				} else if ((i + 1 < csv.length()) && (csv.charAt(i + 1) == '"')) {
+					value.append(c);
+					i++;
+				} else {
+					quoted = false;
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == separator) {
+				record.add(value.toString());
+				value.setLength(0);
+			} else if (c == '\n') {
+				records.add(record);
+				record = new ArrayList<>();
+			} else {
+				value.append(c);
+			}
+		}
+
+		return records;
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.deserialize;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.serialize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author Decebal Suiu
+ */
+public class TreeTest {
+
+	@Test
+	public void testGetNode() {
+		List<List<Object>> paths = createPaths();
+		Tree tree = new Tree(TreeHelper.createTree(paths, Arrays.<Comparator<Object>> asList(null, null)));
+		for (List<Object> path : paths) {
+			Node node = tree.getNode(path);
+			assertEquals(path, node.getPathValues());
+			assertSame(node, tree.getChild(node.getParent(), path.get(1)));
+		}
+		assertSame(tree.getRoot(), tree.getNode(Collections.emptyList()));
+		assertNull(tree.getNode(Arrays.<Object> asList("A", 100)));
+		assertNull(tree.getChild(tree.getRoot(), "X"));
+	}
+
+	@Test
+	public void testSerialization() {
+		List<List<Object>> paths = createPaths();
+		Tree tree = new Tree(TreeHelper.createTree(paths, Arrays.<Comparator<Object>> asList(null, null)));
+		tree.getCompactTree();
+
+		// the compact tree is created again, with the nodes of the copy
+		Tree copy = (Tree) deserialize(serialize(tree));
+		assertEquals(tree.getCompactTree().getLeafValues(), copy.getCompactTree().getLeafValues());
+		Node node = copy.getNode(paths.get(7));
+		assertEquals(paths.get(7), node.getPathValues());
+		assertSame(copy.getRoot(), node.getParent().getParent());
+	}
+
+	private static List<List<Object>> createPaths() {
+		List<List<Object>> paths = new ArrayList<>();
+		for (String group : new String[] { "A", "B", null }) {
+			for (int i = 0; i < 10; i++) {
+				paths.add(Arrays.<Object> asList(group, i));
+			}
+		}
+
+		return paths;
+	}
+
+}
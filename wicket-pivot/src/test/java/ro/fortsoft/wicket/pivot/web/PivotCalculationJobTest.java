@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012 Decebal Suiu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this work except in compliance with
+ * the License. You may obtain a copy of the License in the LICENSE file, or at:
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ro.fortsoft.wicket.pivot.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.assertSamePivot;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.createDataSource;
+import static ro.fortsoft.wicket.pivot.PivotTestUtils.setLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ro.fortsoft.wicket.pivot.DefaultPivotModel;
+import ro.fortsoft.wicket.pivot.PivotDataSource;
+import ro.fortsoft.wicket.pivot.PivotModel;
+import ro.fortsoft.wicket.pivot.PivotModel.CalculationMode;
+import ro.fortsoft.wicket.pivot.PivotPhaseEvent.Phase;
+
+/**
+ * @author Decebal Suiu
+ */
+public class PivotCalculationJobTest {
+
+	@Test
+	public void testCopyRollsUp() {
+		PivotDataSource dataSource = createDataSource(5000, 7);
+		PivotModel pivotModel = createModel(dataSource, new String[] { "REGION", "SALESMAN" });
+		pivotModel.calculate();
+
+		PivotModel copy = PivotCalculationJob.copy(pivotModel);
+		assertSamePivot(pivotModel, copy);
+
+		// the copy is rolled up from the cube of the pivot model
+		List<Phase> phases = new ArrayList<>();
+		List<Long> aggregatedRowCounts = new ArrayList<>();
+		copy.addPhaseListener(event -> {
+			phases.add(event.getPhase());
+			if (event.getPhase() == Phase.AGGREGATION) {
+				aggregatedRowCounts.add(event.getRowCount());
+			}
+		});
+		setLayout(copy, new String[] { "REGION" }, new String[] { "YEAR" }, "SALES:sum", "COST:avg");
+		copy.calculate();
+		assertTrue(phases.toString(), phases.contains(Phase.ROLL_UP));
+		assertFalse(phases.toString(), phases.contains(Phase.KEY_SCAN));
+		assertEquals("[0]", aggregatedRowCounts.toString());
+		assertSamePivot(calculate(dataSource, new String[] { "REGION" }), copy);
+
+		// the state of the pivot model is unchanged
+		setLayout(pivotModel, new String[] { "REGION", "SALESMAN" }, new String[] { "YEAR" }, "SALES:sum",
+				"COST:avg", "MONTH:max");
+		pivotModel.calculate();
+		PivotModel expected = createModel(dataSource, new String[] { "REGION", "SALESMAN" });
+		setLayout(expected, new String[] { "REGION", "SALESMAN" }, new String[] { "YEAR" }, "SALES:sum", "COST:avg",
+				"MONTH:max");
+		expected.setCalculationMode(CalculationMode.CELL_SCAN);
+		expected.calculate();
+		assertSamePivot(expected, pivotModel);
+	}
+
+	private static PivotModel createModel(PivotDataSource dataSource, String[] rowFields) {
+		PivotModel pivotModel = new DefaultPivotModel(dataSource);
+		pivotModel.setShowGrandTotalForColumn(true);
+		pivotModel.setShowGrandTotalForRow(true);
+		setLayout(pivotModel, rowFields, new String[] { "YEAR" }, "SALES:sum", "COST:avg");
+
+		return pivotModel;
+	}
+
+	private static PivotModel calculate(PivotDataSource dataSource, String[] rowFields) {
+		PivotModel pivotModel = createModel(dataSource, rowFields);
+		pivotModel.setCalculationMode(CalculationMode.CELL_SCAN);
+		pivotModel.calculate();
+
+		return pivotModel;
+	}
+
+}